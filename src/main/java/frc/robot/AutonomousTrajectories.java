@@ -0,0 +1,70 @@
+package frc.robot;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.DifferentialDriveKinematics;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryConfig;
+import edu.wpi.first.math.trajectory.TrajectoryGenerator;
+import frc.robot.Constants.DRIVETRAIN;
+import frc.robot.Constants.TRAJECTORY;
+
+/**
+ * The AutonomousTrajectories class defines the trajectories of the autonomous routines. They are generated and compiled
+ * into the deploy directory at build time by the {@link frc.robot.lib.trajectory.TrajectoryCompiler}, and the robot
+ * only loads the compiled files, so a trajectory added here is available on the robot after the next deploy. The poses
+ * are relative to the starting pose of the routine, in meters.
+ */
+public final class AutonomousTrajectories {
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PUBLIC METHODS                                                 */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * This method will generate every autonomous trajectory.
+     *
+     * @return Map<String, Trajectory> The trajectories by name
+     */
+    public static Map<String, Trajectory> Generate () {
+        Map<String, Trajectory> trajectories = new LinkedHashMap<>();
+        trajectories.put( "Taxi", TrajectoryGenerator.generateTrajectory(
+            new Pose2d(), List.of(), new Pose2d( 2.2, 0.0, new Rotation2d() ), Config( false ) ) );
+        trajectories.put( "TwoCargoOut", TrajectoryGenerator.generateTrajectory(
+            new Pose2d(), List.of( new Translation2d( 1.0, 0.2 ) ),
+            new Pose2d( 2.0, 0.6, Rotation2d.fromDegrees( 20.0 ) ), Config( false ) ) );
+        trajectories.put( "TwoCargoReturn", TrajectoryGenerator.generateTrajectory(
+            new Pose2d( 2.0, 0.6, Rotation2d.fromDegrees( 20.0 ) ), List.of( new Translation2d( 1.0, 0.2 ) ),
+            new Pose2d(), Config( true ) ) );
+        return trajectories;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PRIVATE METHODS                                                */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+     * This method will return the trajectory configuration of the drivetrain.
+     *
+     * @param isReversed boolean True if the robot drives the trajectory backwards
+     * @return TrajectoryConfig The trajectory configuration
+     */
+    private static TrajectoryConfig Config ( boolean isReversed ) {
+        return new TrajectoryConfig( TRAJECTORY.MAX_VELOCITY_MPS, TRAJECTORY.MAX_ACCELERATION_MPSS )
+            .setKinematics( new DifferentialDriveKinematics( DRIVETRAIN.TRACK_WIDTH_M ) )
+            .setReversed( isReversed );
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                        CLASS CONSTRUCTOR AND OVERRIDES                                        */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    private AutonomousTrajectories () {}
+
+}
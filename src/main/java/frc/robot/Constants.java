@@ -7,6 +7,15 @@ public final class Constants {
         public static final int CTRE_CAN_LONG_TIMEOUT_MS = 100;                 // CTRE CAN long CAN timeout for blocking calls
         public static final int PCM_ID = 0;                                     // PCM CAN ID
         public static final int PDP_ID = 0;                                     // PDP CAN ID
+        public static final int STATUS_FRAME_SLOW_MS = 255;                     // Status frame period for signals nobody consumes
+        public static final int CTRE_CONTROL_FRAME_MS = 10;                     // CTRE periodic control frame period
+        public static final int REV_CONTROL_FRAME_MS = 20;                      // REV control frame period (sent every loop)
+        public static final int DEVICE_CONFIG_TIMEOUT_MS = 2000;                // Longest time a device has to be configured at boot
+        public static final int CTRE_FINGERPRINT_PARAM = 0;                     // CTRE custom parameter slot holding the config fingerprint
+        public static final boolean FORCE_DEVICE_CONFIG = false;                // Reconfigure every device even when its fingerprint matches
+        public static final int MOTION_PROFILE_MIN_POINTS = 5;                  // Points buffered in the controller before a profile is enabled
+        public static final int MOTION_PROFILE_BATCH_POINTS = 32;               // Most points pushed into the API buffer per refill
+        public static final double NOMINAL_BATTERY_VOLTS = 12.0;                // Battery voltage feedforwards are prepared for
     }
 
     /**
@@ -52,6 +61,90 @@ public final class Constants {
         public static final int RIGHT_FOLLOWER_2_ID = 2;                        // Motor controller CAN ID AND PDP Port number
         public static final int LOW_GEAR_SOLENOID_ID = 0;                       // PCM port number for low gear shifting
         public static final int HIGH_GEAR_SOLENOID_ID = 1;                      // PCM port number for high gear shifting
+        public static final double OUTPUT_EPSILON = 0.002;                      // Smallest open-loop change passed on
+        public static final boolean USE_HARDWARE_FOLLOWERS = true;              // Followers follow their master on the controller
+        public static final double CAN_UTILIZATION_FILTER_GAIN = 0.02;          // CAN utilization low-pass gain (~1s at 50Hz)
+        public static final double ODOMETRY_PERIOD_S = 0.005;                   // Odometry notifier period (200Hz)
+        public static final int ODOMETRY_FRAME_MS = 5;                          // Master encoder status frame period for the odometry
+        public static final double WHEEL_DIAMETER_M = 0.1524;                   // Wheel diameter in meters (6in)
+        public static final double ENCODER_COUNTS_PER_REV = 4096.0;             // CTRE Mag Encoder counts per revolution
+        public static final double ENCODER_TO_WHEEL_RATIO = 1.0;                // Encoder revolutions per wheel revolution
+        public static final double TRACK_WIDTH_M = 0.6;                         // Effective track width in meters
+        public static final double LEFT_ENCODER_SIGN = 1.0;                     // Flip if the left distance goes negative driving forward
+        public static final double RIGHT_ENCODER_SIGN = 1.0;                    // Flip if the right distance goes negative driving forward
+        public static final boolean LEFT_SENSOR_PHASE = false;                  // Flip if the left encoder counts down on positive output
+        public static final boolean RIGHT_SENSOR_PHASE = false;                 // Flip if the right encoder counts down on positive output
+        public static final boolean USE_CLOSED_LOOP_TELEOP = false;             // Teleop drives the wheel speeds in closed-loop velocity
+        public static final double VELOCITY_DEADBAND = 0.02;                    // Closed-loop teleop joystick deadband
+        public static final int CLOSED_LOOP_PERIOD_MS = 1;                      // Talon SRX closed-loop period (1kHz)
+        public static final int LOW_GEAR_VELOCITY_SLOT = 0;                     // Talon SRX gain slot used in low gear
+        public static final double LOW_GEAR_MAX_SPEED_MPS = 2.0;                // Low gear wheel speed at full joystick
+        public static final double LOW_GEAR_KF = 0.6;                           // Low gear velocity F-gain (1023 / max counts per 100ms)
+        public static final double LOW_GEAR_KP = 0.1;                           // Low gear velocity P-gain
+        public static final double LOW_GEAR_KI = 0.0;                           // Low gear velocity I-gain
+        public static final double LOW_GEAR_KD = 0.0;                           // Low gear velocity D-gain
+        public static final double LOW_GEAR_IZONE = 0.0;                        // Low gear velocity integral zone in counts per 100ms
+        public static final double LOW_GEAR_KS_VOLTS = 0.0;                     // Low gear static friction feedforward in volts
+        public static final int HIGH_GEAR_VELOCITY_SLOT = 1;                    // Talon SRX gain slot used in high gear
+        public static final double HIGH_GEAR_MAX_SPEED_MPS = 4.0;               // High gear wheel speed at full joystick
+        public static final double HIGH_GEAR_KF = 0.3;                          // High gear velocity F-gain (1023 / max counts per 100ms)
+        public static final double HIGH_GEAR_KP = 0.1;                          // High gear velocity P-gain
+        public static final double HIGH_GEAR_KI = 0.0;                          // High gear velocity I-gain
+        public static final double HIGH_GEAR_KD = 0.0;                          // High gear velocity D-gain
+        public static final double HIGH_GEAR_IZONE = 0.0;                       // High gear velocity integral zone in counts per 100ms
+        public static final double HIGH_GEAR_KS_VOLTS = 0.0;                    // High gear static friction feedforward in volts
+        public static final int MOTION_PROFILE_PERIOD_MS = 10;                  // Time between streamed motion profile points
+        public static final int LOW_GEAR_MOTION_PROFILE_SLOT = 2;               // Talon SRX gain slot used by low gear motion profiles
+        public static final double LOW_GEAR_MP_KF = 0.6;                        // Low gear motion profile F-gain (on the target velocity)
+        public static final double LOW_GEAR_MP_KP = 1.0;                        // Low gear motion profile P-gain (on the position error in counts)
+        public static final double LOW_GEAR_MP_KI = 0.0;                        // Low gear motion profile I-gain
+        public static final double LOW_GEAR_MP_KD = 10.0;                       // Low gear motion profile D-gain
+        public static final double LOW_GEAR_MP_IZONE = 0.0;                     // Low gear motion profile integral zone in counts
+        public static final int HIGH_GEAR_MOTION_PROFILE_SLOT = 3;              // Talon SRX gain slot used by high gear motion profiles
+        public static final double HIGH_GEAR_MP_KF = 0.3;                       // High gear motion profile F-gain (on the target velocity)
+        public static final double HIGH_GEAR_MP_KP = 1.0;                       // High gear motion profile P-gain (on the position error in counts)
+        public static final double HIGH_GEAR_MP_KI = 0.0;                       // High gear motion profile I-gain
+        public static final double HIGH_GEAR_MP_KD = 10.0;                      // High gear motion profile D-gain
+        public static final double HIGH_GEAR_MP_IZONE = 0.0;                    // High gear motion profile integral zone in counts
+    }
+
+
+
+    /**
+    * These are the constants which define how the autonomous trajectories are generated at build time and where the
+    * compiled trajectories are deployed. The sample period matches the motion profile period of the drivetrain.
+    * @see {@link frc.robot.AutonomousTrajectories}
+    * @see {@link frc.robot.lib.trajectory.TrajectoryCompiler}
+    */
+    public static final class TRAJECTORY {
+        public static final double SAMPLE_PERIOD_S = 0.01;                      // Compiled trajectory sample period
+        public static final double MAX_VELOCITY_MPS = 2.5;                      // Trajectory velocity limit
+        public static final double MAX_ACCELERATION_MPSS = 1.5;                 // Trajectory acceleration limit
+        public static final String DIRECTORY = "trajectories";                  // Compiled trajectory folder under the deploy directory
+        public static final int CACHE_SIZE = 16;                                // On-demand trajectories kept by the trajectory service
+        public static final double POSE_QUANTUM_M = 0.05;                       // On-demand pose quantization in meters
+        public static final double HEADING_QUANTUM_DEG = 2.0;                   // On-demand heading quantization in degrees
+    }
+
+
+
+    /**
+    * These are the constants which define the scripted spin profile of the gyro drift test. Each cycle spins the robot
+    * in place, lets it settle and then holds it still, and the spin direction alternates every cycle. After the last
+    * cycle the robot turns back to its start heading by the wheel encoders.
+    * @see {@link frc.robot.commands.GyroDriftTest}
+    */
+    public static final class DRIFT_TEST {
+        public static final double SPIN_OUTPUT = 0.5;                           // Quick-turn output while spinning
+        public static final double SPIN_SECONDS = 5.0;                          // Length of each spin in seconds
+        public static final double SETTLE_SECONDS = 1.0;                        // Time to come to a stop in seconds
+        public static final double HOLD_SECONDS = 30.0;                         // Length of each still hold in seconds
+        public static final int CYCLES = 4;                                     // Number of spin/settle/hold cycles
+        public static final double RETURN_KP = 0.02;                            // Return turn output per degree of heading error
+        public static final double RETURN_MIN_OUTPUT = 0.15;                    // Smallest return turn output (breaks static friction)
+        public static final double RETURN_TOLERANCE_DEG = 1.0;                  // Encoder heading error that counts as returned
+        public static final double RETURN_SECONDS = 10.0;                       // Longest time allowed to return to the start heading
+        public static final String LOG_DIRECTORY = "logs";                      // Log folder under the deploy directory
     }
 
 
@@ -27,17 +27,22 @@ public class Robot extends TimedRobot {
 
     @Override
     public void robotPeriodic() {
+        mRobotContainer.UpdateDeviceConfiguration();
         CommandScheduler.getInstance().run();
     }
 
     @Override
-    public void autonomousInit() {}
+    public void autonomousInit() {
+        mRobotContainer.StartAutonomous();
+    }
 
     @Override
     public void autonomousPeriodic() {}
 
     @Override
-    public void teleopInit() {}
+    public void teleopInit() {
+        mRobotContainer.StopAutonomous();
+    }
 
     @Override
     public void teleopPeriodic() {}
@@ -46,7 +51,9 @@ public class Robot extends TimedRobot {
     public void disabledInit() {}
 
     @Override
-    public void disabledPeriodic() {}
+    public void disabledPeriodic() {
+        mRobotContainer.UpdateAutonomous();
+    }
 
     @Override
     public void testInit() {
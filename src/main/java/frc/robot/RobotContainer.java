@@ -1,16 +1,39 @@
 package frc.robot;
 
+import java.util.HashMap;
+import java.util.Map;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.DifferentialDriveKinematics;
 import edu.wpi.first.util.sendable.Sendable;
 import edu.wpi.first.util.sendable.SendableBuilder;
 import edu.wpi.first.util.sendable.SendableRegistry;
 import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj2.command.button.JoystickButton;
+import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
+import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
 import edu.wpi.first.wpilibj.PowerDistribution;
+import edu.wpi.first.wpilibj.SPI;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.robot.Constants.HARDWARE;
 import frc.robot.Constants.DRIVER;
+import frc.robot.Constants.DRIVETRAIN;
+import frc.robot.Constants.TRAJECTORY;
+import frc.robot.lib.autonomous.AutonomousRegistry;
+import frc.robot.lib.drivers.ADIS16470;
+import frc.robot.lib.drivers.ADIS16470.CalibrationTime;
+import frc.robot.lib.drivers.ADIS16470.IMUAxis;
+import frc.robot.lib.drivers.DeviceConfigurator;
+import frc.robot.lib.drivers.StatusFramePlanner;
+import frc.robot.lib.trajectory.CompiledTrajectory;
+import frc.robot.lib.trajectory.TrajectoryService;
 import frc.robot.subsystems.Drivetrain;
+import frc.robot.subsystems.Drivetrain.PreparedMotionProfile;
 import frc.robot.subsystems.Intake;
+import frc.robot.commands.FollowTrajectory;
+import frc.robot.commands.GyroDriftTest;
 import frc.robot.commands.TeleopDrive;
 
 /**
@@ -21,6 +44,7 @@ public class RobotContainer implements Sendable {
 
     // Hardware
     public final PowerDistribution mPDP;
+    public final ADIS16470 mIMU;
     private final Joystick mDriverJoystickThrottle;
     private final JoystickButton mDriverJoystickThrottleButton;
     private final Joystick mDriverJoystickTurn;
@@ -30,19 +54,144 @@ public class RobotContainer implements Sendable {
     public Drivetrain mDrivetrain;
     public Intake mIntake;
 
+    // Services
+    public final TrajectoryService mTrajectoryService;
+    private final AutonomousRegistry mAutonomous = new AutonomousRegistry();
+
     // State
     private double mIntakeDutyCycle = 0.5;
+    private final StatusFramePlanner mStatusFramePlanner = new StatusFramePlanner();
+    private final DeviceConfigurator mConfigurator = new DeviceConfigurator();
+    private Map<String, CompiledTrajectory> mTrajectories;
 
 
     //-----------------------------------------------------------------------------------------------------------------
     /*                                                PUBLIC METHODS                                                 */
     //-----------------------------------------------------------------------------------------------------------------
 
+    /**
+     * This method will start the selected autonomous routine, which was prepared while the robot was disabled.
+     */
+    public void StartAutonomous () {
+        mAutonomous.Start();
+    }
+
+    /**
+     * This method will stop the autonomous routine if it is still running.
+     */
+    public void StopAutonomous () {
+        mAutonomous.Cancel();
+    }
+
+    /**
+     * This method will finish the configuration of any motor controller which timed out at boot. Once one finishes,
+     * the steps held back for its subsystem are run and the status frame plan is applied again, since the late
+     * configuration may have reset the device. It is meant to be called periodically.
+     */
+    public void UpdateDeviceConfiguration () {
+        if ( mConfigurator.Update() ) {
+            mStatusFramePlanner.Apply();
+        }
+    }
+
+    /**
+     * This method will re-prepare the selected autonomous routine when the selection changed or it was used. It is
+     * meant to be called periodically while the robot is disabled.
+     */
+    public void UpdateAutonomous () {
+        mAutonomous.Update();
+    }
+
 
     //-----------------------------------------------------------------------------------------------------------------
     /*                                                PRIVATE METHODS                                                */
     //-----------------------------------------------------------------------------------------------------------------
 
+    /**
+     * This method will load the compiled autonomous trajectories from the deploy directory. They are compiled at build
+     * time (see {@link frc.robot.lib.trajectory.TrajectoryCompiler}), so nothing is generated on the robot.
+     */
+    private void LoadTrajectories () {
+        final long start = System.nanoTime();
+        mTrajectories = CompiledTrajectory.LoadAll( Filesystem.getDeployDirectory().toPath()
+                                                                .resolve( TRAJECTORY.DIRECTORY ) );
+        System.out.println( String.format( "Loaded %d trajectories in %.1fms: %s", mTrajectories.size(),
+                                           ( System.nanoTime() - start ) * 1.0e-6, mTrajectories.values() ) );
+    }
+
+    /**
+     * This method will register the autonomous routines and start preparing them in the background. The motion
+     * profiles of each routine are prepared on the builder thread, and its commands are built from them on the main
+     * robot thread. The first routine is the default selection of the chooser.
+     */
+    private void ConfigureAutonomous () {
+        mAutonomous.Register( "Do Nothing", () -> new InstantCommand() );
+        mAutonomous.Register( "Taxi", () -> PrepareProfiles( "Taxi" ), profiles -> new SequentialCommandGroup(
+            ResetPoseTo( "Taxi" ),
+            FollowCompiled( "Taxi", profiles ) ) );
+        mAutonomous.Register( "Two Cargo", () -> PrepareProfiles( "TwoCargoOut", "TwoCargoReturn" ),
+                              profiles -> new SequentialCommandGroup(
+            ResetPoseTo( "TwoCargoOut" ),
+            new InstantCommand( () -> mIntake.SetIntakeMotorOutput( mIntakeDutyCycle ), mIntake ),
+            FollowCompiled( "TwoCargoOut", profiles ),
+            new InstantCommand( () -> mIntake.SetIntakeMotorOutput( 0.0 ), mIntake ),
+            FollowCompiled( "TwoCargoReturn", profiles ) ) );
+        SmartDashboard.putData( "Autonomous", mAutonomous.GetChooser() );
+        mAutonomous.PrepareAll();
+    }
+
+    /**
+     * This method will prepare the motion profiles of compiled trajectories, in the gear the drivetrain is in. It only
+     * works on data, so it can run on the autonomous builder thread.
+     *
+     * @param names String... The names of the compiled trajectories
+     * @return Map<String, PreparedMotionProfile> The motion profiles by trajectory name, without the trajectories
+     * which weren't loaded
+     */
+    private Map<String, PreparedMotionProfile> PrepareProfiles ( String... names ) {
+        final boolean isHighGear = mDrivetrain.IsHighGear();
+        final Map<String, PreparedMotionProfile> profiles = new HashMap<>();
+        for ( String name : names ) {
+            final CompiledTrajectory trajectory = mTrajectories.get( name );
+            if ( trajectory != null ) {
+                profiles.put( name, Drivetrain.PrepareMotionProfile( trajectory, isHighGear ) );
+            }
+        }
+        return profiles;
+    }
+
+    /**
+     * This method will build a command which resets the drivetrain pose to the start of a compiled trajectory. The
+     * pose is looked up when the command is built.
+     *
+     * @param name String The name of the compiled trajectory
+     * @return Command The command, which does nothing if the trajectory wasn't loaded
+     */
+    private Command ResetPoseTo ( String name ) {
+        final CompiledTrajectory trajectory = mTrajectories.get( name );
+        if ( trajectory == null ) {
+            return new InstantCommand();
+        }
+        final Pose2d pose = trajectory.GetInitialPose();
+        return new InstantCommand( () -> mDrivetrain.ResetPose( pose ) );
+    }
+
+    /**
+     * This method will build a command which follows a compiled trajectory with its prepared motion profile.
+     *
+     * @param name String The name of the compiled trajectory
+     * @param profiles Map<String, PreparedMotionProfile> The prepared motion profiles by trajectory name
+     * @return Command The command, which does nothing if the trajectory wasn't loaded
+     */
+    private Command FollowCompiled ( String name, Map<String, PreparedMotionProfile> profiles ) {
+        final PreparedMotionProfile profile = profiles.get( name );
+        if ( profile == null ) {
+            DriverStation.reportError( "Autonomous trajectory " + name + " was not loaded", false );
+            return new InstantCommand();
+        }
+        return new FollowTrajectory( mDrivetrain, profile, mTrajectories.get( name ).GetTotalSeconds() );
+    }
+
     /**
      * This method will configure the joysticks and buttons. This means commands and their behaviours will be assigned
      * to the driver/operators controls.
@@ -59,11 +208,21 @@ public class RobotContainer implements Sendable {
     /**
      * This method will intialize the RobotContainer class by setting the local state variables, configuring the
      * buttons and joysticks, setting the default subsystem commands, setting up the autonomous chooser, and clearing
-     * faults in the PCM and PDP.
+     * faults in the PCM and PDP. The motor controllers of every subsystem are configured concurrently, and the status
+     * frame plan is applied once they are done (and again if one of them finishes late).
      */
     private void Initialize () {
+        mDrivetrain.ConfigureDevices( mConfigurator );
+        mIntake.ConfigureDevices( mConfigurator );
+        mConfigurator.Run();
+        mDrivetrain.PlanStatusFrames( mStatusFramePlanner );
+        mIntake.PlanStatusFrames( mStatusFramePlanner );
+        mStatusFramePlanner.Apply();
+        LoadTrajectories();
+        ConfigureAutonomous();
         ConfigureButtonBindings();
         mDrivetrain.setDefaultCommand( new TeleopDrive( mDrivetrain, mDriverJoystickThrottle, mDriverJoystickTurn ) );
+        SmartDashboard.putData( "Gyro Drift Test", new GyroDriftTest( mDrivetrain, mIMU ) );
     }
 
 
@@ -76,8 +235,11 @@ public class RobotContainer implements Sendable {
      */ 
     public RobotContainer () {
         mPDP = new PowerDistribution( HARDWARE.PDP_ID, PowerDistribution.ModuleType.kCTRE );
-        mDrivetrain = new Drivetrain();
+        mIMU = new ADIS16470( IMUAxis.kZ, SPI.Port.kOnboardCS0, CalibrationTime._4s, true );
+        mDrivetrain = new Drivetrain( mIMU );
         mIntake = new Intake();
+        mTrajectoryService = new TrajectoryService( mDrivetrain::GetPose,
+                                                    new DifferentialDriveKinematics( DRIVETRAIN.TRACK_WIDTH_M ) );
 
         mDriverJoystickThrottle = new Joystick( DRIVER.JOYSTICK_THROTTLE );
         mDriverJoystickThrottleButton = new JoystickButton( mDriverJoystickThrottle, 1 );
@@ -119,6 +281,12 @@ public class RobotContainer implements Sendable {
     public void initSendable ( SendableBuilder builder ) {
         builder.setSmartDashboardType( "TuningParameters" );
         builder.addDoubleProperty( "Intake Duty Cycle", this::GetDutyCycle, this::SetDutyCycle );
+        builder.addDoubleProperty( "Estimated CAN Load", mStatusFramePlanner::GetEstimatedBusLoad, null );
+        builder.addDoubleProperty( "Trajectory Cache Hits", () -> mTrajectoryService.GetHits(), null );
+        builder.addDoubleProperty( "Trajectory Cache Misses", () -> mTrajectoryService.GetMisses(), null );
+        builder.addDoubleProperty( "Trajectory Generation ms",
+                                   () -> mTrajectoryService.GetLastGenerationSeconds() * 1000.0, null );
+        builder.addDoubleProperty( "Autonomous Start ms", () -> mAutonomous.GetLastStartSeconds() * 1000.0, null );
     }
 
 
@@ -0,0 +1,79 @@
+package frc.robot.commands;
+
+import java.util.concurrent.CompletableFuture;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.lib.trajectory.TrajectoryService;
+import frc.robot.subsystems.Drivetrain;
+import frc.robot.subsystems.Drivetrain.PreparedMotionProfile;
+
+/**
+* The DriveToPose command drives from wherever the robot is to a goal pose. The trajectory is requested from the
+* {@link TrajectoryService} when the command starts and generated on its worker thread (or taken from its cache), and
+* its motion profile is prepared on the worker thread too, in the gear the drivetrain is in when the command starts.
+* The drivetrain holds still until the profile is ready, and then it is streamed to the drivetrain masters like
+* {@link FollowTrajectory}, so nothing is compiled or prepared in the scheduler loop.
+*/
+public class DriveToPose extends CommandBase {
+    private final Drivetrain mDrivetrain;
+    private final TrajectoryService mTrajectoryService;
+    private final Pose2d mGoal;
+    private final TrajectoryService.Constraints mConstraints;
+
+    // State
+    private CompletableFuture<PreparedMotionProfile> mProfile;
+    private boolean mIsStarted;
+    private boolean mIsFailed;
+
+    @Override
+    public void initialize () {
+        mIsStarted = false;
+        mIsFailed = false;
+        final boolean isHighGear = mDrivetrain.IsHighGear();
+        mProfile = mTrajectoryService.RequestTo( mGoal, mConstraints,
+                                                 trajectory -> Drivetrain.PrepareMotionProfile( trajectory,
+                                                                                                isHighGear ) );
+    }
+
+    @Override
+    public void execute () {
+        if ( mIsStarted || mIsFailed ) {
+            return;
+        }
+        if ( !mProfile.isDone() ) {
+            mDrivetrain.SetVelocityOutput( 0.0, 0.0 );
+        } else if ( mProfile.isCompletedExceptionally() ) {
+            mIsFailed = true;
+            DriverStation.reportWarning( "Could not generate a trajectory to " + mGoal, false );
+        } else {
+            mDrivetrain.StartMotionProfile( mProfile.join() );
+            mIsStarted = true;
+        }
+    }
+
+    @Override
+    public void end ( boolean interrupted ) {
+        mDrivetrain.StopMotionProfile();
+    }
+
+    @Override
+    public boolean isFinished () {
+        return mIsFailed || ( mIsStarted && mDrivetrain.IsMotionProfileFinished() );
+    }
+
+    @Override
+    public boolean runsWhenDisabled() {
+        return false;
+    }
+
+    public DriveToPose ( Drivetrain drivetrain, TrajectoryService trajectoryService, Pose2d goal,
+                         TrajectoryService.Constraints constraints ) {
+        mDrivetrain = drivetrain;
+        mTrajectoryService = trajectoryService;
+        mGoal = goal;
+        mConstraints = constraints;
+        addRequirements( mDrivetrain );
+    }
+
+}
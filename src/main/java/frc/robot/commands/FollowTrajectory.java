@@ -0,0 +1,69 @@
+package frc.robot.commands;
+
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.lib.trajectory.CompiledTrajectory;
+import frc.robot.subsystems.Drivetrain;
+import frc.robot.subsystems.Drivetrain.PreparedMotionProfile;
+
+/**
+* The FollowTrajectory command drives a trajectory with a motion profile streamed to the drivetrain masters. The masters
+* follow the profile at their own rate, so the tracking doesn't depend on the timing of the scheduler loop. The profile
+* is prepared when the command is constructed, in the gear the drivetrain is in at that time, or it is prepared ahead of
+* time and handed to the command, so starting the command only starts the streaming. The command ends once the masters
+* reach the end of the profile, and the number of underruns is printed.
+* @see {@link frc.robot.lib.drivers.MotionProfileStreamer}
+*/
+public class FollowTrajectory extends CommandBase {
+    private final Drivetrain mDrivetrain;
+    private final PreparedMotionProfile mProfile;
+    private final double mTotalSeconds;
+
+    @Override
+    public void initialize () {
+        mDrivetrain.StartMotionProfile( mProfile );
+    }
+
+    @Override
+    public void execute () {}
+
+    @Override
+    public void end ( boolean interrupted ) {
+        mDrivetrain.StopMotionProfile();
+        System.out.println( String.format( "Trajectory %s after %.2f s with %d underrun(s)",
+                                           interrupted ? "interrupted" : "finished", mTotalSeconds,
+                                           mDrivetrain.GetMotionProfileUnderruns() ) );
+    }
+
+    @Override
+    public boolean isFinished () {
+        return mDrivetrain.IsMotionProfileFinished();
+    }
+
+    @Override
+    public boolean runsWhenDisabled() {
+        return false;
+    }
+
+    public FollowTrajectory ( Drivetrain drivetrain, Trajectory trajectory ) {
+        mDrivetrain = drivetrain;
+        mProfile = Drivetrain.PrepareMotionProfile( trajectory, drivetrain.IsHighGear() );
+        mTotalSeconds = trajectory.getTotalTimeSeconds();
+        addRequirements( mDrivetrain );
+    }
+
+    public FollowTrajectory ( Drivetrain drivetrain, CompiledTrajectory trajectory ) {
+        mDrivetrain = drivetrain;
+        mProfile = Drivetrain.PrepareMotionProfile( trajectory, drivetrain.IsHighGear() );
+        mTotalSeconds = trajectory.GetTotalSeconds();
+        addRequirements( mDrivetrain );
+    }
+
+    public FollowTrajectory ( Drivetrain drivetrain, PreparedMotionProfile profile, double totalSeconds ) {
+        mDrivetrain = drivetrain;
+        mProfile = profile;
+        mTotalSeconds = totalSeconds;
+        addRequirements( mDrivetrain );
+    }
+
+}
@@ -0,0 +1,408 @@
+package frc.robot.commands;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.DRIFT_TEST;
+import frc.robot.Constants.DRIVETRAIN;
+import frc.robot.lib.drivers.ADIS16470;
+import frc.robot.subsystems.Drivetrain;
+import frc.robot.subsystems.DrivetrainOdometry;
+
+/**
+* The GyroDriftTest command automates the drift procedure from the IMU driver README. Each cycle spins the robot in
+* place, lets it settle and then holds it still, alternating the spin direction every cycle. After the last cycle the
+* robot turns back to its start heading, measured by the wheel encoders so it doesn't depend on the IMU under test, and
+* settles once more; the IMU heading error is how far the IMU heading is from the encoder heading at that point. The
+* IMU angle and rate are logged at the full IMU sample rate (from the driver's sample history). When the command ends,
+* the log is handed to a background writer thread, which finds the drift-per-minute of every hold phase with a
+* least-squares fit and writes the samples and the summary to CSV files under the deploy directory, so the robot loop
+* never waits on the file system.
+* @see {@link frc.robot.lib.drivers.ADIS16470}
+*/
+public class GyroDriftTest extends CommandBase {
+    private static final int PHASE_SPIN = 0;
+    private static final int PHASE_SETTLE = 1;
+    private static final int PHASE_HOLD = 2;
+    private static final int PHASE_RETURN = 3;
+    private static final String[] PHASE_NAMES = { "spin", "settle", "hold", "return" };
+
+    /**
+    * The samples and the return-to-start result of one run. A new log is allocated every run, and once the run ends
+    * it is only touched by the writer thread.
+    */
+    private static final class Log {
+        final double[] time;
+        final double[] angle;
+        final double[] rate;
+        final double[] output;
+        final int[] phase;
+        final int[] cycle;
+        int count = 0;
+        boolean returned = false;
+        double encoderHeading = Double.NaN;
+        double imuHeadingError = Double.NaN;
+
+        Log ( int capacity ) {
+            time = new double[ capacity ];
+            angle = new double[ capacity ];
+            rate = new double[ capacity ];
+            output = new double[ capacity ];
+            phase = new int[ capacity ];
+            cycle = new int[ capacity ];
+        }
+    }
+
+    private final Drivetrain mDrivetrain;
+    private final ADIS16470 mIMU;
+    private final ExecutorService mWriter;
+
+    // State
+    private Log mLog;
+    private double mStartTime;
+    private double mStartAngle;
+    private double mStartEncoderHeading;
+    private double mNextSampleTime;
+    private double mSamplePeriod;
+    private double mReturnOutput;
+    private double mReturnedTime;
+    private double mTurnSign;
+    private boolean mIsRunning;
+    private boolean mIsDone;
+
+
+    @Override
+    public void initialize () {
+        mIsRunning = false;
+        if ( !DriverStation.isTest() ) {
+            DriverStation.reportWarning( "The gyro drift test only runs in test mode.", false );
+            return;
+        }
+        if ( !mIMU.isReady() ) {
+            DriverStation.reportWarning( "The gyro drift test needs the IMU to be ready (" + mIMU.getInitState() + ").",
+                                         false );
+            return;
+        }
+
+        mSamplePeriod = 1.0 / mIMU.getOutputDataRate().getHz();
+        final double length = GetTotalTime() + DRIFT_TEST.RETURN_SECONDS + DRIFT_TEST.SETTLE_SECONDS;
+        mLog = new Log( (int) Math.ceil( length / mSamplePeriod * 1.1 ) + 1 );
+
+        mStartTime = mIMU.getSample().timestamp;
+        mStartAngle = mIMU.getAngle();
+        mStartEncoderHeading = GetEncoderHeading();
+        mNextSampleTime = mStartTime;
+        mReturnOutput = 0.0;
+        mReturnedTime = Double.NaN;
+        mTurnSign = 0.0;
+        mIsDone = false;
+        mIsRunning = true;
+        System.out.println( "Gyro drift test started: " + DRIFT_TEST.CYCLES + " cycles, " + GetTotalTime() + " s" );
+    }
+
+    @Override
+    public void execute () {
+        if ( !mIsRunning ) {
+            return;
+        }
+        final double now = Timer.getFPGATimestamp() - mStartTime;
+        if ( now <= GetTotalTime() ) {
+            mDrivetrain.SetOpenLoopOutput( 0.0, GetOutput( now ), true );
+            if ( mTurnSign == 0.0 && GetPhase( now ) != PHASE_SPIN ) {
+                // Learn which way a positive turn output moves the heading from the first spin
+                mTurnSign = Math.signum( GetEncoderHeading() - mStartEncoderHeading );
+            }
+        } else {
+            mDrivetrain.SetOpenLoopOutput( 0.0, GetReturnOutput( now ), true );
+        }
+
+        // Log every IMU sample since the last loop from the sample history
+        final Log log = mLog;
+        double latest = mIMU.getSample().timestamp;
+        while ( mNextSampleTime <= latest && log.count < log.time.length ) {
+            double elapsed = mNextSampleTime - mStartTime;
+            log.time[ log.count ] = elapsed;
+            log.angle[ log.count ] = mIMU.getAngleAt( mNextSampleTime );
+            log.rate[ log.count ] = mIMU.getRateAt( mNextSampleTime );
+            log.output[ log.count ] = ( elapsed > GetTotalTime() ) ? mReturnOutput : GetOutput( elapsed );
+            log.phase[ log.count ] = GetPhase( elapsed );
+            log.cycle[ log.count ] = GetCycle( elapsed );
+            log.count++;
+            mNextSampleTime += mSamplePeriod;
+        }
+    }
+
+    @Override
+    public void end ( boolean interrupted ) {
+        if ( !mIsRunning ) {
+            return;
+        }
+        mIsRunning = false;
+        mDrivetrain.SetOpenLoopOutput( 0.0, 0.0, false );
+        if ( interrupted ) {
+            System.out.println( "Gyro drift test interrupted, writing the partial results." );
+        }
+        final Log log = mLog;
+        mLog = null;
+        mWriter.execute( () -> WriteResults( log ) );
+    }
+
+    @Override
+    public boolean isFinished () {
+        return !mIsRunning || mIsDone;
+    }
+
+    @Override
+    public boolean runsWhenDisabled() {
+        return false;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PRIVATE METHODS                                                */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will return the total length of the spin, settle and hold cycles.
+    *
+    * @return double The length of the cycles in seconds
+    */
+    private static double GetTotalTime () {
+        return DRIFT_TEST.CYCLES * GetCycleTime();
+    }
+
+    /**
+    * This method will return the length of one spin, settle and hold cycle.
+    *
+    * @return double The cycle length in seconds
+    */
+    private static double GetCycleTime () {
+        return DRIFT_TEST.SPIN_SECONDS + DRIFT_TEST.SETTLE_SECONDS + DRIFT_TEST.HOLD_SECONDS;
+    }
+
+    /**
+    * This method will return the cycle number at a point in the test.
+    *
+    * @param elapsed double Time since the start of the test in seconds
+    * @return int The cycle number
+    */
+    private static int GetCycle ( double elapsed ) {
+        return Math.min( (int) ( elapsed / GetCycleTime() ), DRIFT_TEST.CYCLES - 1 );
+    }
+
+    /**
+    * This method will return the phase at a point in the test.
+    *
+    * @param elapsed double Time since the start of the test in seconds
+    * @return int The phase (spin, settle, hold or return)
+    */
+    private static int GetPhase ( double elapsed ) {
+        if ( elapsed > GetTotalTime() ) {
+            return PHASE_RETURN;
+        }
+        double inCycle = elapsed - GetCycle( elapsed ) * GetCycleTime();
+        if ( inCycle < DRIFT_TEST.SPIN_SECONDS ) {
+            return PHASE_SPIN;
+        } else if ( inCycle < DRIFT_TEST.SPIN_SECONDS + DRIFT_TEST.SETTLE_SECONDS ) {
+            return PHASE_SETTLE;
+        }
+        return PHASE_HOLD;
+    }
+
+    /**
+    * This method will return the turn output at a point in the cycles. The spin direction alternates every cycle.
+    *
+    * @param elapsed double Time since the start of the test in seconds
+    * @return double The turn output
+    */
+    private static double GetOutput ( double elapsed ) {
+        if ( elapsed > GetTotalTime() || GetPhase( elapsed ) != PHASE_SPIN ) {
+            return 0.0;
+        }
+        return ( GetCycle( elapsed ) % 2 == 0 ) ? DRIFT_TEST.SPIN_OUTPUT : -DRIFT_TEST.SPIN_OUTPUT;
+    }
+
+    /**
+    * This method will return the wheel encoder heading. It is independent of the IMU, so it is the reference the IMU
+    * heading is checked against.
+    *
+    * @return double The encoder heading in degrees (CCW positive)
+    */
+    private double GetEncoderHeading () {
+        final DrivetrainOdometry.PoseSnapshot snapshot = mDrivetrain.GetPoseSnapshot();
+        return Math.toDegrees( ( snapshot.rightDistance - snapshot.leftDistance ) / DRIVETRAIN.TRACK_WIDTH_M );
+    }
+
+    /**
+    * This method will turn the robot back to its start heading by the wheel encoders, let it settle and then record
+    * the IMU heading error. The test is done once the error is recorded, or when the return takes too long.
+    *
+    * @param elapsed double Time since the start of the test in seconds
+    * @return double The turn output
+    */
+    private double GetReturnOutput ( double elapsed ) {
+        final double encoderHeading = GetEncoderHeading() - mStartEncoderHeading;
+        if ( Double.isNaN( mReturnedTime ) ) {
+            if ( Math.abs( encoderHeading ) > DRIFT_TEST.RETURN_TOLERANCE_DEG
+                 && elapsed < GetTotalTime() + DRIFT_TEST.RETURN_SECONDS ) {
+                final double sign = ( mTurnSign != 0.0 ) ? mTurnSign : 1.0;
+                final double magnitude = Math.min( Math.max( Math.abs( encoderHeading ) * DRIFT_TEST.RETURN_KP,
+                                                             DRIFT_TEST.RETURN_MIN_OUTPUT ), DRIFT_TEST.SPIN_OUTPUT );
+                mReturnOutput = -sign * Math.signum( encoderHeading ) * magnitude;
+                return mReturnOutput;
+            }
+            mLog.returned = Math.abs( encoderHeading ) <= DRIFT_TEST.RETURN_TOLERANCE_DEG;
+            mReturnedTime = elapsed;
+        }
+        mReturnOutput = 0.0;
+        if ( elapsed - mReturnedTime >= DRIFT_TEST.SETTLE_SECONDS ) {
+            mLog.encoderHeading = encoderHeading;
+            mLog.imuHeadingError = ( mIMU.getAngle() - mStartAngle ) - encoderHeading;
+            mIsDone = true;
+        }
+        return 0.0;
+    }
+
+    /**
+    * This method will find the drift of every hold phase, print the summary and write the samples and the summary to
+    * CSV files. It runs on the writer thread.
+    *
+    * @param log Log The samples and the return-to-start result of the run
+    */
+    private static void WriteResults ( Log log ) {
+        double[] drift = new double[ DRIFT_TEST.CYCLES ];
+        double[] spinChange = new double[ DRIFT_TEST.CYCLES ];
+        int holds = 0;
+        double sum = 0.0;
+        double sumSquares = 0.0;
+        double worst = 0.0;
+
+        StringBuilder summary = new StringBuilder( "cycle,spin_change_deg,hold_drift_deg_per_min\n" );
+        for ( int cycle = 0; cycle < DRIFT_TEST.CYCLES; cycle++ ) {
+            drift[ cycle ] = FitSlope( log, cycle, PHASE_HOLD ) * 60.0;
+            spinChange[ cycle ] = GetPhaseChange( log, cycle, PHASE_SPIN );
+            summary.append( String.format( "%d,%.4f,%.5f%n", cycle, spinChange[ cycle ], drift[ cycle ] ) );
+            if ( !Double.isNaN( drift[ cycle ] ) ) {
+                holds++;
+                sum += drift[ cycle ];
+                sumSquares += drift[ cycle ] * drift[ cycle ];
+                worst = Math.max( worst, Math.abs( drift[ cycle ] ) );
+            }
+        }
+        double mean = holds > 0 ? sum / holds : Double.NaN;
+        double variance = holds > 1 ? Math.max( sumSquares / holds - mean * mean, 0.0 ) * holds / ( holds - 1 ) : 0.0;
+        double stddev = Math.sqrt( variance );
+        System.out.println( String.format( "Gyro drift: mean %.4f deg/min, std dev %.4f deg/min, worst %.4f deg/min "
+                                           + "over %d hold phases (%d samples)", mean, stddev, worst, holds,
+                                           log.count ) );
+        System.out.println( String.format( "Gyro heading error after returning to the start heading%s: %.3f deg "
+                                           + "(encoder heading %.3f deg)", log.returned ? "" : " (not reached)",
+                                           log.imuHeadingError, log.encoderHeading ) );
+
+        try {
+            Path directory = Filesystem.getDeployDirectory().toPath().resolve( DRIFT_TEST.LOG_DIRECTORY );
+            Files.createDirectories( directory );
+            String name = String.format( "gyro_drift_%d", System.currentTimeMillis() / 1000 );
+            try ( PrintWriter out = new PrintWriter( Files.newBufferedWriter( directory.resolve( name + ".csv" ) ) ) ) {
+                out.println( "time_s,cycle,phase,turn_output,angle_deg,rate_deg_per_s" );
+                for ( int i = 0; i < log.count; i++ ) {
+                    out.printf( "%.5f,%d,%s,%.3f,%.5f,%.4f%n", log.time[ i ], log.cycle[ i ],
+                                PHASE_NAMES[ log.phase[ i ] ], log.output[ i ], log.angle[ i ], log.rate[ i ] );
+                }
+            }
+            Path summaryFile = directory.resolve( name + "_summary.csv" );
+            try ( PrintWriter out = new PrintWriter( Files.newBufferedWriter( summaryFile ) ) ) {
+                out.print( summary );
+                out.printf( "mean,,%.5f%nstddev,,%.5f%nworst,,%.5f%n", mean, stddev, worst );
+                out.printf( "return_encoder_heading_deg,,%.5f%nreturn_heading_error_deg,,%.5f%n", log.encoderHeading,
+                            log.imuHeadingError );
+            }
+            System.out.println( "Gyro drift results written to " + directory.resolve( name + ".csv" ) );
+        } catch ( IOException e ) {
+            DriverStation.reportError( "Could not write the gyro drift results: " + e.getMessage(), false );
+        }
+    }
+
+    /**
+    * This method will fit a line to the angle over one phase of a cycle.
+    *
+    * @param log Log The samples
+    * @param cycle int The cycle number
+    * @param phase int The phase
+    * @return double The slope in degrees per second, or NaN if there weren't enough samples
+    */
+    private static double FitSlope ( Log log, int cycle, int phase ) {
+        int n = 0;
+        double sumT = 0.0;
+        double sumA = 0.0;
+        double sumTT = 0.0;
+        double sumTA = 0.0;
+        for ( int i = 0; i < log.count; i++ ) {
+            if ( log.cycle[ i ] == cycle && log.phase[ i ] == phase ) {
+                n++;
+                sumT += log.time[ i ];
+                sumA += log.angle[ i ];
+                sumTT += log.time[ i ] * log.time[ i ];
+                sumTA += log.time[ i ] * log.angle[ i ];
+            }
+        }
+        double denominator = n * sumTT - sumT * sumT;
+        if ( n < 2 || denominator <= 0.0 ) {
+            return Double.NaN;
+        }
+        return ( n * sumTA - sumT * sumA ) / denominator;
+    }
+
+    /**
+    * This method will return how much the angle changed over one phase of a cycle.
+    *
+    * @param log Log The samples
+    * @param cycle int The cycle number
+    * @param phase int The phase
+    * @return double The change in degrees, or NaN if there were no samples
+    */
+    private static double GetPhaseChange ( Log log, int cycle, int phase ) {
+        int first = -1;
+        int last = -1;
+        for ( int i = 0; i < log.count; i++ ) {
+            if ( log.cycle[ i ] == cycle && log.phase[ i ] == phase ) {
+                if ( first < 0 ) {
+                    first = i;
+                }
+                last = i;
+            }
+        }
+        return first < 0 ? Double.NaN : log.angle[ last ] - log.angle[ first ];
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                        CLASS CONSTRUCTOR AND OVERRIDES                                        */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * The constructor for the GyroDriftTest class.
+    *
+    * @param drivetrain Drivetrain The drivetrain to spin the robot with
+    * @param imu ADIS16470 The IMU under test
+    */
+    public GyroDriftTest ( Drivetrain drivetrain, ADIS16470 imu ) {
+        mDrivetrain = drivetrain;
+        mIMU = imu;
+        mWriter = Executors.newSingleThreadExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "GyroDriftTest Writer" );
+            thread.setDaemon( true );
+            thread.setPriority( Thread.MIN_PRIORITY );
+            return thread;
+        } );
+        addRequirements( mDrivetrain );
+    }
+
+}
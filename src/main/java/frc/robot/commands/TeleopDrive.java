@@ -3,6 +3,7 @@ package frc.robot.commands;
 import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj2.command.CommandBase;
 import frc.robot.Constants.DRIVER;
+import frc.robot.Constants.DRIVETRAIN;
 import frc.robot.subsystems.Drivetrain;
 
 public class TeleopDrive extends CommandBase {
@@ -16,10 +17,11 @@ public class TeleopDrive extends CommandBase {
 
     @Override
     public void execute() {
-        if ( mDriverThrottle.getX() < DRIVER.QUICKTURN_THRESHOLD ) {
-            mDrivetrain.SetOpenLoopOutput( mDriverThrottle.getY(), mDriverTurn.getX(), true );            
+        final boolean quickTurn = mDriverThrottle.getX() < DRIVER.QUICKTURN_THRESHOLD;
+        if ( DRIVETRAIN.USE_CLOSED_LOOP_TELEOP ) {
+            mDrivetrain.SetClosedLoopOutput( mDriverThrottle.getY(), mDriverTurn.getX(), quickTurn );
         } else {
-            mDrivetrain.SetOpenLoopOutput( mDriverThrottle.getY(), mDriverTurn.getX(), false );
+            mDrivetrain.SetOpenLoopOutput( mDriverThrottle.getY(), mDriverTurn.getX(), quickTurn );
         }
     }
 
@@ -0,0 +1,269 @@
+package frc.robot.lib.autonomous;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import edu.wpi.first.wpilibj2.command.Command;
+
+/**
+* This class holds the autonomous routines and builds their commands ahead of time, so starting a routine at the
+* beginning of the match is only a lookup and a schedule. Each routine is registered in two stages: a preparation which
+* does the slow data work (trajectory lookups, motion profile preparation), and a factory which builds the command
+* group from the prepared data. The preparations run on a background builder thread, and the commands are built from
+* their results on the main robot thread by {@link #Update()} while the robot is disabled. The selected routine is
+* re-prepared whenever the chooser selection changes, and after its command has been used.
+* <p>
+* If the selected routine isn't ready when autonomous starts, it is built right away and a warning is reported. The
+* time from the start of autonomous until the routine is scheduled (which includes its initialize) is measured and
+* reported every match.
+* <p>
+* The preparations must only work on data: they can't touch hardware, and they can't construct commands, since command
+* groups register their commands in static state that isn't thread safe. Everything else in this class, including the
+* factories, is meant to be called from the main robot thread.
+*/
+public class AutonomousRegistry {
+
+    /**
+    * A registered routine, along with the data being prepared for it.
+    */
+    private static final class Routine<T> {
+        private final Supplier<T> mPreparation;
+        private final Function<T, Command> mFactory;
+        private CompletableFuture<T> mData;
+
+        private Routine ( Supplier<T> preparation, Function<T, Command> factory ) {
+            mPreparation = preparation;
+            mFactory = factory;
+        }
+
+        /**
+        * This method will start preparing fresh data for the routine, replacing the data being prepared.
+        *
+        * @param executor Executor The executor to prepare the data on
+        */
+        private void Prepare ( Executor executor ) {
+            mData = CompletableFuture.supplyAsync( mPreparation, executor );
+        }
+
+        /**
+        * This method will return whether the data is being prepared.
+        *
+        * @return boolean True if the preparation was started and hasn't finished
+        */
+        private boolean IsPreparing () {
+            return mData != null && !mData.isDone();
+        }
+
+        /**
+        * This method will return whether the data is ready to build the command from.
+        *
+        * @return boolean True if the preparation was started and has finished
+        */
+        private boolean IsPrepared () {
+            return mData != null && mData.isDone();
+        }
+
+        /**
+        * This method will build the command from the prepared data, preparing it on the calling thread if it isn't
+        * ready. The data is used up, so the routine has to be prepared again before the next build.
+        *
+        * @return Command The command
+        */
+        private Command Build () {
+            final T data = IsPrepared() ? mData.join() : mPreparation.get();
+            mData = null;
+            return mFactory.apply( data );
+        }
+    }
+
+    private final Map<String, Routine<?>> mRoutines = new LinkedHashMap<>();
+    private final Map<String, Command> mBuilt = new HashMap<>();
+    private final SendableChooser<String> mChooser = new SendableChooser<>();
+    private final ExecutorService mBuilder;
+
+    // State
+    private String mLastSelected;
+    private Command mRunning;
+    private volatile double mLastStartSeconds;
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PUBLIC METHODS                                                 */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will register an autonomous routine and add it to the chooser. The first routine registered is the
+    * default selection.
+    *
+    * @param name String The name of the routine
+    * @param preparation Supplier<T> The preparation of the data of the routine, run on the builder thread
+    * @param factory Function<T, Command> The factory which builds the command of the routine from its data, run on the
+    * main robot thread
+    */
+    public <T> void Register ( String name, Supplier<T> preparation, Function<T, Command> factory ) {
+        if ( mRoutines.isEmpty() ) {
+            mChooser.setDefaultOption( name, name );
+        } else {
+            mChooser.addOption( name, name );
+        }
+        mRoutines.put( name, new Routine<>( preparation, factory ) );
+    }
+
+    /**
+    * This method will register an autonomous routine which doesn't need any data prepared.
+    *
+    * @param name String The name of the routine
+    * @param factory Supplier<Command> The factory which builds the command of the routine, run on the main robot thread
+    */
+    public void Register ( String name, Supplier<Command> factory ) {
+        Register( name, () -> null, data -> factory.get() );
+    }
+
+    /**
+    * This method will start preparing the data of every routine on the builder thread.
+    */
+    public void PrepareAll () {
+        mLastSelected = mChooser.getSelected();
+        for ( String name : mRoutines.keySet() ) {
+            Prepare( name );
+        }
+    }
+
+    /**
+    * This method will build the command of the selected routine once its data is prepared, and re-prepare the routine
+    * when the selection changed or its command was used. It is meant to be called periodically while the robot is
+    * disabled.
+    */
+    public void Update () {
+        final String selected = mChooser.getSelected();
+        if ( selected == null || !mRoutines.containsKey( selected ) ) {
+            return;
+        }
+        final Routine<?> routine = mRoutines.get( selected );
+        if ( !selected.equals( mLastSelected ) ) {
+            mLastSelected = selected;
+            Prepare( selected );
+        } else if ( !mBuilt.containsKey( selected ) && !routine.IsPreparing() ) {
+            if ( routine.IsPrepared() ) {
+                mBuilt.put( selected, Build( selected ) );
+            } else {
+                Prepare( selected );
+            }
+        }
+    }
+
+    /**
+    * This method will schedule the built command of the selected routine and record how long it took to start.
+    */
+    public void Start () {
+        final long start = RobotController.getFPGATime();
+        final String name = mChooser.getSelected();
+        if ( name == null || !mRoutines.containsKey( name ) ) {
+            return;
+        }
+        final Command command;
+        if ( mBuilt.containsKey( name ) ) {
+            command = mBuilt.remove( name );
+        } else {
+            DriverStation.reportWarning( "Autonomous " + name + " was not prepared, building it now", false );
+            command = Build( name );
+        }
+        if ( command == null ) {
+            return;
+        }
+        mRunning = command;
+        mRunning.schedule();
+        mLastStartSeconds = ( RobotController.getFPGATime() - start ) * 1.0e-6;
+        System.out.println( String.format( "Autonomous %s started in %.3fms", name, mLastStartSeconds * 1000.0 ) );
+    }
+
+    /**
+    * This method will cancel the running routine, if there is one.
+    */
+    public void Cancel () {
+        if ( mRunning != null ) {
+            mRunning.cancel();
+            mRunning = null;
+        }
+    }
+
+    /**
+    * This method will return the chooser of the routines, to be put on the dashboard.
+    *
+    * @return SendableChooser<String> The chooser
+    */
+    public SendableChooser<String> GetChooser () {
+        return mChooser;
+    }
+
+    /**
+    * This method will return how long the last routine took to start.
+    *
+    * @return double The time from the start of autonomous until the routine was scheduled in seconds
+    */
+    public double GetLastStartSeconds () {
+        return mLastStartSeconds;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PRIVATE METHODS                                                */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will start preparing fresh data for a routine on the builder thread, dropping its built command.
+    *
+    * @param name String The name of the routine
+    */
+    private void Prepare ( String name ) {
+        mBuilt.remove( name );
+        mRoutines.get( name ).Prepare( mBuilder );
+    }
+
+    /**
+    * This method will build the command of a routine on the calling thread. A preparation or factory which fails is
+    * reported.
+    *
+    * @param name String The name of the routine
+    * @return Command The command, or null if it couldn't be built
+    */
+    private Command Build ( String name ) {
+        final long start = System.nanoTime();
+        try {
+            Command command = mRoutines.get( name ).Build();
+            System.out.println( String.format( "Built autonomous %s in %.1fms", name,
+                                               ( System.nanoTime() - start ) * 1.0e-6 ) );
+            return command;
+        } catch ( RuntimeException e ) {
+            DriverStation.reportError( "Could not build autonomous " + name + ": " + e.getMessage(), false );
+            return null;
+        }
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                        CLASS CONSTRUCTOR AND OVERRIDES                                        */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * The constructor for the AutonomousRegistry class.
+    */
+    public AutonomousRegistry () {
+        mBuilder = Executors.newSingleThreadExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "AutonomousRegistry" );
+            thread.setDaemon( true );
+            thread.setPriority( Thread.MIN_PRIORITY );
+            return thread;
+        } );
+    }
+
+}
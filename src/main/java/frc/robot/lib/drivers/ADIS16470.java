@@ -4,14 +4,21 @@ import edu.wpi.first.hal.FRCNetComm.tResourceType;
 import edu.wpi.first.hal.HAL;
 import edu.wpi.first.hal.SimDevice;
 import edu.wpi.first.hal.SimDouble;
+import edu.wpi.first.hal.util.UncleanStatusException;
 import edu.wpi.first.networktables.NTSendable;
 import edu.wpi.first.networktables.NTSendableBuilder;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
 
 import edu.wpi.first.wpilibj.SPI;
 import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.DigitalOutput;
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.DriverStation;
 
@@ -97,45 +104,17 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
   private static final int FLSHCNT_LOW = 0x7C; // Flash update count, lower word
   private static final int FLSHCNT_HIGH = 0x7E; // Flash update count, upper word
 
-  private static final byte[] m_autospi_x_packet = {
+  // All three delta angles (for the attitude estimator), the rates, the accelerations and the
+  // temperature. The yaw axis only selects which delta angle is integrated into the yaw angle.
+  private static final byte[] m_autospi_packet = {
     X_DELTANG_OUT,
     FLASH_CNT,
     X_DELTANG_LOW,
     FLASH_CNT,
-    X_GYRO_OUT,
-    FLASH_CNT,
-    Y_GYRO_OUT,
-    FLASH_CNT,
-    Z_GYRO_OUT,
-    FLASH_CNT,
-    X_ACCL_OUT,
-    FLASH_CNT,
-    Y_ACCL_OUT,
-    FLASH_CNT,
-    Z_ACCL_OUT,
-    FLASH_CNT
-  };
-
-  private static final byte[] m_autospi_y_packet = {
     Y_DELTANG_OUT,
     FLASH_CNT,
     Y_DELTANG_LOW,
     FLASH_CNT,
-    X_GYRO_OUT,
-    FLASH_CNT,
-    Y_GYRO_OUT,
-    FLASH_CNT,
-    Z_GYRO_OUT,
-    FLASH_CNT,
-    X_ACCL_OUT,
-    FLASH_CNT,
-    Y_ACCL_OUT,
-    FLASH_CNT,
-    Z_ACCL_OUT,
-    FLASH_CNT
-  };
-
-  private static final byte[] m_autospi_z_packet = {
     Z_DELTANG_OUT,
     FLASH_CNT,
     Z_DELTANG_LOW,
@@ -150,11 +129,15 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
     FLASH_CNT,
     Y_ACCL_OUT,
     FLASH_CNT,
+    Z_ACCL_OUT,
+    FLASH_CNT,
     TEMP_OUT,
     FLASH_CNT
-    // Z_ACCL_OUT,
-    // FLASH_CNT
-};
+  };
+
+  // Burst read command (DIAG_STAT, the rates, the accelerations, TEMP_OUT, DATA_CNTR, checksum)
+  private static final byte[] m_autospi_burst_packet = {0x68, 0x00};
+  private static final int BURST_LEN = 20;
 
   public enum CalibrationTime {
     _32ms(0),
@@ -177,43 +160,232 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
     }
   }
 
+  /**
+   * Output data rate profiles. Each profile sets the device decimation together with the acquire
+   * thread's batching (samples per wakeup and the batch deadline) and the largest backlog it will
+   * read in one wakeup before reporting an overrun, so the thread wakes up about every 5-10 ms at
+   * any rate. 2000 Hz needs {@link ReadMode#kBurst}; the register packet takes too long on the
+   * bus, so it is rejected in the register mode and dropped to 1000 Hz when that mode is entered.
+   */
+  public enum OutputDataRate {
+    k100Hz(19, 1, 0.02),
+    k200Hz(9, 1, 0.02),
+    k400Hz(4, 2, 0.01),
+    k1000Hz(1, 5, 0.01),
+    k2000Hz(0, 10, 0.01);
+
+    private final int decRate;
+    private final int framesPerWakeup;
+    private final double wakeupTimeout;
+
+    private OutputDataRate(int decRate, int framesPerWakeup, double wakeupTimeout) {
+      this.decRate = decRate;
+      this.framesPerWakeup = framesPerWakeup;
+      this.wakeupTimeout = wakeupTimeout;
+    }
+
+    /** @return Samples per second */
+    public double getHz() {
+      return 2000.0 / (decRate + 1);
+    }
+  }
+
+  /**
+   * Auto SPI read modes. The register mode reads the 32-bit delta angles register by register. The
+   * burst mode reads the rates, accelerations and temperature with a single command and checks the
+   * checksum, which takes about a third of the bus time but integrates the 16-bit rates instead of
+   * the delta angles.
+   */
+  public enum ReadMode {
+    kRegister,
+    kBurst
+  }
+
   public enum IMUAxis {
     kX,
     kY,
     kZ
   }
 
-  // Static Constants
-  private static final double delta_angle_sf = 2160.0 / 2147483648.0; /* 2160 / (2^31) */
-  private static final double rad_to_deg = 57.2957795;
-  private static final double deg_to_rad = 0.0174532;
-  private static final double grav = 9.81;
+  /** Startup progress of the IMU */
+  public enum InitState {
+    RESETTING,
+    SELF_TEST,
+    CALIBRATING,
+    READY,
+    FAILED
+  }
 
   // User-specified yaw axis
   private IMUAxis m_yaw_axis;
 
-  // Instant raw outputs
-  private double m_gyro_rate_x = 0.0;
-  private double m_gyro_rate_y = 0.0;
-  private double m_gyro_rate_z = 0.0;
-  private double m_accel_x = 0.0;
-  private double m_accel_y = 0.0;
-  //private double m_accel_z = 0.0;
-  private double m_temp = 0.0;
-
-  // Integrated gyro angle
-  private double m_integ_angle = 0.0;
-
-  // Complementary filter variables
-  private double m_dt = 0.0;
-  private double m_alpha = 0.0;
-  private double m_tau = 1.0;
-  private double m_compAngleX = 0.0;
-  private double m_compAngleY = 0.0;
-  private double m_accelAngleX = 0.0;
-  private double m_accelAngleY = 0.0;
+  /**
+   * An immutable set of IMU outputs decoded from one sample. The acquire thread is the only writer
+   * and publishes a new instance through a volatile reference, so a reader gets a consistent set of
+   * values from a single wait-free load.
+   */
+  public static final class Sample {
+    /** FPGA timestamp of the sample in seconds */
+    public final double timestamp;
+    /** Integrated yaw axis angle in degrees (CCW positive) */
+    public final double angle;
+    /** X axis angular rate in degrees per second */
+    public final double gyroRateX;
+    /** Y axis angular rate in degrees per second */
+    public final double gyroRateY;
+    /** Z axis angular rate in degrees per second */
+    public final double gyroRateZ;
+    /** X axis acceleration in g */
+    public final double accelX;
+    /** Y axis acceleration in g */
+    public final double accelY;
+    /** Z axis acceleration in g */
+    public final double accelZ;
+    /** Die temperature in degrees C */
+    public final double temp;
+    /** X axis complementary angle in degrees */
+    public final double compAngleX;
+    /** Y axis complementary angle in degrees */
+    public final double compAngleY;
+    /** X axis filtered acceleration angle in degrees */
+    public final double accelAngleX;
+    /** Y axis filtered acceleration angle in degrees */
+    public final double accelAngleY;
+    /** 3-axis attitude from the delta angles and gravity */
+    public final ADIS16470AttitudeEstimator.Attitude attitude;
+    // Number of angle resets the decoder had applied when it decoded the sample
+    final long resets;
+
+    Sample(
+        double timestamp,
+        double angle,
+        double gyroRateX,
+        double gyroRateY,
+        double gyroRateZ,
+        double accelX,
+        double accelY,
+        double accelZ,
+        double temp,
+        double compAngleX,
+        double compAngleY,
+        double accelAngleX,
+        double accelAngleY,
+        ADIS16470AttitudeEstimator.Attitude attitude,
+        long resets) {
+      this.timestamp = timestamp;
+      this.angle = angle;
+      this.gyroRateX = gyroRateX;
+      this.gyroRateY = gyroRateY;
+      this.gyroRateZ = gyroRateZ;
+      this.accelX = accelX;
+      this.accelY = accelY;
+      this.accelZ = accelZ;
+      this.temp = temp;
+      this.compAngleX = compAngleX;
+      this.compAngleY = compAngleY;
+      this.accelAngleX = accelAngleX;
+      this.accelAngleY = accelAngleY;
+      this.attitude = attitude;
+      this.resets = resets;
+    }
+
+    /**
+     * @param angle The yaw angle of the copy in degrees
+     * @return A copy of this sample with a different yaw angle
+     */
+    Sample withAngle(double angle) {
+      return new Sample(
+          timestamp,
+          angle,
+          gyroRateX,
+          gyroRateY,
+          gyroRateZ,
+          accelX,
+          accelY,
+          accelZ,
+          temp,
+          compAngleX,
+          compAngleY,
+          accelAngleX,
+          accelAngleY,
+          attitude,
+          resets);
+    }
+  }
+
+  /**
+   * A reset the decoder hasn't published yet: until a sample decoded after it shows up, the readers
+   * subtract the angle the reset was requested at.
+   */
+  private static final class PendingReset {
+    // Reset count of the latest sample when the reset was requested
+    final long resets;
+    // Integrated angle of that sample in degrees
+    final double angle;
+
+    PendingReset(long resets, double angle) {
+      this.resets = resets;
+      this.angle = angle;
+    }
+  }
+
+  // Time-indexed sample history (about 5s at 400Hz)
+  private static final int HISTORY_SIZE = 2048;
+  private final ADIS16470History m_history = new ADIS16470History(HISTORY_SIZE);
+
+  // Sample decoding pipeline (decodes on the acquire thread, publishes to everyone else)
+  private final ADIS16470Decoder m_decoder = new ADIS16470Decoder(m_history);
+
+  // Raw frame capture, if one is running
+  private volatile ADIS16470Recorder m_recorder = null;
+
+  // Acquisition batching: DMA words per sample and read buffer size. A register mode sample is 29
+  // words (28 data points + timestamp), a burst mode sample 23 (see ADIS16470Decoder). The DMA
+  // buffer can only be sized once, so it holds about 280 ms of register samples at 1000 Hz (the
+  // fastest register rate) and about 178 ms of burst samples at 2000 Hz.
+  private static final int DATASET_LEN = ADIS16470Decoder.DATASET_LEN;
+  private static final int BUFFER_SIZE = 4000;
+  private static final int DMA_BUFFER_SIZE = 8200;
+  private static final double OVERRUN_BACKLOG = 0.1; // s of samples read in one wakeup
+  private volatile OutputDataRate m_output_data_rate = OutputDataRate.k200Hz;
+  private volatile int m_frames_per_wakeup = 1;
+  private volatile double m_wakeup_timeout = 0.02;
+  private volatile int m_overrun_frames = BUFFER_SIZE / DATASET_LEN;
+
+  // Acquire thread health metrics
+  private final ADIS16470Stats m_stats = new ADIS16470Stats();
+  private static final long OVERRUN_REPORT_PERIOD = 5000000; // us
+
+  // Status of a DMA read whose deadline passed before the requested words arrived
+  private static final int FIFO_TIMEOUT_STATUS = -50400; // NiFpga_Status_FifoTimeout
+
+  // Sample-to-publish latency in seconds (written only by the acquire thread)
+  private volatile double m_latency = 0.0;
+  private volatile double m_average_latency = 0.0;
+
+  // Reconfiguration queued for applyQueuedConfiguration (guarded by m_queue_lock, so queueing
+  // doesn't wait for a reconfiguration). Every reconfiguration path holds the object monitor, so
+  // they can't interleave their standard/auto SPI switches.
+  private final Object m_queue_lock = new Object();
+  private CalibrationTime m_queued_cal_time = null;
+  private OutputDataRate m_queued_output_data_rate = null;
+  private IMUAxis m_queued_yaw_axis = null;
+  private ReadMode m_queued_read_mode = null;
+  private static final double RESUME_TIMEOUT = 0.25; // s
+
+  // Reset requested by reset() which the decoder hasn't published yet (null if there isn't one)
+  private volatile PendingReset m_pending_reset = null;
+
+  // Auto SPI read mode (see configReadMode)
+  private volatile ReadMode m_read_mode = ReadMode.kRegister;
+  private volatile boolean m_burst_fallback = false;
+
+  // Startup state
+  private volatile InitState m_init_state = InitState.RESETTING;
+  private final CompletableFuture<InitState> m_init_future = new CompletableFuture<>();
 
   // State variables
+  private final Object m_thread_signal = new Object();
   private volatile boolean m_thread_active = false;
   private int m_calibration_time = 0;
   private volatile boolean m_first_run = true;
@@ -264,10 +436,29 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
    * @param cal_time Calibration time
    */
   public ADIS16470(IMUAxis yaw_axis, SPI.Port port, CalibrationTime cal_time) {
+    this(yaw_axis, port, cal_time, false);
+  }
+
+  /**
+   * Create the IMU and optionally run the reset, self-test and calibration sequence on a background
+   * thread. The sequence takes over 30 seconds, so with async set the constructor returns right
+   * away and callers should gate anything heading-dependent on {@link #isReady()} or {@link
+   * #getReadyFuture()}.
+   *
+   * @param yaw_axis The axis that measures the yaw
+   * @param port The SPI Port the gyro is plugged into
+   * @param cal_time Calibration time
+   * @param async True to initialize on a background thread, false to block until initialized
+   */
+  public ADIS16470(IMUAxis yaw_axis, SPI.Port port, CalibrationTime cal_time, boolean async) {
     m_yaw_axis = yaw_axis;
+    m_decoder.setYawAxis(yaw_axis);
     m_calibration_time = cal_time.value;
     m_spi_port = port;
 
+    // Only learn the yaw bias while disabled, when nothing can be driving a slow steady rotation
+    m_decoder.getBiasEstimator().setLearningGate(DriverStation::isDisabled);
+
     m_acquire_task = new Thread(new AcquireTask(this));
 
     m_simDevice = SimDevice.create("Gyro:ADIS16470", port.value);
@@ -284,6 +475,24 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
     }
 
     if (m_simDevice == null) {
+      if (async) {
+        Thread init_task = new Thread(this::initialize, "ADIS16470 Init");
+        init_task.setDaemon(true);
+        init_task.start();
+      } else {
+        initialize();
+      }
+    } else {
+      setInitState(InitState.READY);
+    }
+
+    // Report usage and post data to DS
+    HAL.report(tResourceType.kResourceType_ADIS16470, 0);
+  }
+
+  /** Reset, self-test and calibrate the IMU, and then start acquisition. */
+  private void initialize() {
+    try {
       // Force the IMU reset pin to toggle on startup (doesn't require DS enable)
       // Relies on the RIO hardware by default configuring an output as low
       // and configuring an input as high Z. The 10k pull-up resistor internal to the
@@ -295,6 +504,7 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
       Timer.delay(0.25); // Wait 250ms for reset to complete
 
       if (!switchToStandardSPI()) {
+        setInitState(InitState.FAILED);
         return;
       }
 
@@ -333,23 +543,35 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
 
 
       // Run selftest and report results (DIAG_STAT bit 5)
+      setInitState(InitState.SELF_TEST);
       writeRegister(GLOB_CMD, 0x0004);
       try {Thread.sleep(1000);} catch (InterruptedException e) {}
       DriverStation.reportError( "ADIS16470 Selftest DIAG_STAT register: " + readRegister(DIAG_STAT), false);
 
+      // Gyro-only CBE over the user-defined time (the factory default is about 33 s). The
+      // zero-motion bias estimator trims out what is left once auto SPI is running.
+      writeRegister(NULL_CNFG, (m_calibration_time | 0x0700));
+
       // Notify DS that IMU calibration delay is active
+      setInitState(InitState.CALIBRATING);
       DriverStation.reportWarning("ADIS16470 starting initial calibration delay.", false);
 
       // Wait for samples to accumulate internal to the IMU (110% of user-defined time)
-      //try {Thread.sleep((long) (Math.pow(2.0, m_calibration_time) / 2000 * 64 * 1.1 * 1000));} catch (InterruptedException e) {}
-      try {Thread.sleep(30000);} catch (InterruptedException e) {}
+      try {Thread.sleep((long) (Math.pow(2.0, m_calibration_time) / 2000 * 64 * 1.1 * 1000));} catch (InterruptedException e) {}
 
       // Write offset calibration command to IMU
       writeRegister(GLOB_CMD, 0x0001);
 
-      // Configure and enable auto SPI
-      if (!switchToAutoSPI()) {
-        return;
+      // Output data rate (the factory default is the full 2000 SPS) and auto SPI. The
+      // configuration calls made during startup only store their settings, so this takes the same
+      // lock to pick up the latest ones.
+      synchronized (this) {
+        setOutputDataRateParameters(supportedRate(m_output_data_rate, m_read_mode));
+        writeRegister(DEC_RATE, m_output_data_rate.decRate);
+        if (!switchToAutoSPI()) {
+          setInitState(InitState.FAILED);
+          return;
+        }
       }
 
       // Let the user know the IMU was initiallized successfully
@@ -357,43 +579,44 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
 
       // Drive "Ready" LED low
       m_status_led = new DigitalOutput(28); // Set SPI CS3 (IMU Ready LED) low
+      setInitState(InitState.READY);
+    } catch (RuntimeException e) {
+      DriverStation.reportError("ADIS16470 initialization failed: " + e.getMessage(), false);
+      setInitState(InitState.FAILED);
     }
-
-    // Report usage and post data to DS
-    HAL.report(tResourceType.kResourceType_ADIS16470, 0);
   }
 
   /**
-   * @param buf
-   * @return
+   * @param state The new startup state
    */
-  private static int toUShort(ByteBuffer buf) {
-    return (buf.getShort(0)) & 0xFFFF;
+  private void setInitState(InitState state) {
+    m_init_state = state;
+    if (state == InitState.READY || state == InitState.FAILED) {
+      m_init_future.complete(state);
+    }
   }
 
-  /**
-   * @param sint
-   * @return
-   */
-  private static long toULong(int sint) {
-    return sint & 0x00000000FFFFFFFFL;
+  /** @return The startup progress of the IMU */
+  public InitState getInitState() {
+    return m_init_state;
   }
 
-  /**
-   * @param buf
-   * @return
-   */
-  private static int toShort(int... buf) {
-    return (short) (((buf[0] & 0xFF) << 8) + ((buf[1] & 0xFF) << 0));
+  /** @return True once the IMU has been calibrated and is producing data */
+  public boolean isReady() {
+    return m_init_state == InitState.READY;
+  }
+
+  /** @return A future that completes with {@link InitState#READY} or {@link InitState#FAILED} */
+  public CompletableFuture<InitState> getReadyFuture() {
+    return m_init_future;
   }
 
   /**
    * @param buf
    * @return
    */
-  private static int toInt(int... buf) {
-    return (int)
-        ((buf[0] & 0xFF) << 24 | (buf[1] & 0xFF) << 16 | (buf[2] & 0xFF) << 8 | (buf[3] & 0xFF));
+  private static int toUShort(ByteBuffer buf) {
+    return (buf.getShort(0)) & 0xFFFF;
   }
 
   /**
@@ -405,11 +628,15 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
     // Check to see whether the acquire thread is active. If so, wait for it to stop
     // producing data.
     if (m_thread_active) {
-      m_thread_active = false;
-      while (!m_thread_idle) {
-        try {
-          Thread.sleep(10);
-        } catch (InterruptedException e) {
+      synchronized (m_thread_signal) {
+        m_thread_active = false;
+        // The acquire thread signals as soon as it goes idle; the timeout only guards against a
+        // thread that has died
+        while (!m_thread_idle && m_acquire_task.isAlive()) {
+          try {
+            m_thread_signal.wait(10);
+          } catch (InterruptedException e) {
+          }
         }
       }
       System.out.println("Paused the IMU processing thread successfully!");
@@ -421,15 +648,21 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
         // Sometimes data magically reappears, so we have to check the buffer size a
         // couple of times
         // to be sure we got it all. Yuck.
+        // Rather than a fixed 100ms, wait two sample periods at a time until nothing new shows up.
         int[] trashBuffer = new int[200];
-        try {
-          Thread.sleep(100);
-        } catch (InterruptedException e) {
-        }
-        int data_count = m_spi.readAutoReceivedData(trashBuffer, 0, 0);
-        while (data_count > 0) {
-          m_spi.readAutoReceivedData(trashBuffer, Math.min(data_count, 200), 0);
-          data_count = m_spi.readAutoReceivedData(trashBuffer, 0, 0);
+        final long settle = Math.max((long) (2.0 * m_scaled_sample_rate / 1000.0), 5);
+        int drained = 1;
+        while (drained > 0) {
+          try {
+            Thread.sleep(settle);
+          } catch (InterruptedException e) {
+          }
+          int data_count = m_spi.readAutoReceivedData(trashBuffer, 0, 0);
+          drained = data_count;
+          while (data_count > 0) {
+            m_spi.readAutoReceivedData(trashBuffer, Math.min(data_count, 200), 0);
+            data_count = m_spi.readAutoReceivedData(trashBuffer, 0, 0);
+          }
         }
         System.out.println("Paused auto SPI successfully.");
       }
@@ -483,23 +716,24 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
     // The auto SPI controller gets angry if you try to set up two instances on one
     // bus.
     if (!m_auto_configured) {
-      m_spi.initAuto(8200);
+      m_spi.initAuto(DMA_BUFFER_SIZE);
       m_auto_configured = true;
     }
-    // Do we need to change auto SPI settings?
-    switch (m_yaw_axis) {
-      case kX:
-        m_spi.setAutoTransmitData(m_autospi_x_packet, 2);
-        break;
-      case kY:
-        m_spi.setAutoTransmitData(m_autospi_y_packet, 2);
-        break;
-      default:
-        m_spi.setAutoTransmitData(m_autospi_z_packet, 2);
-        break;
+    m_decoder.setReadMode(m_read_mode);
+    if (m_read_mode == ReadMode.kBurst) {
+      // Burst reads are limited to 1 MHz and can't be stalled between words
+      m_spi.setClockRate(1000000);
+      m_spi.setAutoTransmitData(m_autospi_burst_packet, BURST_LEN);
+    } else {
+      m_spi.setClockRate(2000000);
+      m_spi.setAutoTransmitData(m_autospi_packet, 2);
     }
     // Configure auto stall time
-    m_spi.configureAutoStall(5, 1000, 1);
+    if (m_read_mode == ReadMode.kBurst) {
+      m_spi.configureAutoStall(5, 1000, 255);
+    } else {
+      m_spi.configureAutoStall(5, 1000, 1);
+    }
     // Kick off auto SPI (Note: Device configration impossible after auto SPI is
     // activated)
     // DR High = Data good (data capture should be triggered on the rising edge)
@@ -508,13 +742,18 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
     // Check to see if the acquire thread is running. If not, kick one off.
     if (!m_acquire_task.isAlive()) {
       m_first_run = true;
+      m_thread_idle = false;
       m_thread_active = true;
       m_acquire_task.start();
       System.out.println("Processing thread activated!");
     } else {
-      // The thread was running, re-init run variables and start it up again.
-      m_first_run = true;
-      m_thread_active = true;
+      // The thread was running, re-init run variables and wake it up again.
+      synchronized (m_thread_signal) {
+        m_first_run = true;
+        m_thread_idle = false;
+        m_thread_active = true;
+        m_thread_signal.notifyAll();
+      }
       System.out.println("Processing thread activated!");
     }
     // Looks like the thread didn't start for some reason. Abort.
@@ -532,10 +771,14 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
    * @param new_cal_time New calibration time
    * @return 1 if the new calibration time is the same as the current one else 0
    */
-  public int configCalTime(CalibrationTime new_cal_time) {
+  public synchronized int configCalTime(CalibrationTime new_cal_time) {
     if (m_calibration_time == new_cal_time.value) {
       return 1;
     }
+    if (m_init_state != InitState.READY) {
+      DriverStation.reportError("ADIS16470 can't be configured until it is initialized.", false);
+      return 2;
+    }
     if (!switchToStandardSPI()) {
       DriverStation.reportError("Failed to configure/reconfigure standard SPI.", false);
       return 2;
@@ -549,19 +792,67 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
     return 0;
   }
 
-  public int configDecRate(int reg) {
-    int m_reg = reg;
+  /**
+   * Configures the output data rate, along with the acquire thread batching and overrun threshold
+   * that go with it. If the IMU is still starting up, the profile is used once it gets there.
+   *
+   * @param rate The output data rate profile
+   * @return 0 on success, 2 if the profile needs burst reads or the IMU could not be reconfigured
+   */
+  public synchronized int configOutputDataRate(OutputDataRate rate) {
+    if (supportedRate(rate, m_read_mode) != rate) {
+      DriverStation.reportError("ADIS16470 " + rate + " needs the burst read mode.", false);
+      return 2;
+    }
+    if (m_init_state != InitState.READY) {
+      m_output_data_rate = rate;
+      return 0;
+    }
     if (!switchToStandardSPI()) {
       DriverStation.reportError("Failed to configure/reconfigure standard SPI.", false);
       return 2;
     }
-    if (m_reg > 1999) {
-      DriverStation.reportError("Attemted to write an invalid deimation value.", false);
-      m_reg = 1999;
+    setOutputDataRateParameters(rate);
+    writeRegister(DEC_RATE, rate.decRate);
+    if (!switchToAutoSPI()) {
+      DriverStation.reportError("Failed to configure/reconfigure auto SPI.", false);
+      return 2;
+    }
+    return 0;
+  }
+
+  /**
+   * Configures the auto SPI read mode. If the IMU is still starting up, the mode is used once it
+   * gets there. Any running capture is stopped, since its frame format changes. Leaving the burst
+   * mode at 2000 Hz drops the output data rate to 1000 Hz.
+   *
+   * @param mode The read mode
+   * @return 1 if the mode is already in use, 2 if the IMU could not be reconfigured, else 0
+   */
+  public synchronized int configReadMode(ReadMode mode) {
+    if (m_read_mode == mode) {
+      return 1;
+    }
+    final OutputDataRate rate = supportedRate(m_output_data_rate, mode);
+    if (rate != m_output_data_rate) {
+      DriverStation.reportWarning(
+          "ADIS16470 " + mode + " reads can't keep up, using " + rate + ".", false);
     }
-    m_scaled_sample_rate = (((m_reg + 1.0) / 2000.0) * 1000000.0);
-    writeRegister(DEC_RATE, m_reg);
-    System.out.println("Decimation register: " + readRegister(DEC_RATE));
+    if (m_init_state != InitState.READY) {
+      m_output_data_rate = rate;
+      m_read_mode = mode;
+      return 0;
+    }
+    stopCapture();
+    if (!switchToStandardSPI()) {
+      DriverStation.reportError("Failed to configure/reconfigure standard SPI.", false);
+      return 2;
+    }
+    if (rate != m_output_data_rate) {
+      setOutputDataRateParameters(rate);
+      writeRegister(DEC_RATE, rate.decRate);
+    }
+    m_read_mode = mode;
     if (!switchToAutoSPI()) {
       DriverStation.reportError("Failed to configure/reconfigure auto SPI.", false);
       return 2;
@@ -569,12 +860,345 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
     return 0;
   }
 
+  /**
+   * Queue a calibration time change for {@link #applyQueuedConfiguration()}.
+   *
+   * @param cal_time New calibration time
+   */
+  public void queueCalTime(CalibrationTime cal_time) {
+    synchronized (m_queue_lock) {
+      m_queued_cal_time = cal_time;
+    }
+  }
+
+  /**
+   * Queue an output data rate change for {@link #applyQueuedConfiguration()}.
+   *
+   * @param rate New output data rate profile
+   */
+  public void queueOutputDataRate(OutputDataRate rate) {
+    synchronized (m_queue_lock) {
+      m_queued_output_data_rate = rate;
+    }
+  }
+
+  /**
+   * Queue a yaw axis change for {@link #applyQueuedConfiguration()}.
+   *
+   * @param yaw_axis New yaw axis
+   */
+  public void queueYawAxis(IMUAxis yaw_axis) {
+    synchronized (m_queue_lock) {
+      m_queued_yaw_axis = yaw_axis;
+    }
+  }
+
+  /**
+   * Queue a read mode change for {@link #applyQueuedConfiguration()}.
+   *
+   * @param mode New read mode
+   */
+  public void queueReadMode(ReadMode mode) {
+    synchronized (m_queue_lock) {
+      m_queued_read_mode = mode;
+    }
+  }
+
+  /**
+   * Apply every queued change in a single pause of auto SPI, then wait (up to 250ms) for the first
+   * new sample. The pause, the register writes and the wait run on a helper thread, so this returns
+   * right away and is safe to call from the main robot loop. The integrated yaw carries across the
+   * pause; the gap is bridged with the last yaw rate before it. Changes that match the current
+   * configuration are skipped. A 2000 Hz rate without the burst read mode is dropped to 1000 Hz.
+   *
+   * @return Completes with the measured data gap in seconds (0 if nothing had to change), or NaN if
+   *     the IMU isn't ready, couldn't be reconfigured or didn't resume in time
+   */
+  public CompletableFuture<Double> applyQueuedConfiguration() {
+    final CalibrationTime cal_time;
+    final OutputDataRate rate;
+    final IMUAxis yaw_axis;
+    final ReadMode mode;
+    synchronized (m_queue_lock) {
+      cal_time = m_queued_cal_time;
+      rate = m_queued_output_data_rate;
+      yaw_axis = m_queued_yaw_axis;
+      mode = m_queued_read_mode;
+      m_queued_cal_time = null;
+      m_queued_output_data_rate = null;
+      m_queued_yaw_axis = null;
+      m_queued_read_mode = null;
+    }
+    final CompletableFuture<Double> gap = new CompletableFuture<>();
+    Thread reconfigure =
+        new Thread(
+            () -> gap.complete(applyConfiguration(cal_time, rate, yaw_axis, mode)),
+            "ADIS16470 Reconfigure");
+    reconfigure.setDaemon(true);
+    reconfigure.start();
+    return gap;
+  }
+
+  /**
+   * Apply a set of changes in a single pause of auto SPI and wait for the first new sample (see
+   * {@link #applyQueuedConfiguration()}). Blocks, so it runs on a helper thread.
+   *
+   * @param cal_time New calibration time, or null to keep it
+   * @param queued_rate New output data rate profile, or null to keep it
+   * @param yaw_axis New yaw axis, or null to keep it
+   * @param mode New read mode, or null to keep it
+   * @return The measured data gap in seconds (0 if nothing had to change), or NaN on failure
+   */
+  private synchronized double applyConfiguration(
+      CalibrationTime cal_time, OutputDataRate queued_rate, IMUAxis yaw_axis, ReadMode mode) {
+    OutputDataRate rate = queued_rate;
+    if (m_init_state != InitState.READY) {
+      DriverStation.reportError("ADIS16470 can't be configured until it is initialized.", false);
+      return Double.NaN;
+    }
+    final ReadMode new_mode = (mode != null) ? mode : m_read_mode;
+    final OutputDataRate new_rate = (rate != null) ? rate : m_output_data_rate;
+    if (supportedRate(new_rate, new_mode) != new_rate) {
+      rate = supportedRate(new_rate, new_mode);
+      DriverStation.reportWarning(
+          "ADIS16470 " + new_rate + " needs the burst read mode, using " + rate + ".", false);
+    }
+    final boolean change_cal_time = cal_time != null && cal_time.value != m_calibration_time;
+    final boolean change_rate = rate != null && rate != m_output_data_rate;
+    final boolean change_yaw_axis = yaw_axis != null && yaw_axis != m_yaw_axis;
+    final boolean change_mode = mode != null && mode != m_read_mode;
+    if (!change_cal_time && !change_rate && !change_yaw_axis && !change_mode) {
+      return 0.0;
+    }
+    if (change_rate || change_mode) {
+      // The capture header describes a single rate and frame format
+      stopCapture();
+    }
+
+    final long resumes = m_decoder.getResumes();
+    if (!switchToStandardSPI()) {
+      DriverStation.reportError("Failed to configure/reconfigure standard SPI.", false);
+      return Double.NaN;
+    }
+    if (change_cal_time) {
+      m_calibration_time = cal_time.value;
+      writeRegister(NULL_CNFG, (m_calibration_time | 0x700));
+    }
+    if (change_rate) {
+      setOutputDataRateParameters(rate);
+      writeRegister(DEC_RATE, rate.decRate);
+    }
+    if (change_yaw_axis) {
+      m_yaw_axis = yaw_axis;
+      m_decoder.setYawAxis(yaw_axis);
+    }
+    if (change_mode) {
+      m_read_mode = mode;
+    }
+    if (!switchToAutoSPI()) {
+      DriverStation.reportError("Failed to configure/reconfigure auto SPI.", false);
+      return Double.NaN;
+    }
+
+    final double deadline = Timer.getFPGATimestamp() + RESUME_TIMEOUT;
+    while (m_decoder.getResumes() == resumes) {
+      if (Timer.getFPGATimestamp() > deadline) {
+        return Double.NaN;
+      }
+      Timer.delay(0.001);
+    }
+    return m_decoder.getLastGap();
+  }
+
+  /** @return Data gap in seconds of the most recent reconfiguration */
+  public double getLastReconfigurationGap() {
+    return m_decoder.getLastGap();
+  }
+
+  /** @return The current auto SPI read mode */
+  public ReadMode getReadMode() {
+    return m_read_mode;
+  }
+
+  /** @return The current output data rate profile */
+  public OutputDataRate getOutputDataRate() {
+    return m_output_data_rate;
+  }
+
+  /**
+   * Measure the acquire thread's cost at every output data rate profile. Each profile runs for the
+   * given time and the thread CPU time, wakeups, samples and decode time are reported (and printed
+   * to the console). This blocks for several times the given time, so run it from a background
+   * thread with the robot disabled and still; other reconfiguration calls wait for it to finish.
+   * The original profile is restored afterwards. The 2000 Hz profile is skipped unless the burst
+   * read mode is in use.
+   *
+   * @param seconds Time to measure each profile for
+   * @return The report, or an empty string if the IMU isn't ready
+   */
+  public synchronized String benchmarkOutputDataRates(double seconds) {
+    if (m_init_state != InitState.READY) {
+      return "";
+    }
+    final OutputDataRate original = m_output_data_rate;
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    final boolean cpu_time = threads.isThreadCpuTimeSupported();
+    if (cpu_time) {
+      threads.setThreadCpuTimeEnabled(true);
+    }
+    final StringBuilder report = new StringBuilder();
+    report.append(
+        String.format(
+            "%-8s %9s %9s %9s %11s %9s%n",
+            "Rate", "CPU %", "Wakeups/s", "Samples/s", "Decode us/s", "Overruns"));
+
+    for (OutputDataRate rate : OutputDataRate.values()) {
+      if (supportedRate(rate, m_read_mode) != rate) {
+        report.append(String.format("%-8s needs the burst read mode%n", rate));
+        continue;
+      }
+      if (configOutputDataRate(rate) != 0) {
+        report.append(String.format("%-8s failed to configure%n", rate));
+        continue;
+      }
+      Timer.delay(0.5); // Let the first run and the filters settle
+
+      final long wakeups = m_stats.getWakeups();
+      final long frames = m_stats.getFrames();
+      final long truncated = m_stats.getTruncatedReads();
+      final double decode = m_stats.getAverageDecodeNanos() * wakeups;
+      final long cpu = cpu_time ? threads.getThreadCpuTime(m_acquire_task.getId()) : -1;
+      final long start = System.nanoTime();
+      Timer.delay(seconds);
+      final double elapsed = (System.nanoTime() - start) / 1e9;
+
+      final long new_wakeups = m_stats.getWakeups();
+      final double cpu_percent =
+          cpu_time
+              ? (threads.getThreadCpuTime(m_acquire_task.getId()) - cpu) / (elapsed * 1e7)
+              : Double.NaN;
+      report.append(
+          String.format(
+              "%-8s %9.2f %9.1f %9.1f %11.1f %9d%n",
+              rate,
+              cpu_percent,
+              (new_wakeups - wakeups) / elapsed,
+              (m_stats.getFrames() - frames) / elapsed,
+              (m_stats.getAverageDecodeNanos() * new_wakeups - decode) / elapsed / 1000.0,
+              m_stats.getTruncatedReads() - truncated));
+    }
+
+    configOutputDataRate(original);
+    System.out.print(report);
+    return report.toString();
+  }
+
+  /**
+   * Limit an output data rate profile to what a read mode can keep up with.
+   *
+   * @param rate An output data rate profile
+   * @param mode A read mode
+   * @return The profile, or 1000 Hz if the profile is too fast for the read mode
+   */
+  private static OutputDataRate supportedRate(OutputDataRate rate, ReadMode mode) {
+    if (rate == OutputDataRate.k2000Hz && mode != ReadMode.kBurst) {
+      return OutputDataRate.k1000Hz;
+    }
+    return rate;
+  }
+
+  /**
+   * Set the sample rate scaling, batching and overrun threshold for a profile. The acquire thread
+   * must be idle (standard SPI mode) or not yet started.
+   */
+  private void setOutputDataRateParameters(OutputDataRate rate) {
+    m_output_data_rate = rate;
+    m_scaled_sample_rate = (((rate.decRate + 1.0) / 2000.0) * 1000000.0);
+    m_decoder.setScaledSampleRate(m_scaled_sample_rate);
+    configBatching(rate.framesPerWakeup, rate.wakeupTimeout);
+    int frames = Math.max((int) (rate.getHz() * OVERRUN_BACKLOG), 4 * rate.framesPerWakeup);
+    m_overrun_frames = Math.min(frames, BUFFER_SIZE / DATASET_LEN);
+  }
+
+  /**
+   * Configures the device decimation. Only the decimations of the {@link OutputDataRate} profiles
+   * are supported, so the batching and overrun threshold change along with it.
+   *
+   * @param reg The DEC_RATE register value (the output data rate is 2000 Hz / (reg + 1))
+   * @return 0 on success, 2 if no profile has the decimation, the profile needs burst reads or the
+   *     IMU could not be reconfigured
+   * @deprecated Use {@link #configOutputDataRate(OutputDataRate)}
+   */
+  @Deprecated
+  public synchronized int configDecRate(int reg) {
+    for (OutputDataRate rate : OutputDataRate.values()) {
+      if (rate.decRate == reg) {
+        return configOutputDataRate(rate);
+      }
+    }
+    DriverStation.reportError("Attempted to write an invalid decimation value.", false);
+    return 2;
+  }
+
+  /**
+   * Configures how the acquire thread batches samples. The thread sleeps until the requested number
+   * of complete samples is waiting in the DMA buffer, or until the timeout passes, and then decodes
+   * and publishes whatever complete samples it has. One sample per wakeup gives the lowest latency;
+   * larger batches trade latency for fewer wakeups.
+   *
+   * @param frames Number of samples to wait for before waking up
+   * @param timeout Maximum time to wait for a batch in seconds
+   */
+  public void configBatching(int frames, double timeout) {
+    m_frames_per_wakeup = Math.max(1, Math.min(frames, BUFFER_SIZE / DATASET_LEN));
+    m_wakeup_timeout = Math.max(timeout, 0.001);
+  }
+
+  /**
+   * Start streaming the raw auto SPI frames to a file for desktop replay (see {@link
+   * ADIS16470Replay}). Any capture already running is stopped first.
+   *
+   * @param path File to write the capture to
+   * @return True if the capture was started
+   */
+  public synchronized boolean startCapture(String path) {
+    stopCapture();
+    try {
+      m_recorder =
+          new ADIS16470Recorder(
+              Paths.get(path), m_decoder.getDatasetLength(), m_yaw_axis, m_scaled_sample_rate);
+      return true;
+    } catch (IOException e) {
+      DriverStation.reportError("Could not start ADIS16470 capture: " + e.getMessage(), false);
+      return false;
+    }
+  }
+
+  /** Stop the raw frame capture, if one is running, and close its file. */
+  public synchronized void stopCapture() {
+    ADIS16470Recorder recorder = m_recorder;
+    if (recorder != null) {
+      m_recorder = null;
+      recorder.close();
+      System.out.println(
+          "ADIS16470 capture stopped: "
+              + recorder.getRecordedFrames()
+              + " frames recorded, "
+              + recorder.getDroppedFrames()
+              + " dropped.");
+    }
+  }
+
   /**
    * Calibrate the gyro. It's important to make sure that the robot is not moving while the
    * calibration is in progress, this is typically done when the robot is first turned on while it's
    * sitting at rest before the match starts.
    */
-  public void calibrate() {
+  public synchronized void calibrate() {
+    if (m_init_state != InitState.READY) {
+      DriverStation.reportError("ADIS16470 can't be calibrated until it is initialized.", false);
+      return;
+    }
     if (!switchToStandardSPI()) {
       DriverStation.reportError("Failed to configure/reconfigure standard SPI.", false);
     }
@@ -592,15 +1216,20 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
    * @return 1 if the new yaw axis is the same as the current one, 2 if the switch to Standard SPI
    *     failed, else 0.
    */
-  public int setYawAxis(IMUAxis yaw_axis) {
+  public synchronized int setYawAxis(IMUAxis yaw_axis) {
     if (m_yaw_axis == yaw_axis) {
       return 1;
     }
+    if (m_init_state != InitState.READY) {
+      DriverStation.reportError("ADIS16470 can't be configured until it is initialized.", false);
+      return 2;
+    }
     if (!switchToStandardSPI()) {
       DriverStation.reportError("Failed to configure/reconfigure standard SPI.", false);
       return 2;
     }
     m_yaw_axis = yaw_axis;
+    m_decoder.setYawAxis(yaw_axis);
     if (!switchToAutoSPI()) {
       DriverStation.reportError("Failed to configure/reconfigure auto SPI.", false);
     }
@@ -639,293 +1268,211 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
     m_spi.write(buf, 2);
   }
 
-  /** {@inheritDoc} */
+  /**
+   * Reset the integrated yaw angle to zero. The acquire thread owns the angle, so the reset is
+   * applied to the next decoded sample. This returns right away: until that sample is published,
+   * {@link #getAngle()}, {@link #getAngleAt(double)} and {@link #getSample()} subtract the angle
+   * the reset was requested at, so they read the reset angle right after this call. Before the IMU
+   * is ready, or while it is being reconfigured, the reset is applied to the first sample once data
+   * is flowing again.
+   */
   public void reset() {
-    synchronized (this) {
-      m_integ_angle = 0.0;
-    }
+    final Sample sample = m_decoder.getSample();
+    m_pending_reset = new PendingReset(sample.resets, sample.angle);
+    m_decoder.requestReset();
   }
 
   /** Delete (free) the spi port used for the IMU. */
   @Override
   public void close() {
-    if (m_thread_active) {
+    stopCapture();
+    if (m_acquire_task != null) {
       m_thread_active = false;
+      m_acquire_task.interrupt();
       try {
-        if (m_acquire_task != null) {
-          m_acquire_task.join();
-          m_acquire_task = null;
-        }
+        m_acquire_task.join();
       } catch (InterruptedException e) {
       }
-      if (m_spi != null) {
-        if (m_auto_configured) {
-          m_spi.stopAuto();
-        }
-        m_spi.close();
-        m_auto_configured = false;
-        if (m_auto_interrupt != null) {
-          m_auto_interrupt.close();
-          m_auto_interrupt = null;
-        }
-        m_spi = null;
+      m_acquire_task = null;
+    }
+    if (m_spi != null) {
+      if (m_auto_configured) {
+        m_spi.stopAuto();
+      }
+      m_spi.close();
+      m_auto_configured = false;
+      if (m_auto_interrupt != null) {
+        m_auto_interrupt.close();
+        m_auto_interrupt = null;
       }
+      m_spi = null;
     }
     System.out.println("Finished cleaning up after the IMU driver.");
   }
 
   /** */
   private void acquire() {
-    // Set data packet length
-    final int dataset_len = 19; // 18 data points + timestamp
-    final int BUFFER_SIZE = 4000;
+    // Data packet length (depends on the read mode, which only changes while the thread is idle)
+    int dataset_len = DATASET_LEN;
 
     // Set up buffers and variables
     int[] buffer = new int[BUFFER_SIZE];
     int data_count = 0;
     int data_remainder = 0;
     int data_to_read = 0;
-    double previous_timestamp = 0.0;
-    double delta_angle = 0.0;
-    double gyro_rate_x = 0.0;
-    double gyro_rate_y = 0.0;
-    double gyro_rate_z = 0.0;
-    double accel_x = 0.0;
-    double accel_y = 0.0;
-    //double accel_z = 0.0;
-    double temp = 0.0;
-    double gyro_rate_x_si = 0.0;
-    double gyro_rate_y_si = 0.0;
-    double gyro_rate_z_si = 0.0;
-    double accel_x_si = 0.0;
-    double accel_y_si = 0.0;
-    double accel_z_si = 0.0;
-    double compAngleX = 0.0;
-    double compAngleY = 0.0;
-    double accelAngleX = 0.0;
-    double accelAngleY = 0.0;
-
-    while (true) {
-      // Sleep loop for 10ms
-      try {
-        // Thread.sleep(10);
-        Thread.sleep(5);
-      } catch (InterruptedException e) {
-      }
-
+    boolean timed_out = false;
+    boolean truncated = false;
+    boolean stalled = false;
+    int stalled_count = 0;
+    long last_overrun_report = 0;
+    long last_error_report = 0;
+
+    while (!Thread.currentThread().isInterrupted()) {
       if (m_thread_active) {
-        m_thread_idle = false;
-
-        data_count =
-            m_spi.readAutoReceivedData(
-                buffer, 0, 0); // Read number of bytes currently stored in the
-        // buffer
-        data_remainder =
-            data_count % dataset_len; // Check if frame is incomplete. Add 1 because of timestamp
-        data_to_read = data_count - data_remainder; // Remove incomplete data from read count
-        /* Want to cap the data to read in a single read at the buffer size */
-        if (data_to_read > BUFFER_SIZE) {
-          DriverStation.reportWarning(
-              "ADIS16470 data processing thread overrun has occurred!", false);
-          data_to_read = BUFFER_SIZE - (BUFFER_SIZE % dataset_len);
+        if (m_first_run) {
+          dataset_len = m_decoder.getDatasetLength();
+          m_decoder.restart();
+          m_first_run = false;
+          stalled = false;
         }
-        m_spi.readAutoReceivedData(
-            buffer, data_to_read, 0); // Read data from DMA buffer (only complete sets)
-
-        // Could be multiple data sets in the buffer. Handle each one.
-        for (int i = 0; i < data_to_read; i += dataset_len) {
-          // Timestamp is at buffer[i]
-          m_dt = ((double) buffer[i] - previous_timestamp) / 1000000.0;
-
-          /*
-           * System.out.println(((toInt(buffer[i + 3], buffer[i + 4], buffer[i + 5],
-           * buffer[i + 6]))*delta_angle_sf) / ((10000.0 / (buffer[i] -
-           * previous_timestamp)) / 100.0));
-           * // DEBUG: Plot Sub-Array Data in Terminal
-           * for (int j = 0; j < data_to_read; j++) {
-           * System.out.print(buffer[j]);
-           * System.out.print(" ,");
-           * }
-           * System.out.println(" ");
-           * //System.out.println(((toInt(buffer[i + 3], buffer[i + 4], buffer[i + 5],
-           * buffer[i + 6]))*delta_angle_sf) / ((10000.0 / (buffer[i] -
-           * previous_timestamp)) / 100.0) + "," + buffer[3] + "," + buffer[4] + "," +
-           * buffer[5] + "," + buffer[6]
-           * /*toShort(buffer[7], buffer[8]) + "," +
-           * toShort(buffer[9], buffer[10]) + "," +
-           * toShort(buffer[11], buffer[12]) + "," +
-           * toShort(buffer[13], buffer[14]) + "," +
-           * toShort(buffer[15], buffer[16]) + ","
-           * + toShort(buffer[17], buffer[18]));
-           */
-
-          /*
-           * Get delta angle value for selected yaw axis and scale by the elapsed time
-           * (based on timestamp)
-           */
-          delta_angle =
-              (toInt(buffer[i + 3], buffer[i + 4], buffer[i + 5], buffer[i + 6]) * delta_angle_sf)
-                  / (m_scaled_sample_rate / (buffer[i] - previous_timestamp));
-          gyro_rate_x = (toShort(buffer[i + 7], buffer[i + 8]) / 10.0);
-          gyro_rate_y = (toShort(buffer[i + 9], buffer[i + 10]) / 10.0);
-          gyro_rate_z = (toShort(buffer[i + 11], buffer[i + 12]) / 10.0);
-          accel_x = (toShort(buffer[i + 13], buffer[i + 14]) / 800.0);
-          accel_y = (toShort(buffer[i + 15], buffer[i + 16]) / 800.0);
-          //accel_z = (toShort(buffer[i + 17], buffer[i + 18]) / 800.0);
-          temp = (toShort(buffer[i + 17], buffer[i + 18]) / 10.0);
-
-          // Convert scaled sensor data to SI units (for tilt calculations)
-          // TODO: Should the unit outputs be selectable?
-          gyro_rate_x_si = gyro_rate_x * deg_to_rad;
-          gyro_rate_y_si = gyro_rate_y * deg_to_rad;
-          gyro_rate_z_si = gyro_rate_z * deg_to_rad;
-          accel_x_si = accel_x * grav;
-          accel_y_si = accel_y * grav;
-          //accel_z_si = accel_z * grav;
-          accel_z_si = 0.0;  
-
-          // Store timestamp for next iteration
-          previous_timestamp = buffer[i];
-
-          m_alpha = m_tau / (m_tau + m_dt);
-
-          if (m_first_run) {
-            // Set up inclinometer calculations for first run
-            accelAngleX =
-                Math.atan2(
-                    accel_x_si, Math.sqrt((accel_y_si * accel_y_si) + (accel_z_si * accel_z_si)));
-            accelAngleY =
-                Math.atan2(
-                    accel_y_si, Math.sqrt((accel_x_si * accel_x_si) + (accel_z_si * accel_z_si)));
-            compAngleX = accelAngleX;
-            compAngleY = accelAngleY;
+        final int batch_len = m_frames_per_wakeup * dataset_len;
+        data_to_read = 0;
+        data_remainder = 0;
+        timed_out = false;
+        truncated = false;
+
+        // Block until a full batch of samples is waiting, rather than polling on a fixed period
+        final int available = m_spi.readAutoReceivedData(buffer, 0, 0);
+        if (available < batch_len) {
+          if (stalled && available == stalled_count) {
+            // Nothing arrived during the last deadline either. Sleep this one out rather than
+            // have the blocking read throw (and allocate) on every wakeup until data resumes.
+            try {
+              Thread.sleep((long) (m_wakeup_timeout * 1000.0));
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
           } else {
-            // Run inclinometer calculations
-            accelAngleX =
-                Math.atan2(
-                    accel_x_si, Math.sqrt((accel_y_si * accel_y_si) + (accel_z_si * accel_z_si)));
-            accelAngleY =
-                Math.atan2(
-                    accel_y_si, Math.sqrt((accel_x_si * accel_x_si) + (accel_z_si * accel_z_si)));
-            accelAngleX = formatAccelRange(accelAngleX, accel_z_si);
-            accelAngleY = formatAccelRange(accelAngleY, accel_z_si);
-            compAngleX = compFilterProcess(compAngleX, accelAngleX, -gyro_rate_y_si);
-            compAngleY = compFilterProcess(compAngleY, accelAngleY, gyro_rate_x_si);
+            try {
+              m_spi.readAutoReceivedData(buffer, batch_len, m_wakeup_timeout);
+              data_to_read = batch_len;
+            } catch (UncleanStatusException e) {
+              // A deadline miss is expected now and then; anything else is a HAL or DMA error
+              if (e.getStatus() != FIFO_TIMEOUT_STATUS
+                  && RobotController.getFPGATime() - last_error_report > OVERRUN_REPORT_PERIOD) {
+                last_error_report = RobotController.getFPGATime();
+                DriverStation.reportError(
+                    "ADIS16470 auto SPI read failed (status " + e.getStatus() + ")", false);
+              }
+            }
           }
+        }
 
-          synchronized (this) {
-            /* Push data to global variables */
-            if (m_first_run) {
-              /*
-               * Don't accumulate first run. previous_timestamp will be "very" old and the
-               * integration will end up way off
-               */
-              m_integ_angle = 0.0;
-            } else {
-              m_integ_angle += delta_angle;
+        // Otherwise drain every complete set, which also lets the thread catch up after a stall
+        if (data_to_read == 0) {
+          data_count =
+              m_spi.readAutoReceivedData(
+                  buffer, 0, 0); // Read number of bytes currently stored in the
+          // buffer
+          // The wait ended without a full batch: the deadline passed (or the read failed)
+          timed_out = available < batch_len && data_count < batch_len;
+          data_remainder =
+              data_count % dataset_len; // Check if frame is incomplete. Add 1 because of timestamp
+          data_to_read = data_count - data_remainder; // Remove incomplete data from read count
+          /* Want to cap the data to read in a single read at the overrun threshold */
+          final int overrun_threshold = m_overrun_frames * dataset_len;
+          if (data_to_read > overrun_threshold) {
+            // Counted on every overrun, but only reported now and then so it doesn't flood the DS
+            truncated = true;
+            if (RobotController.getFPGATime() - last_overrun_report > OVERRUN_REPORT_PERIOD) {
+              last_overrun_report = RobotController.getFPGATime();
+              DriverStation.reportWarning(
+                  "ADIS16470 data processing thread overrun has occurred!", false);
             }
-            m_gyro_rate_x = gyro_rate_x;
-            m_gyro_rate_y = gyro_rate_y;
-            m_gyro_rate_z = gyro_rate_z;
-            m_accel_x = accel_x;
-            m_accel_y = accel_y;
-            //m_accel_z = accel_z;
-            m_temp = temp;
-            m_compAngleX = compAngleX * rad_to_deg;
-            m_compAngleY = compAngleY * rad_to_deg;
-            m_accelAngleX = accelAngleX * rad_to_deg;
-            m_accelAngleY = accelAngleY * rad_to_deg;
+            data_to_read = overrun_threshold;
+          }
+          if (data_to_read > 0) {
+            m_spi.readAutoReceivedData(
+                buffer, data_to_read, 0); // Read data from DMA buffer (only complete sets)
           }
-          m_first_run = false;
+        }
+
+        // Hand the raw frames to the capture (if any) before decoding them
+        final long now = RobotController.getFPGATime();
+        ADIS16470Recorder recorder = m_recorder;
+        if (recorder != null && data_to_read > 0) {
+          recorder.record(buffer, data_to_read, now);
+        }
+
+        // Decode every complete set and publish the newest sample
+        final long decode_start = System.nanoTime();
+        final int decoded = m_decoder.decode(buffer, data_to_read, now);
+        final long decode_nanos = System.nanoTime() - decode_start;
+        if (decoded > 0) {
+          m_latency = (RobotController.getFPGATime() - m_decoder.getTimestamp()) / 1000000.0;
+          m_average_latency += 0.01 * (m_latency - m_average_latency);
+        }
+        m_stats.recordWakeup(
+            data_to_read / dataset_len, timed_out, truncated, data_remainder, decode_nanos);
+
+        // A whole deadline without a single complete sample means the data has stalled
+        stalled = timed_out && data_to_read == 0;
+        stalled_count = data_count;
+
+        // Too many bad burst checksums: go back to the register mode. Reconfiguring waits for this
+        // thread to go idle, so it has to happen on another thread.
+        if (m_decoder.isBurstFailing() && !m_burst_fallback) {
+          m_burst_fallback = true;
+          DriverStation.reportWarning(
+              "ADIS16470 burst checksums failing, switching to register reads.", false);
+          Thread fallback =
+              new Thread(
+                  () -> {
+                    configReadMode(ReadMode.kRegister);
+                    m_burst_fallback = false;
+                  },
+                  "ADIS16470 Fallback");
+          fallback.setDaemon(true);
+          fallback.start();
         }
       } else {
-        m_thread_idle = true;
         data_count = 0;
         data_remainder = 0;
         data_to_read = 0;
-        previous_timestamp = 0.0;
-        delta_angle = 0.0;
-        gyro_rate_x = 0.0;
-        gyro_rate_y = 0.0;
-        gyro_rate_z = 0.0;
-        accel_x = 0.0;
-        accel_y = 0.0;
-        //accel_z = 0.0;
-        temp = 0.0;
-        gyro_rate_x_si = 0.0;
-        gyro_rate_y_si = 0.0;
-        gyro_rate_z_si = 0.0;
-        accel_x_si = 0.0;
-        accel_y_si = 0.0;
-        accel_z_si = 0.0;
-        compAngleX = 0.0;
-        compAngleY = 0.0;
-        accelAngleX = 0.0;
-        accelAngleY = 0.0;
-      }
-    }
-  }
-
-  /**
-   * @param compAngle
-   * @param accAngle
-   * @return
-   */
-  private double formatFastConverge(double compAngle, double accAngle) {
-    if (compAngle > accAngle + Math.PI) {
-      compAngle = compAngle - 2.0 * Math.PI;
-    } else if (accAngle > compAngle + Math.PI) {
-      compAngle = compAngle + 2.0 * Math.PI;
-    }
-    return compAngle;
-  }
 
-  /**
-   * @param compAngle
-   * @return
-   */
-  private double formatRange0to2PI(double compAngle) {
-    while (compAngle >= 2 * Math.PI) {
-      compAngle = compAngle - 2.0 * Math.PI;
-    }
-    while (compAngle < 0.0) {
-      compAngle = compAngle + 2.0 * Math.PI;
-    }
-    return compAngle;
-  }
-
-  /**
-   * @param accelAngle
-   * @param accelZ
-   * @return
-   */
-  private double formatAccelRange(double accelAngle, double accelZ) {
-    if (accelZ < 0.0) {
-      accelAngle = Math.PI - accelAngle;
-    } else if (accelZ > 0.0 && accelAngle < 0.0) {
-      accelAngle = 2.0 * Math.PI + accelAngle;
+        // Sleep until the thread is activated again instead of waking up on a timer
+        synchronized (m_thread_signal) {
+          m_thread_idle = true;
+          m_thread_signal.notifyAll();
+          try {
+            while (!m_thread_active) {
+              m_thread_signal.wait();
+            }
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
     }
-    return accelAngle;
   }
 
   /**
-   * @param compAngle
-   * @param accelAngle
-   * @param omega
-   * @return
+   * Get the most recently published sample. All of the values in the returned object were decoded
+   * from the same IMU sample, so this is the cheapest way to read several outputs at once.
+   *
+   * @return The latest sample (never null)
    */
-  private double compFilterProcess(double compAngle, double accelAngle, double omega) {
-    compAngle = formatFastConverge(compAngle, accelAngle);
-    compAngle = m_alpha * (compAngle + omega * m_dt) + (1.0 - m_alpha) * accelAngle;
-    compAngle = formatRange0to2PI(compAngle);
-    if (compAngle > Math.PI) {
-      compAngle = compAngle - 2.0 * Math.PI;
+  public Sample getSample() {
+    final Sample sample = m_decoder.getSample();
+    final PendingReset pending = m_pending_reset;
+    if (pending != null && sample.resets == pending.resets) {
+      return sample.withAngle(sample.angle - pending.angle);
     }
-    return compAngle;
+    return sample;
   }
 
   /** @return Yaw axis angle in degrees (CCW positive) */
-  public synchronized double getAngle() {
+  public double getAngle() {
     switch (m_yaw_axis) {
       case kX:
         if (m_simGyroAngleX != null) {
@@ -943,75 +1490,201 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
         }
         break;
     }
-    return m_integ_angle;
+    return getSample().angle;
+  }
+
+  /**
+   * Get the yaw angle at a past time, such as the capture time of a camera frame. The angle is
+   * interpolated between the two IMU samples around the requested time.
+   *
+   * @param timestamp FPGA timestamp in seconds (see {@link Timer#getFPGATimestamp})
+   * @return Yaw axis angle in degrees (CCW positive) at the given time
+   */
+  public double getAngleAt(double timestamp) {
+    double angle = m_history.getAngleAt(timestamp);
+    if (Double.isNaN(angle)) {
+      // Nothing recorded yet (or simulated), so the current angle is the best we have
+      return getAngle();
+    }
+    final PendingReset pending = m_pending_reset;
+    if (pending != null && m_decoder.getSample().resets == pending.resets) {
+      // None of the history has been reset yet
+      return angle - pending.angle;
+    }
+    return angle;
+  }
+
+  /**
+   * Get the yaw rate at a past time. The rate is interpolated between the two IMU samples around
+   * the requested time.
+   *
+   * @param timestamp FPGA timestamp in seconds (see {@link Timer#getFPGATimestamp})
+   * @return Yaw axis angular rate in degrees per second (CCW positive) at the given time
+   */
+  public double getRateAt(double timestamp) {
+    double rate = m_history.getRateAt(m_yaw_axis, timestamp);
+    if (Double.isNaN(rate)) {
+      return getRate();
+    }
+    return rate;
+  }
+
+  /** @return The time-indexed history of recent samples */
+  public ADIS16470History getHistory() {
+    return m_history;
   }
 
   /** @return Yaw axis angular rate in degrees per second (CCW positive) */
-  public synchronized double getRate() {
+  public double getRate() {
     if (m_yaw_axis == IMUAxis.kX) {
       if (m_simGyroRateX != null) {
         return m_simGyroRateX.get();
       }
-      return m_gyro_rate_x;
+      return m_decoder.getSample().gyroRateX;
     } else if (m_yaw_axis == IMUAxis.kY) {
       if (m_simGyroRateY != null) {
         return m_simGyroRateY.get();
       }
-      return m_gyro_rate_y;
+      return m_decoder.getSample().gyroRateY;
     } else if (m_yaw_axis == IMUAxis.kZ) {
       if (m_simGyroRateZ != null) {
         return m_simGyroRateZ.get();
       }
-      return m_gyro_rate_z;
+      return m_decoder.getSample().gyroRateZ;
     } else {
       return 0.0;
     }
   }
 
+  /** @return Time in seconds from the newest sample being taken to it being published */
+  public double getLatency() {
+    return m_latency;
+  }
+
+  /** @return Smoothed time in seconds from a sample being taken to it being published */
+  public double getAverageLatency() {
+    return m_average_latency;
+  }
+
+  /** @return Health metrics for the acquire thread */
+  public ADIS16470Stats getStats() {
+    return m_stats;
+  }
+
+  /** @return The zero-motion yaw bias estimator */
+  public ADIS16470BiasEstimator getBiasEstimator() {
+    return m_decoder.getBiasEstimator();
+  }
+
+  /**
+   * Configures the impact detector.
+   *
+   * @param threshold Dynamic acceleration (gravity removed) that counts as an impact, in g
+   * @param jerk_threshold Rate of change of the dynamic acceleration that counts as an impact, in g
+   *     per second
+   */
+  public void configImpactDetection(double threshold, double jerk_threshold) {
+    m_decoder.getImpactDetector().setThresholds(threshold, jerk_threshold);
+  }
+
+  /**
+   * Get a cursor over the impacts detected from now on. Each command that wants to react to
+   * impacts should keep its own cursor and poll it from its execute().
+   *
+   * @return A new cursor
+   */
+  public ADIS16470ImpactDetector.Cursor subscribeImpacts() {
+    return m_decoder.getImpactDetector().subscribe();
+  }
+
+  /** @return The most recent impact, or null if there hasn't been one */
+  public ADIS16470ImpactDetector.Impact getLastImpact() {
+    return m_decoder.getImpactDetector().getLastImpact();
+  }
+
+  /** @return Number of times the spacing between samples suggested that samples were missed */
+  public long getTimestampGaps() {
+    return m_decoder.getTimestampGaps();
+  }
+
+  /** @return Estimated number of samples missed, based on the sample timestamps */
+  public long getMissedSamples() {
+    return m_decoder.getMissedSamples();
+  }
+
   /** @return Yaw Axis */
   public IMUAxis getYawAxis() {
     return m_yaw_axis;
   }
 
   /** @return current acceleration in the X axis */
-  public synchronized double getAccelX() {
-    return m_accel_x * 9.81;
+  public double getAccelX() {
+    return m_decoder.getSample().accelX * 9.81;
   }
 
   /** @return current acceleration in the Y axis */
-  public synchronized double getAccelY() {
-    return m_accel_y * 9.81;
+  public double getAccelY() {
+    return m_decoder.getSample().accelY * 9.81;
   }
 
   /** @return current acceleration in the Z axis */
-  public synchronized double getAccelZ() {
-    //return m_accel_z * 9.81;
-    return 0.0;
+  public double getAccelZ() {
+    return m_decoder.getSample().accelZ * 9.81;
   }
 
   /** @return current temperature */
-  public synchronized double getTemp() {
-    return m_temp;
+  public double getTemp() {
+    return m_decoder.getSample().temp;
   }
 
   /** @return X axis complementary angle */
-  public synchronized double getXComplementaryAngle() {
-    return m_compAngleX;
+  public double getXComplementaryAngle() {
+    m_decoder.touchInclinometer();
+    return m_decoder.getSample().compAngleX;
   }
 
   /** @return Y axis complementary angle */
-  public synchronized double getYComplementaryAngle() {
-    return m_compAngleY;
+  public double getYComplementaryAngle() {
+    m_decoder.touchInclinometer();
+    return m_decoder.getSample().compAngleY;
   }
 
   /** @return X axis filtered acceleration angle */
-  public synchronized double getXFilteredAccelAngle() {
-    return m_accelAngleX;
+  public double getXFilteredAccelAngle() {
+    m_decoder.touchInclinometer();
+    return m_decoder.getSample().accelAngleX;
   }
 
   /** @return Y axis filtered acceleration angle */
-  public synchronized double getYFilteredAccelAngle() {
-    return m_accelAngleY;
+  public double getYFilteredAccelAngle() {
+    m_decoder.touchInclinometer();
+    return m_decoder.getSample().accelAngleY;
+  }
+
+  /**
+   * Keep the complementary filter inclinometer running until the returned handle is closed. The
+   * inclinometer only runs while it has a subscriber, or for two seconds after one of its getters
+   * was last called; otherwise the acquire thread skips it.
+   *
+   * @return The subscription
+   */
+  public ADIS16470Decoder.Subscription subscribeInclinometer() {
+    return m_decoder.subscribeInclinometer();
+  }
+
+  /** @return 3-axis attitude (quaternion and roll, pitch, yaw) from the newest sample */
+  public ADIS16470AttitudeEstimator.Attitude getAttitude() {
+    return m_decoder.getSample().attitude;
+  }
+
+  /** @return Rotation about the X axis in degrees, from the attitude estimator */
+  public double getRoll() {
+    return m_decoder.getSample().attitude.roll;
+  }
+
+  /** @return Rotation about the Y axis in degrees, from the attitude estimator */
+  public double getPitch() {
+    return m_decoder.getSample().attitude.pitch;
   }
 
   /**
@@ -1027,5 +1700,36 @@ public class ADIS16470 implements AutoCloseable, NTSendable {
   public void initSendable(NTSendableBuilder builder) {
     builder.setSmartDashboardType("Gyro");
     builder.addDoubleProperty("Value", this::getAngle, null);
+    builder.addDoubleProperty("Latency", this::getAverageLatency, null);
+    builder.addStringProperty("State", () -> m_init_state.toString(), null);
+    builder.addDoubleProperty("Roll", this::getRoll, null);
+    builder.addBooleanProperty("Inclinometer", m_decoder::isInclinometerRunning, null);
+    builder.addDoubleProperty("Pitch", this::getPitch, null);
+    builder.addDoubleProperty("Impacts", () -> m_decoder.getImpactDetector().getImpacts(), null);
+    builder.addDoubleProperty(
+        "Last Impact",
+        () -> {
+          ADIS16470ImpactDetector.Impact impact = m_decoder.getImpactDetector().getLastImpact();
+          return impact != null ? impact.peak : 0.0;
+        },
+        null);
+    builder.addDoubleProperty("Bias", () -> m_decoder.getBiasEstimator().getBias(), null);
+    builder.addBooleanProperty(
+        "Stationary", () -> m_decoder.getBiasEstimator().isStationary(), null);
+    builder.addDoubleProperty("Wakeups", () -> m_stats.getWakeups(), null);
+    builder.addDoubleProperty("Frames", () -> m_stats.getFrames(), null);
+    builder.addDoubleProperty("Timeouts", () -> m_stats.getTimeouts(), null);
+    builder.addDoubleProperty("Truncated Reads", () -> m_stats.getTruncatedReads(), null);
+    builder.addDoubleProperty("Partial Frames", () -> m_stats.getPartialFrames(), null);
+    builder.addStringProperty("Read Mode", () -> m_read_mode.toString(), null);
+    builder.addDoubleProperty("Checksum Errors", () -> m_decoder.getChecksumErrors(), null);
+    builder.addDoubleProperty("Reconfiguration Gap", m_decoder::getLastGap, null);
+    builder.addDoubleProperty("Timestamp Gaps", () -> m_decoder.getTimestampGaps(), null);
+    builder.addDoubleProperty("Missed Samples", () -> m_decoder.getMissedSamples(), null);
+    builder.addDoubleProperty("Decode ns Avg", m_stats::getAverageDecodeNanos, null);
+    builder.addDoubleProperty("Decode ns Max", () -> m_stats.getMaxDecodeNanos(), null);
+    builder.addDoubleArrayProperty(
+        "Frames Per Wakeup", m_stats::getFramesPerWakeupHistogram, null);
+    builder.addDoubleArrayProperty("Decode us Histogram", m_stats::getDecodeTimeHistogram, null);
   }
 }
@@ -0,0 +1,153 @@
+package frc.robot.lib.drivers;
+
+/**
+ * Mahony-style quaternion attitude estimator for the ADIS16470. Each sample rotates the attitude by
+ * the three delta angles (which the IMU integrates internally at 2000 SPS, so no coning or sampling
+ * error is added by decimation), and nudges it toward the measured gravity direction with a PI
+ * correction whenever the acceleration magnitude is close to 1 g.
+ *
+ * <p>The state is plain doubles and {@link #update} does not allocate, so it runs at the full
+ * sample rate on the decoding thread. Only that thread may call {@link #reset} and {@link #update};
+ * readers get an immutable {@link Attitude} snapshot through the published sample.
+ */
+public final class ADIS16470AttitudeEstimator {
+  private static final double rad_to_deg = 57.2957795;
+
+  // Gravity correction gains (proportional in 1/s, integral in 1/s^2)
+  private static final double KP = 1.0;
+  private static final double KI = 0.01;
+
+  // Only trust the accelerometer for gravity when it reads between these magnitudes (g)
+  private static final double MIN_GRAVITY = 0.85;
+  private static final double MAX_GRAVITY = 1.15;
+
+  /** Immutable attitude snapshot. Angles are Z-Y-X (yaw, pitch, roll) Euler angles in degrees. */
+  public static final class Attitude {
+    /** Quaternion scalar part */
+    public final double w;
+    /** Quaternion X part */
+    public final double x;
+    /** Quaternion Y part */
+    public final double y;
+    /** Quaternion Z part */
+    public final double z;
+    /** Rotation about the X axis in degrees */
+    public final double roll;
+    /** Rotation about the Y axis in degrees */
+    public final double pitch;
+    /** Rotation about the Z axis in degrees (CCW positive, not bias corrected) */
+    public final double yaw;
+
+    Attitude(double w, double x, double y, double z) {
+      this.w = w;
+      this.x = x;
+      this.y = y;
+      this.z = z;
+      this.roll = Math.atan2(2.0 * (w * x + y * z), 1.0 - 2.0 * (x * x + y * y)) * rad_to_deg;
+      this.pitch =
+          Math.asin(Math.max(-1.0, Math.min(1.0, 2.0 * (w * y - z * x)))) * rad_to_deg;
+      this.yaw = Math.atan2(2.0 * (w * z + x * y), 1.0 - 2.0 * (y * y + z * z)) * rad_to_deg;
+    }
+  }
+
+  static final Attitude IDENTITY = new Attitude(1.0, 0.0, 0.0, 0.0);
+
+  private double m_q0 = 1.0;
+  private double m_q1 = 0.0;
+  private double m_q2 = 0.0;
+  private double m_q3 = 0.0;
+  private double m_integral_x = 0.0;
+  private double m_integral_y = 0.0;
+  private double m_integral_z = 0.0;
+
+  /**
+   * Level the attitude to the measured gravity direction with zero yaw.
+   *
+   * @param accel_x X axis acceleration in g
+   * @param accel_y Y axis acceleration in g
+   * @param accel_z Z axis acceleration in g
+   */
+  void reset(double accel_x, double accel_y, double accel_z) {
+    double roll = Math.atan2(accel_y, accel_z);
+    double pitch = Math.atan2(-accel_x, Math.sqrt(accel_y * accel_y + accel_z * accel_z));
+    double cr = Math.cos(roll / 2.0);
+    double sr = Math.sin(roll / 2.0);
+    double cp = Math.cos(pitch / 2.0);
+    double sp = Math.sin(pitch / 2.0);
+    m_q0 = cr * cp;
+    m_q1 = sr * cp;
+    m_q2 = cr * sp;
+    m_q3 = -sr * sp;
+    m_integral_x = 0.0;
+    m_integral_y = 0.0;
+    m_integral_z = 0.0;
+  }
+
+  /**
+   * Propagate the attitude by one sample.
+   *
+   * @param delta_x X axis delta angle in radians
+   * @param delta_y Y axis delta angle in radians
+   * @param delta_z Z axis delta angle in radians
+   * @param accel_x X axis acceleration in g
+   * @param accel_y Y axis acceleration in g
+   * @param accel_z Z axis acceleration in g
+   * @param dt Time since the previous sample in seconds
+   */
+  void update(
+      double delta_x,
+      double delta_y,
+      double delta_z,
+      double accel_x,
+      double accel_y,
+      double accel_z,
+      double dt) {
+    double q0 = m_q0;
+    double q1 = m_q1;
+    double q2 = m_q2;
+    double q3 = m_q3;
+
+    // Gravity correction: the error is the cross product of the measured and estimated gravity
+    double norm_sq = accel_x * accel_x + accel_y * accel_y + accel_z * accel_z;
+    if (norm_sq > MIN_GRAVITY * MIN_GRAVITY && norm_sq < MAX_GRAVITY * MAX_GRAVITY) {
+      double inv_norm = 1.0 / Math.sqrt(norm_sq);
+      double ax = accel_x * inv_norm;
+      double ay = accel_y * inv_norm;
+      double az = accel_z * inv_norm;
+      double vx = 2.0 * (q1 * q3 - q0 * q2);
+      double vy = 2.0 * (q0 * q1 + q2 * q3);
+      double vz = q0 * q0 - q1 * q1 - q2 * q2 + q3 * q3;
+      double ex = ay * vz - az * vy;
+      double ey = az * vx - ax * vz;
+      double ez = ax * vy - ay * vx;
+      m_integral_x += KI * ex * dt;
+      m_integral_y += KI * ey * dt;
+      m_integral_z += KI * ez * dt;
+      delta_x += (KP * ex + m_integral_x) * dt;
+      delta_y += (KP * ey + m_integral_y) * dt;
+      delta_z += (KP * ez + m_integral_z) * dt;
+    }
+
+    // q = q * dq, with dq the second order rotation quaternion for the delta angle
+    double half_x = 0.5 * delta_x;
+    double half_y = 0.5 * delta_y;
+    double half_z = 0.5 * delta_z;
+    double dq0 = 1.0 - 0.5 * (half_x * half_x + half_y * half_y + half_z * half_z);
+    m_q0 = q0 * dq0 - q1 * half_x - q2 * half_y - q3 * half_z;
+    m_q1 = q0 * half_x + q1 * dq0 + q2 * half_z - q3 * half_y;
+    m_q2 = q0 * half_y - q1 * half_z + q2 * dq0 + q3 * half_x;
+    m_q3 = q0 * half_z + q1 * half_y - q2 * half_x + q3 * dq0;
+
+    double inv_norm =
+        1.0 / Math.sqrt(m_q0 * m_q0 + m_q1 * m_q1 + m_q2 * m_q2 + m_q3 * m_q3);
+    m_q0 *= inv_norm;
+    m_q1 *= inv_norm;
+    m_q2 *= inv_norm;
+    m_q3 *= inv_norm;
+  }
+
+  /** @return An immutable snapshot of the current attitude */
+  Attitude snapshot() {
+    return new Attitude(m_q0, m_q1, m_q2, m_q3);
+  }
+}
@@ -0,0 +1,155 @@
+package frc.robot.lib.drivers;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Zero-motion detector and yaw gyro bias estimator for the ADIS16470. The decoder feeds it every
+ * sample; samples are grouped into short blocks, and a block counts as still when the yaw rate and
+ * the X/Y accelerations barely vary and the mean yaw rate is close to the current bias. While the
+ * robot is still the bias is refined with a moving average, so the residual bias left after the
+ * IMU's own startup calibration (and its drift with temperature) keeps getting trimmed out while
+ * the robot sits disabled in the queue or on the field before a match.
+ *
+ * <p>A smooth, slow rotation can look still, so a block is only learned from when its mean rate is
+ * within a few tenths of a degree per second of the current bias, and when the learning gate allows
+ * it. The driver gates learning on the robot being disabled; the desktop replay leaves it open.
+ *
+ * <p>Only the decoding thread calls {@link #update} and {@link #restart}; the getters are safe to
+ * call from any thread.
+ */
+public final class ADIS16470BiasEstimator {
+  // Zero-motion detection
+  private static final double BLOCK_DURATION = 0.25; // s
+  private static final double MAX_RATE_STDDEV = 0.25; // deg/s
+  private static final double MAX_ACCEL_STDDEV = 0.005; // g
+  private static final double MAX_RATE_OFFSET = 0.2; // deg/s from the current bias
+
+  // Bias averaging: blocks are averaged evenly at first, then with a fixed weight (~8 s)
+  private static final int MAX_AVERAGE_BLOCKS = 32;
+
+  private volatile boolean m_enabled = true;
+  private volatile BooleanSupplier m_gate = () -> true;
+  private volatile double m_bias = 0.0;
+  private volatile boolean m_stationary = false;
+  private volatile long m_still_blocks = 0;
+
+  // Block accumulators
+  private int m_count = 0;
+  private double m_duration = 0.0;
+  private double m_rate_sum = 0.0;
+  private double m_rate_sum_sq = 0.0;
+  private double m_accel_x_sum = 0.0;
+  private double m_accel_x_sum_sq = 0.0;
+  private double m_accel_y_sum = 0.0;
+  private double m_accel_y_sum_sq = 0.0;
+  private boolean m_previous_still = false;
+
+  /**
+   * Add a sample.
+   *
+   * @param yaw_rate Yaw rate from the delta angle, before bias correction, in degrees per second
+   * @param accel_x X axis acceleration in g
+   * @param accel_y Y axis acceleration in g
+   * @param dt Time since the previous sample in seconds
+   */
+  void update(double yaw_rate, double accel_x, double accel_y, double dt) {
+    m_count++;
+    m_duration += dt;
+    m_rate_sum += yaw_rate;
+    m_rate_sum_sq += yaw_rate * yaw_rate;
+    m_accel_x_sum += accel_x;
+    m_accel_x_sum_sq += accel_x * accel_x;
+    m_accel_y_sum += accel_y;
+    m_accel_y_sum_sq += accel_y * accel_y;
+    if (m_duration < BLOCK_DURATION) {
+      return;
+    }
+
+    final double rate_mean = m_rate_sum / m_count;
+    final boolean still =
+        m_count > 1
+            && variance(m_rate_sum, m_rate_sum_sq, m_count) < MAX_RATE_STDDEV * MAX_RATE_STDDEV
+            && variance(m_accel_x_sum, m_accel_x_sum_sq, m_count)
+                < MAX_ACCEL_STDDEV * MAX_ACCEL_STDDEV
+            && variance(m_accel_y_sum, m_accel_y_sum_sq, m_count)
+                < MAX_ACCEL_STDDEV * MAX_ACCEL_STDDEV
+            && Math.abs(rate_mean - m_bias) < MAX_RATE_OFFSET;
+
+    // The first still block after motion may hold the tail end of it, so skip it
+    if (still && m_previous_still && m_enabled && m_gate.getAsBoolean()) {
+      final long blocks = m_still_blocks + 1;
+      m_bias += (rate_mean - m_bias) / Math.min(blocks, MAX_AVERAGE_BLOCKS);
+      m_still_blocks = blocks;
+    }
+    m_stationary = still;
+    m_previous_still = still;
+    clearBlock();
+  }
+
+  /** Start over with the block that is being collected (e.g. after a gap in the data). */
+  void restart() {
+    m_previous_still = false;
+    m_stationary = false;
+    clearBlock();
+  }
+
+  /**
+   * @param enabled True to keep refining the bias while the robot is still (the current estimate
+   *     keeps being applied either way)
+   */
+  public void setEnabled(boolean enabled) {
+    m_enabled = enabled;
+  }
+
+  /**
+   * Set the condition learning is gated on. It is checked once per block on the decoding thread, so
+   * it must be cheap and thread safe.
+   *
+   * @param gate True while the bias may be refined (e.g. {@code DriverStation::isDisabled})
+   */
+  public void setLearningGate(BooleanSupplier gate) {
+    m_gate = gate;
+  }
+
+  /** @return True if the bias is being refined while the robot is still */
+  public boolean isEnabled() {
+    return m_enabled;
+  }
+
+  /** @return Estimated yaw gyro bias in degrees per second */
+  public double getBias() {
+    return m_bias;
+  }
+
+  /** @return True if the last block of samples was detected as no motion */
+  public boolean isStationary() {
+    return m_stationary;
+  }
+
+  /** @return Number of still blocks that went into the bias estimate */
+  public long getStillBlocks() {
+    return m_still_blocks;
+  }
+
+  private void clearBlock() {
+    m_count = 0;
+    m_duration = 0.0;
+    m_rate_sum = 0.0;
+    m_rate_sum_sq = 0.0;
+    m_accel_x_sum = 0.0;
+    m_accel_x_sum_sq = 0.0;
+    m_accel_y_sum = 0.0;
+    m_accel_y_sum_sq = 0.0;
+  }
+
+  /**
+   * @param sum Sum of the values
+   * @param sum_sq Sum of the squared values
+   * @param count Number of values
+   * @return Sample variance of the values
+   */
+  private static double variance(double sum, double sum_sq, int count) {
+    final double mean = sum / count;
+    return Math.max(sum_sq / count - mean * mean, 0.0) * count / (count - 1);
+  }
+}
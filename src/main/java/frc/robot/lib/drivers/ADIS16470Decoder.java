@@ -0,0 +1,659 @@
+package frc.robot.lib.drivers;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ADIS16470 sample decoding pipeline: unpacks auto SPI frames, integrates the yaw delta angle,
+ * runs the inclinometer complementary filter and the quaternion attitude estimator, records the
+ * sample history and publishes the newest {@link ADIS16470.Sample}. It has no hardware
+ * dependencies, so the same code runs on the acquire thread and in the desktop replay tool ({@link
+ * ADIS16470Replay}).
+ *
+ * <p>All of the decode methods must be called from a single thread.
+ */
+public final class ADIS16470Decoder {
+  /** DMA words per sample in register mode (28 data points + timestamp) */
+  public static final int DATASET_LEN = 29;
+
+  /** DMA words per sample in burst mode (2 command + 20 burst bytes + timestamp) */
+  public static final int BURST_DATASET_LEN = 23;
+
+  // Burst checksum failures (out of BURST_CHECK_WINDOW frames) that call for the register mode
+  private static final int BURST_CHECK_WINDOW = 200;
+  private static final int BURST_MAX_FAILURES = 10;
+
+  // Static Constants
+  private static final double delta_angle_sf = 2160.0 / 2147483648.0; /* 2160 / (2^31) */
+  private static final double rad_to_deg = 57.2957795;
+  private static final double deg_to_rad = 0.0174532;
+  private static final double grav = 9.81;
+
+  private static final ADIS16470.Sample ZERO_SAMPLE =
+      new ADIS16470.Sample(
+          0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, ADIS16470AttitudeEstimator.IDENTITY, 0);
+
+  private final ADIS16470History m_history;
+  private final ADIS16470BiasEstimator m_bias = new ADIS16470BiasEstimator();
+  private final ADIS16470AttitudeEstimator m_attitude = new ADIS16470AttitudeEstimator();
+  private final ADIS16470ImpactDetector m_impacts = new ADIS16470ImpactDetector();
+
+  // Axis whose delta angle is integrated into the yaw angle
+  private volatile ADIS16470.IMUAxis m_yaw_axis = ADIS16470.IMUAxis.kZ;
+
+  // Frame format, and burst frame validation
+  private volatile ADIS16470.ReadMode m_read_mode = ADIS16470.ReadMode.kRegister;
+  private volatile long m_checksum_errors = 0;
+  private volatile boolean m_burst_failing = false;
+  private int m_burst_checked = 0;
+  private int m_burst_failures = 0;
+
+  // Optional pipeline stages (the replay tool turns them on and off to measure their cost)
+  private volatile boolean m_inclinometer_forced = false;
+  private volatile boolean m_attitude_enabled = true;
+
+  // The inclinometer only runs while it has subscribers, or for a while after it was last read
+  private static final long INCLINOMETER_LEASE = 2000000000L; // ns
+  private final AtomicInteger m_inclinometer_subscribers = new AtomicInteger();
+  private volatile long m_inclinometer_lease_end = 0;
+  private volatile boolean m_inclinometer_running = false;
+
+  // Latest published sample
+  private volatile ADIS16470.Sample m_sample = ZERO_SAMPLE;
+
+  // Integrated gyro angle
+  private double m_integ_angle = 0.0;
+  private volatile boolean m_reset_requested = false;
+  private volatile long m_resets = 0;
+
+  // Output data rate scaling for the delta angle (see ADIS16470.configOutputDataRate)
+  private volatile double m_scaled_sample_rate = 2500.0;
+
+  // Complementary filter variables
+  private double m_dt = 0.0;
+  private double m_alpha = 0.0;
+  private double m_tau = 1.0;
+
+  // Per-run state
+  private boolean m_first_run = true;
+  private long m_timestamp = 0;
+  private long m_previous_timestamp = 0;
+  private double m_compAngleX = 0.0;
+  private double m_compAngleY = 0.0;
+  private double m_last_rate_x = 0.0;
+  private double m_last_rate_y = 0.0;
+  private double m_last_rate_z = 0.0;
+
+  // Carrying the yaw across a restart: the last sample before the restart and its yaw rate
+  private long m_resume_timestamp = 0;
+  private double m_resume_rate = 0.0;
+  private double m_last_yaw_rate = 0.0;
+  private volatile double m_last_gap = 0.0;
+  private volatile long m_resumes = 0;
+
+  // Sample stream health
+  private volatile long m_timestamp_gaps = 0;
+  private volatile long m_missed_samples = 0;
+
+  /**
+   * @param history The history to record decoded samples into
+   */
+  public ADIS16470Decoder(ADIS16470History history) {
+    m_history = history;
+  }
+
+  /**
+   * Start a new run, as after (re)starting auto SPI. The first sample of a run only seeds the
+   * timestamps and filters. The integrated angle carries over: the first sample bridges the gap
+   * since the last sample of the previous run with that sample's yaw rate.
+   */
+  public void restart() {
+    if (m_timestamp != 0) {
+      m_resume_timestamp = m_timestamp;
+      m_resume_rate = m_last_yaw_rate;
+    }
+    m_first_run = true;
+    m_timestamp = 0;
+    m_previous_timestamp = 0;
+    m_compAngleX = 0.0;
+    m_compAngleY = 0.0;
+    m_bias.restart();
+    m_impacts.restart();
+  }
+
+  /**
+   * @param yaw_axis The axis whose delta angle is integrated into the yaw angle
+   */
+  public void setYawAxis(ADIS16470.IMUAxis yaw_axis) {
+    if (m_yaw_axis != yaw_axis) {
+      // The angle carries over, but the old axis's rate can't bridge the gap
+      m_last_yaw_rate = 0.0;
+    }
+    m_yaw_axis = yaw_axis;
+  }
+
+  /** @return Seconds between the last sample before the latest restart and the first one after */
+  public double getLastGap() {
+    return m_last_gap;
+  }
+
+  /** @return Number of restarts whose gap has been bridged (see {@link #getLastGap()}) */
+  public long getResumes() {
+    return m_resumes;
+  }
+
+  /**
+   * Set the frame format. Must only be called while nothing is decoding (the acquire thread is
+   * idle).
+   *
+   * @param read_mode The auto SPI read mode the frames are captured with
+   */
+  public void setReadMode(ADIS16470.ReadMode read_mode) {
+    m_read_mode = read_mode;
+    m_burst_checked = 0;
+    m_burst_failures = 0;
+    m_burst_failing = false;
+  }
+
+  /** @return The auto SPI read mode the decoder expects */
+  public ADIS16470.ReadMode getReadMode() {
+    return m_read_mode;
+  }
+
+  /** @return DMA words per sample for the current read mode */
+  public int getDatasetLength() {
+    return m_read_mode == ADIS16470.ReadMode.kBurst ? BURST_DATASET_LEN : DATASET_LEN;
+  }
+
+  /** @return Number of burst frames dropped because of a bad checksum */
+  public long getChecksumErrors() {
+    return m_checksum_errors;
+  }
+
+  /**
+   * @return True if too many recent burst frames failed their checksum, and the register mode
+   *     should be used instead
+   */
+  public boolean isBurstFailing() {
+    return m_burst_failing;
+  }
+
+  /**
+   * @param forced True to run the complementary filter inclinometer on every sample, false to only
+   *     run it on demand
+   */
+  void setInclinometerEnabled(boolean forced) {
+    m_inclinometer_forced = forced;
+  }
+
+  /** Handle that keeps the inclinometer running until it is closed. */
+  public final class Subscription implements AutoCloseable {
+    private final AtomicBoolean m_closed = new AtomicBoolean(false);
+
+    private Subscription() {
+      m_inclinometer_subscribers.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+      if (m_closed.compareAndSet(false, true)) {
+        m_inclinometer_subscribers.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Keep the inclinometer running until the returned handle is closed. Safe to call from any
+   * thread.
+   *
+   * @return The subscription
+   */
+  public Subscription subscribeInclinometer() {
+    return new Subscription();
+  }
+
+  /**
+   * Keep the inclinometer running for a couple of seconds, for readers that poll rather than
+   * subscribe. If it had stopped, it restarts (reseeded from the accelerometers) on the next batch.
+   * Safe to call from any thread.
+   */
+  public void touchInclinometer() {
+    m_inclinometer_lease_end = System.nanoTime() + INCLINOMETER_LEASE;
+  }
+
+  /** @return True if the inclinometer ran on the last decoded batch */
+  public boolean isInclinometerRunning() {
+    return m_inclinometer_running;
+  }
+
+  /**
+   * @param enabled True to run the quaternion attitude estimator on every sample
+   */
+  void setAttitudeEnabled(boolean enabled) {
+    m_attitude_enabled = enabled;
+  }
+
+  /** Zero the integrated angle on the next decoded sample. Safe to call from any thread. */
+  public void requestReset() {
+    m_reset_requested = true;
+  }
+
+  /**
+   * @return Number of resets that have been applied and published. Safe to call from any thread.
+   */
+  public long getResets() {
+    return m_resets;
+  }
+
+  /**
+   * @param scaled_sample_rate Sample period scaling for the delta angle in microseconds
+   */
+  public void setScaledSampleRate(double scaled_sample_rate) {
+    m_scaled_sample_rate = scaled_sample_rate;
+  }
+
+  /** @return The newest published sample (never null). Safe to call from any thread. */
+  public ADIS16470.Sample getSample() {
+    return m_sample;
+  }
+
+  /** @return Extended FPGA timestamp of the newest decoded sample in microseconds */
+  public long getTimestamp() {
+    return m_timestamp;
+  }
+
+  /** @return The zero-motion yaw bias estimator */
+  public ADIS16470BiasEstimator getBiasEstimator() {
+    return m_bias;
+  }
+
+  /** @return The impact detector */
+  public ADIS16470ImpactDetector getImpactDetector() {
+    return m_impacts;
+  }
+
+  /** @return Number of times the spacing between samples suggested that samples were missed */
+  public long getTimestampGaps() {
+    return m_timestamp_gaps;
+  }
+
+  /** @return Estimated number of samples missed, based on the sample timestamps */
+  public long getMissedSamples() {
+    return m_missed_samples;
+  }
+
+  /**
+   * Decode a batch of complete frames and publish the newest sample.
+   *
+   * @param buffer Raw auto SPI words, one frame every {@link #getDatasetLength()} words
+   * @param length Number of words in the buffer (a multiple of {@link #getDatasetLength()})
+   * @param now FPGA time in microseconds, used to extend the first timestamp of a run
+   * @return Number of samples decoded
+   */
+  public int decode(int[] buffer, int length, long now) {
+    int decoded = 0;
+    boolean reset = false;
+    double delta_angle = 0.0;
+    double gyro_rate_x = 0.0;
+    double gyro_rate_y = 0.0;
+    double gyro_rate_z = 0.0;
+    double accel_x = 0.0;
+    double accel_y = 0.0;
+    double accel_z = 0.0;
+    double temp = 0.0;
+    double delta_scale = 0.0;
+    double delta_x = 0.0;
+    double delta_y = 0.0;
+    double delta_z = 0.0;
+    double gyro_rate_x_si = 0.0;
+    double gyro_rate_y_si = 0.0;
+    double gyro_rate_z_si = 0.0;
+    double accel_x_si = 0.0;
+    double accel_y_si = 0.0;
+    double accel_z_si = 0.0;
+    double compAngleX = m_compAngleX;
+    double compAngleY = m_compAngleY;
+    double accelAngleX = 0.0;
+    double accelAngleY = 0.0;
+    long timestamp = m_timestamp;
+    long previous_timestamp = m_previous_timestamp;
+    final ADIS16470.IMUAxis yaw_axis = m_yaw_axis;
+    final boolean inclinometer_enabled =
+        m_inclinometer_forced
+            || m_inclinometer_subscribers.get() > 0
+            || System.nanoTime() - m_inclinometer_lease_end < 0;
+    // Reseed the filter from the accelerometers whenever it starts up again
+    boolean inclinometer_seed = inclinometer_enabled && !m_inclinometer_running;
+    m_inclinometer_running = inclinometer_enabled;
+    final boolean attitude_enabled = m_attitude_enabled;
+    final boolean burst = m_read_mode == ADIS16470.ReadMode.kBurst;
+    final int dataset_len = burst ? BURST_DATASET_LEN : DATASET_LEN;
+
+    // Could be multiple data sets in the buffer. Handle each one.
+    for (int i = 0; i + dataset_len <= length; i += dataset_len) {
+      // Timestamp is at buffer[i] (lower 32 bits of the FPGA time, which wraps)
+      timestamp = extendTimestamp(buffer[i], previous_timestamp, now);
+      if (previous_timestamp != 0 && timestamp == previous_timestamp) {
+        // Never decode the same sample twice
+        continue;
+      }
+      if (burst && !checkBurstFrame(buffer, i)) {
+        // Drop the frame; the next good one integrates over the gap
+        timestamp = previous_timestamp;
+        continue;
+      }
+      m_dt = (timestamp - previous_timestamp) / 1000000.0;
+      if (!m_first_run && (timestamp - previous_timestamp) > 1.5 * m_scaled_sample_rate) {
+        // The scaled sample rate is the sample period in microseconds
+        m_timestamp_gaps = m_timestamp_gaps + 1;
+        m_missed_samples =
+            m_missed_samples
+                + Math.round((timestamp - previous_timestamp) / m_scaled_sample_rate)
+                - 1;
+        m_bias.restart();
+      }
+
+      if (burst) {
+        /*
+         * Burst frames have no delta angles, so integrate the rates over the elapsed time
+         * (trapezoidal, based on timestamp). DIAG_STAT is at 3-4 and DATA_CNTR at 19-20.
+         */
+        gyro_rate_x = (toShort(buffer[i + 5], buffer[i + 6]) / 10.0);
+        gyro_rate_y = (toShort(buffer[i + 7], buffer[i + 8]) / 10.0);
+        gyro_rate_z = (toShort(buffer[i + 9], buffer[i + 10]) / 10.0);
+        accel_x = (toShort(buffer[i + 11], buffer[i + 12]) / 800.0);
+        accel_y = (toShort(buffer[i + 13], buffer[i + 14]) / 800.0);
+        accel_z = (toShort(buffer[i + 15], buffer[i + 16]) / 800.0);
+        temp = (toShort(buffer[i + 17], buffer[i + 18]) / 10.0);
+        delta_scale = 0.5 * m_dt;
+        delta_x = (gyro_rate_x + m_last_rate_x) * delta_scale;
+        delta_y = (gyro_rate_y + m_last_rate_y) * delta_scale;
+        delta_z = (gyro_rate_z + m_last_rate_z) * delta_scale;
+        m_last_rate_x = gyro_rate_x;
+        m_last_rate_y = gyro_rate_y;
+        m_last_rate_z = gyro_rate_z;
+      } else {
+        /*
+         * Get the delta angles and scale them by the elapsed time (based on timestamp)
+         */
+        delta_scale = delta_angle_sf / (m_scaled_sample_rate / (timestamp - previous_timestamp));
+        delta_x = toInt(buffer[i + 3], buffer[i + 4], buffer[i + 5], buffer[i + 6]) * delta_scale;
+        delta_y =
+            toInt(buffer[i + 7], buffer[i + 8], buffer[i + 9], buffer[i + 10]) * delta_scale;
+        delta_z =
+            toInt(buffer[i + 11], buffer[i + 12], buffer[i + 13], buffer[i + 14]) * delta_scale;
+        gyro_rate_x = (toShort(buffer[i + 15], buffer[i + 16]) / 10.0);
+        gyro_rate_y = (toShort(buffer[i + 17], buffer[i + 18]) / 10.0);
+        gyro_rate_z = (toShort(buffer[i + 19], buffer[i + 20]) / 10.0);
+        accel_x = (toShort(buffer[i + 21], buffer[i + 22]) / 800.0);
+        accel_y = (toShort(buffer[i + 23], buffer[i + 24]) / 800.0);
+        accel_z = (toShort(buffer[i + 25], buffer[i + 26]) / 800.0);
+        temp = (toShort(buffer[i + 27], buffer[i + 28]) / 10.0);
+      }
+      delta_angle =
+          yaw_axis == ADIS16470.IMUAxis.kX
+              ? delta_x
+              : yaw_axis == ADIS16470.IMUAxis.kY ? delta_y : delta_z;
+
+      // Convert scaled sensor data to SI units (for tilt calculations)
+      // TODO: Should the unit outputs be selectable?
+      gyro_rate_x_si = gyro_rate_x * deg_to_rad;
+      gyro_rate_y_si = gyro_rate_y * deg_to_rad;
+      gyro_rate_z_si = gyro_rate_z * deg_to_rad;
+      accel_x_si = accel_x * grav;
+      accel_y_si = accel_y * grav;
+      accel_z_si = accel_z * grav;
+
+      // Store timestamp for next iteration
+      previous_timestamp = timestamp;
+
+      m_alpha = m_tau / (m_tau + m_dt);
+
+      if (!inclinometer_enabled) {
+        // Nobody is reading the tilt; the last published values are published again below
+      } else if (m_first_run || inclinometer_seed) {
+        // Set up inclinometer calculations for first run
+        inclinometer_seed = false;
+        accelAngleX =
+            Math.atan2(
+                accel_x_si, Math.sqrt((accel_y_si * accel_y_si) + (accel_z_si * accel_z_si)));
+        accelAngleY =
+            Math.atan2(
+                accel_y_si, Math.sqrt((accel_x_si * accel_x_si) + (accel_z_si * accel_z_si)));
+        compAngleX = accelAngleX;
+        compAngleY = accelAngleY;
+      } else {
+        // Run inclinometer calculations
+        accelAngleX =
+            Math.atan2(
+                accel_x_si, Math.sqrt((accel_y_si * accel_y_si) + (accel_z_si * accel_z_si)));
+        accelAngleY =
+            Math.atan2(
+                accel_y_si, Math.sqrt((accel_x_si * accel_x_si) + (accel_z_si * accel_z_si)));
+        accelAngleX = formatAccelRange(accelAngleX, accel_z_si);
+        accelAngleY = formatAccelRange(accelAngleY, accel_z_si);
+        compAngleX = compFilterProcess(compAngleX, accelAngleX, -gyro_rate_y_si);
+        compAngleY = compFilterProcess(compAngleY, accelAngleY, gyro_rate_x_si);
+      }
+
+      /* Look for impacts on every sample */
+      if (!m_first_run) {
+        m_impacts.update(timestamp / 1000000.0, accel_x, accel_y, accel_z, m_dt);
+      }
+
+      /* Propagate the 3-axis attitude (it carries over a restart like the yaw does) */
+      if (!attitude_enabled) {
+        // Skipped
+      } else if (m_first_run && m_resume_timestamp != 0) {
+        // Nothing to propagate yet; gravity corrects whatever tilt was missed in the gap
+      } else if (m_first_run) {
+        m_attitude.reset(accel_x, accel_y, accel_z);
+      } else {
+        m_attitude.update(
+            delta_x * deg_to_rad,
+            delta_y * deg_to_rad,
+            delta_z * deg_to_rad,
+            accel_x,
+            accel_y,
+            accel_z,
+            m_dt);
+      }
+
+      /* Update the integrated angle (only this thread writes it) */
+      if (m_first_run) {
+        /*
+         * Don't accumulate first run. previous_timestamp will be "very" old and the
+         * integration will end up way off. After a restart, bridge the gap instead.
+         */
+        if (m_resume_timestamp != 0) {
+          final double gap = (timestamp - m_resume_timestamp) / 1000000.0;
+          m_integ_angle += m_resume_rate * gap;
+          m_resume_timestamp = 0;
+          m_last_gap = gap;
+          m_resumes = m_resumes + 1;
+        }
+        if (m_reset_requested) {
+          m_reset_requested = false;
+          m_integ_angle = 0.0;
+          reset = true;
+        }
+      } else if (m_reset_requested) {
+        m_reset_requested = false;
+        m_integ_angle = 0.0;
+        reset = true;
+      } else {
+        // Refine the yaw bias while the robot is still, and take the current estimate out
+        m_bias.update(delta_angle / m_dt, accel_x, accel_y, m_dt);
+        m_integ_angle += delta_angle - m_bias.getBias() * m_dt;
+        m_last_yaw_rate = delta_angle / m_dt - m_bias.getBias();
+      }
+      m_history.add(timestamp / 1000000.0, m_integ_angle, gyro_rate_x, gyro_rate_y, gyro_rate_z);
+      m_first_run = false;
+      decoded++;
+    }
+
+    m_timestamp = timestamp;
+    m_previous_timestamp = previous_timestamp;
+    m_compAngleX = compAngleX;
+    m_compAngleY = compAngleY;
+
+    /* Publish the newest sample of this batch to the readers */
+    if (decoded > 0) {
+      // The tilt wasn't computed if the inclinometer is idle, so carry the last published tilt
+      final ADIS16470.Sample previous = m_sample;
+      final long resets = reset ? m_resets + 1 : m_resets;
+      m_sample =
+          new ADIS16470.Sample(
+              timestamp / 1000000.0,
+              m_integ_angle,
+              gyro_rate_x,
+              gyro_rate_y,
+              gyro_rate_z,
+              accel_x,
+              accel_y,
+              accel_z,
+              temp,
+              inclinometer_enabled ? compAngleX * rad_to_deg : previous.compAngleX,
+              inclinometer_enabled ? compAngleY * rad_to_deg : previous.compAngleY,
+              inclinometer_enabled ? accelAngleX * rad_to_deg : previous.accelAngleX,
+              inclinometer_enabled ? accelAngleY * rad_to_deg : previous.accelAngleY,
+              attitude_enabled ? m_attitude.snapshot() : ADIS16470AttitudeEstimator.IDENTITY,
+              resets);
+      // Only acknowledged once a sample with the reset angle is visible to the readers
+      m_resets = resets;
+    }
+    return decoded;
+  }
+
+  /**
+   * Validate a burst frame: the checksum is the sum of the bytes from DIAG_STAT through DATA_CNTR.
+   * Keeps a running failure count and flags the burst mode as failing if too many recent frames
+   * were bad.
+   *
+   * @param buffer Raw auto SPI words
+   * @param i Index of the frame's timestamp
+   * @return True if the frame is good
+   */
+  private boolean checkBurstFrame(int[] buffer, int i) {
+    int sum = 0;
+    for (int j = i + 3; j <= i + 20; j++) {
+      sum += buffer[j] & 0xFF;
+    }
+    boolean good = (sum & 0xFFFF) == (toShort(buffer[i + 21], buffer[i + 22]) & 0xFFFF);
+    if (!good) {
+      m_checksum_errors = m_checksum_errors + 1;
+      m_burst_failures++;
+    }
+    if (++m_burst_checked >= BURST_CHECK_WINDOW) {
+      if (m_burst_failures > BURST_MAX_FAILURES) {
+        m_burst_failing = true;
+      }
+      m_burst_checked = 0;
+      m_burst_failures = 0;
+    }
+    return good;
+  }
+
+  /**
+   * Extend a 32-bit DMA sample timestamp to the full 64-bit FPGA time.
+   *
+   * @param raw Lower 32 bits of the FPGA time in microseconds, as stamped by the DMA engine
+   * @param previous Previous extended timestamp in microseconds, or 0 if there isn't one
+   * @param now Current FPGA time in microseconds, used when there is no previous timestamp
+   * @return Extended timestamp in microseconds
+   */
+  static long extendTimestamp(int raw, long previous, long now) {
+    if (previous == 0) {
+      // Borrow the upper bits from the current FPGA time; the sample can't be from the future
+      long timestamp = (now & ~0xFFFFFFFFL) | toULong(raw);
+      if (timestamp > now) {
+        timestamp -= 0x100000000L;
+      }
+      return timestamp;
+    }
+    return previous + ((toULong(raw) - (previous & 0xFFFFFFFFL)) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * @param sint
+   * @return
+   */
+  private static long toULong(int sint) {
+    return sint & 0x00000000FFFFFFFFL;
+  }
+
+  /**
+   * @param buf
+   * @return
+   */
+  private static int toShort(int... buf) {
+    return (short) (((buf[0] & 0xFF) << 8) + ((buf[1] & 0xFF) << 0));
+  }
+
+  /**
+   * @param buf
+   * @return
+   */
+  private static int toInt(int... buf) {
+    return (int)
+        ((buf[0] & 0xFF) << 24 | (buf[1] & 0xFF) << 16 | (buf[2] & 0xFF) << 8 | (buf[3] & 0xFF));
+  }
+
+  /**
+   * @param compAngle
+   * @param accAngle
+   * @return
+   */
+  private double formatFastConverge(double compAngle, double accAngle) {
+    if (compAngle > accAngle + Math.PI) {
+      compAngle = compAngle - 2.0 * Math.PI;
+    } else if (accAngle > compAngle + Math.PI) {
+      compAngle = compAngle + 2.0 * Math.PI;
+    }
+    return compAngle;
+  }
+
+  /**
+   * @param compAngle
+   * @return
+   */
+  private double formatRange0to2PI(double compAngle) {
+    while (compAngle >= 2 * Math.PI) {
+      compAngle = compAngle - 2.0 * Math.PI;
+    }
+    while (compAngle < 0.0) {
+      compAngle = compAngle + 2.0 * Math.PI;
+    }
+    return compAngle;
+  }
+
+  /**
+   * @param accelAngle
+   * @param accelZ
+   * @return
+   */
+  private double formatAccelRange(double accelAngle, double accelZ) {
+    if (accelZ < 0.0) {
+      accelAngle = Math.PI - accelAngle;
+    } else if (accelZ > 0.0 && accelAngle < 0.0) {
+      accelAngle = 2.0 * Math.PI + accelAngle;
+    }
+    return accelAngle;
+  }
+
+  /**
+   * @param compAngle
+   * @param accelAngle
+   * @param omega
+   * @return
+   */
+  private double compFilterProcess(double compAngle, double accelAngle, double omega) {
+    compAngle = formatFastConverge(compAngle, accelAngle);
+    compAngle = m_alpha * (compAngle + omega * m_dt) + (1.0 - m_alpha) * accelAngle;
+    compAngle = formatRange0to2PI(compAngle);
+    if (compAngle > Math.PI) {
+      compAngle = compAngle - 2.0 * Math.PI;
+    }
+    return compAngle;
+  }
+}
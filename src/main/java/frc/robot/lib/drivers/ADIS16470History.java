@@ -0,0 +1,167 @@
+package frc.robot.lib.drivers;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * A fixed-capacity history of ADIS16470 samples indexed by FPGA timestamp. The acquire thread is the
+ * only writer; any number of threads can query the history without locking or allocating.
+ *
+ * <p>Each sample is stored in primitive arrays (a slot per column). The writer fills a slot and then
+ * publishes it by advancing a volatile sample count. A reader snapshots the count, reads the slots
+ * it needs, and then re-reads the count to make sure the writer did not lap any of the slots it
+ * touched while it was reading. If it did, the read is retried.
+ */
+public final class ADIS16470History {
+  private final int m_capacity;
+  private final int m_mask;
+
+  private final double[] m_timestamp;
+  private final double[] m_angle;
+  private final double[] m_rate_x;
+  private final double[] m_rate_y;
+  private final double[] m_rate_z;
+
+  // Total number of samples ever written (the next sequence number)
+  private volatile long m_count = 0;
+
+  /**
+   * @param capacity Number of samples to keep, rounded up to the next power of two
+   */
+  public ADIS16470History(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    m_capacity = size;
+    m_mask = size - 1;
+    m_timestamp = new double[size];
+    m_angle = new double[size];
+    m_rate_x = new double[size];
+    m_rate_y = new double[size];
+    m_rate_z = new double[size];
+  }
+
+  /**
+   * Append a sample. Must only be called from the acquire thread.
+   *
+   * @param timestamp FPGA timestamp of the sample in seconds
+   * @param angle Integrated yaw axis angle in degrees
+   * @param rate_x X axis angular rate in degrees per second
+   * @param rate_y Y axis angular rate in degrees per second
+   * @param rate_z Z axis angular rate in degrees per second
+   */
+  void add(double timestamp, double angle, double rate_x, double rate_y, double rate_z) {
+    long count = m_count;
+    int slot = (int) (count & m_mask);
+    m_timestamp[slot] = timestamp;
+    m_angle[slot] = angle;
+    m_rate_x[slot] = rate_x;
+    m_rate_y[slot] = rate_y;
+    m_rate_z[slot] = rate_z;
+    // Volatile store publishes the slot contents to the readers
+    m_count = count + 1;
+  }
+
+  /** @return The number of samples the history can hold */
+  public int getCapacity() {
+    return m_capacity;
+  }
+
+  /**
+   * Get the yaw angle at the given time, linearly interpolated between the two samples around it.
+   * Times older than the history or newer than the latest sample are clamped to the oldest or newest
+   * sample.
+   *
+   * @param timestamp FPGA timestamp in seconds (see {@link edu.wpi.first.wpilibj.Timer#getFPGATimestamp})
+   * @return Yaw axis angle in degrees, or NaN if no samples have been recorded
+   */
+  public double getAngleAt(double timestamp) {
+    return interpolate(m_angle, timestamp);
+  }
+
+  /**
+   * Get an angular rate at the given time, linearly interpolated between the two samples around it.
+   *
+   * @param axis The axis of the rate to read
+   * @param timestamp FPGA timestamp in seconds
+   * @return Angular rate in degrees per second, or NaN if no samples have been recorded
+   */
+  public double getRateAt(ADIS16470.IMUAxis axis, double timestamp) {
+    switch (axis) {
+      case kX:
+        return interpolate(m_rate_x, timestamp);
+      case kY:
+        return interpolate(m_rate_y, timestamp);
+      default:
+        return interpolate(m_rate_z, timestamp);
+    }
+  }
+
+  /** @return FPGA timestamp in seconds of the oldest sample still held, or NaN if empty */
+  public double getOldestTimestamp() {
+    while (true) {
+      long count = m_count;
+      long oldest = Math.max(count - m_capacity + 1, 0);
+      if (oldest >= count) {
+        return Double.NaN;
+      }
+      double timestamp = m_timestamp[(int) (oldest & m_mask)];
+      if (isValid(oldest)) {
+        return timestamp;
+      }
+    }
+  }
+
+  /**
+   * Binary search the timestamps for the requested time and interpolate the column. Timestamps are
+   * monotonic because they come straight from the DMA sample stamps.
+   */
+  private double interpolate(double[] column, double timestamp) {
+    while (true) {
+      long count = m_count;
+      // The slot for (count - capacity) may be in the middle of being overwritten
+      long lo = Math.max(count - m_capacity + 1, 0);
+      long hi = count - 1;
+      if (hi < lo) {
+        return Double.NaN;
+      }
+
+      double result;
+      double t_lo = m_timestamp[(int) (lo & m_mask)];
+      double t_hi = m_timestamp[(int) (hi & m_mask)];
+      if (timestamp <= t_lo) {
+        result = column[(int) (lo & m_mask)];
+      } else if (timestamp >= t_hi) {
+        result = column[(int) (hi & m_mask)];
+      } else {
+        // Find the last sample at or before the requested time
+        long left = lo;
+        long right = hi;
+        while (right - left > 1) {
+          long mid = (left + right) >>> 1;
+          if (m_timestamp[(int) (mid & m_mask)] <= timestamp) {
+            left = mid;
+          } else {
+            right = mid;
+          }
+        }
+        int a = (int) (left & m_mask);
+        int b = (int) (right & m_mask);
+        double span = m_timestamp[b] - m_timestamp[a];
+        double fraction = span > 0.0 ? (timestamp - m_timestamp[a]) / span : 0.0;
+        result = column[a] + (column[b] - column[a]) * fraction;
+      }
+
+      if (isValid(lo)) {
+        return result;
+      }
+    }
+  }
+
+  /**
+   * @param oldest The oldest sequence number touched by the read that just finished
+   * @return True if the writer has not lapped that sample since it was read
+   */
+  private boolean isValid(long oldest) {
+    // Keep the plain array reads above from moving past the volatile re-read below
+    VarHandle.loadLoadFence();
+    return m_count - m_capacity < oldest;
+  }
+}
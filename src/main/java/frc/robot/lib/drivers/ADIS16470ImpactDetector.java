@@ -0,0 +1,253 @@
+package frc.robot.lib.drivers;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Collision and impact detection on every ADIS16470 sample. Gravity is tracked with a slow low-pass
+ * filter and taken out of the acceleration; an impact starts when the remaining (dynamic)
+ * acceleration is over the magnitude threshold while it is changing faster than the jerk
+ * threshold, and ends when it drops back under half of the magnitude threshold. Each impact is
+ * reported twice: on the sample that starts it (with the onset time and the acceleration so far),
+ * so commands can react within one sample, and again when it ends with the whole impact's peak and
+ * direction.
+ *
+ * <p>Impact records are published into a fixed-capacity ring (the last 63 are held) with the same
+ * single writer scheme as {@link ADIS16470History}. Every reader gets its own {@link Cursor}, so
+ * any number of commands can poll for impacts at their own rate without locking, and without
+ * taking events away from each other.
+ */
+public final class ADIS16470ImpactDetector {
+  private static final double rad_to_deg = 57.2957795;
+  private static final int CAPACITY = 64; // power of two
+  private static final int MASK = CAPACITY - 1;
+  private static final double GRAVITY_TAU = 0.5; // s
+  private static final double MAX_DURATION = 0.5; // s
+
+  /** A detected impact, either as it starts or once it has ended. */
+  public static final class Impact {
+    /** FPGA timestamp in seconds when the impact started */
+    public final double timestamp;
+    /** FPGA timestamp in seconds of the peak */
+    public final double peakTimestamp;
+    /** Peak dynamic acceleration in g */
+    public final double peak;
+    /** Direction of the peak acceleration in the X/Y plane in degrees (0 along +X, CCW positive) */
+    public final double direction;
+    /** Peak jerk in g per second */
+    public final double jerk;
+    /** False for the onset record (peak so far), true for the end record (peak of the impact) */
+    public final boolean ended;
+
+    Impact(
+        double timestamp,
+        double peakTimestamp,
+        double peak,
+        double direction,
+        double jerk,
+        boolean ended) {
+      this.timestamp = timestamp;
+      this.peakTimestamp = peakTimestamp;
+      this.peak = peak;
+      this.direction = direction;
+      this.jerk = jerk;
+      this.ended = ended;
+    }
+  }
+
+  /** A reader's position in the impact stream. Each cursor must only be used by one thread. */
+  public final class Cursor {
+    private long m_next;
+    private long m_missed = 0;
+
+    private Cursor(long next) {
+      m_next = next;
+    }
+
+    /** @return The next impact this cursor hasn't seen, or null if there isn't one */
+    public Impact poll() {
+      while (true) {
+        long count = m_count;
+        if (m_next >= count) {
+          return null;
+        }
+        // The slot for (count - capacity) may be in the middle of being overwritten
+        long oldest = count - CAPACITY + 1;
+        if (m_next < oldest) {
+          // Lapped by the writer; skip to the oldest impact still held
+          m_missed += oldest - m_next;
+          m_next = oldest;
+        }
+        int slot = (int) (m_next & MASK);
+        double timestamp = m_timestamp[slot];
+        double peak_timestamp = m_peak_timestamp[slot];
+        double peak = m_peak[slot];
+        double direction = m_direction[slot];
+        double jerk = m_jerk[slot];
+        boolean ended = m_ended[slot];
+        // Keep the plain array reads above from moving past the volatile re-read below
+        VarHandle.loadLoadFence();
+        if (m_count - CAPACITY < m_next) {
+          m_next++;
+          return new Impact(timestamp, peak_timestamp, peak, direction, jerk, ended);
+        }
+      }
+    }
+
+    /** @return Number of impacts this cursor skipped because it fell too far behind */
+    public long getMissed() {
+      return m_missed;
+    }
+  }
+
+  // Thresholds
+  private volatile double m_threshold = 1.0; // g
+  private volatile double m_jerk_threshold = 100.0; // g/s
+
+  // Published impacts
+  private final double[] m_timestamp = new double[CAPACITY];
+  private final double[] m_peak_timestamp = new double[CAPACITY];
+  private final double[] m_peak = new double[CAPACITY];
+  private final double[] m_direction = new double[CAPACITY];
+  private final double[] m_jerk = new double[CAPACITY];
+  private final boolean[] m_ended = new boolean[CAPACITY];
+  private volatile long m_count = 0;
+  private volatile long m_impacts = 0;
+
+  // Detector state (decoding thread only)
+  private boolean m_seeded = false;
+  private double m_gravity_x = 0.0;
+  private double m_gravity_y = 0.0;
+  private double m_gravity_z = 0.0;
+  private double m_previous_magnitude = 0.0;
+  private boolean m_in_impact = false;
+  private double m_start = 0.0;
+  private double m_max = 0.0;
+  private double m_max_timestamp = 0.0;
+  private double m_max_direction = 0.0;
+  private double m_max_jerk = 0.0;
+
+  /**
+   * @param threshold Dynamic acceleration that counts as an impact, in g
+   * @param jerk_threshold Rate of change of the dynamic acceleration that counts as an impact, in g
+   *     per second
+   */
+  public void setThresholds(double threshold, double jerk_threshold) {
+    m_threshold = threshold;
+    m_jerk_threshold = jerk_threshold;
+  }
+
+  /** @return A cursor that sees every impact detected from now on */
+  public Cursor subscribe() {
+    return new Cursor(m_count);
+  }
+
+  /** @return Number of impact records published (two per impact, its onset and its end) */
+  public long getCount() {
+    return m_count;
+  }
+
+  /** @return Number of impacts detected */
+  public long getImpacts() {
+    return m_impacts;
+  }
+
+  /** @return The most recent impact record, or null if there hasn't been one */
+  public Impact getLastImpact() {
+    long count = m_count;
+    if (count == 0) {
+      return null;
+    }
+    Cursor cursor = new Cursor(count - 1);
+    return cursor.poll();
+  }
+
+  /** Start over after a gap in the data; an impact in progress is ended with its peak so far. */
+  void restart() {
+    m_seeded = false;
+    if (m_in_impact) {
+      m_in_impact = false;
+      publish(true);
+    }
+  }
+
+  /**
+   * Add a sample. Must only be called from the decoding thread.
+   *
+   * @param timestamp FPGA timestamp of the sample in seconds
+   * @param accel_x X axis acceleration in g
+   * @param accel_y Y axis acceleration in g
+   * @param accel_z Z axis acceleration in g
+   * @param dt Time since the previous sample in seconds
+   */
+  void update(double timestamp, double accel_x, double accel_y, double accel_z, double dt) {
+    if (!m_seeded) {
+      m_gravity_x = accel_x;
+      m_gravity_y = accel_y;
+      m_gravity_z = accel_z;
+      m_previous_magnitude = 0.0;
+      m_seeded = true;
+      return;
+    }
+
+    final double dx = accel_x - m_gravity_x;
+    final double dy = accel_y - m_gravity_y;
+    final double dz = accel_z - m_gravity_z;
+    final double magnitude = Math.sqrt(dx * dx + dy * dy + dz * dz);
+    final double jerk = Math.abs(magnitude - m_previous_magnitude) / dt;
+    m_previous_magnitude = magnitude;
+
+    final double threshold = m_threshold;
+    boolean onset = false;
+    if (!m_in_impact) {
+      // Only track gravity outside of impacts, so a long hit doesn't get absorbed into it
+      final double alpha = dt / (GRAVITY_TAU + dt);
+      m_gravity_x += alpha * dx;
+      m_gravity_y += alpha * dy;
+      m_gravity_z += alpha * dz;
+      if (magnitude > threshold && jerk > m_jerk_threshold) {
+        m_in_impact = true;
+        onset = true;
+        m_start = timestamp;
+        m_max = 0.0;
+        m_max_jerk = 0.0;
+      }
+    }
+
+    if (m_in_impact) {
+      if (magnitude > m_max) {
+        m_max = magnitude;
+        m_max_timestamp = timestamp;
+        m_max_direction = Math.atan2(dy, dx) * rad_to_deg;
+      }
+      if (jerk > m_max_jerk) {
+        m_max_jerk = jerk;
+      }
+      // A tilt change during the hit can hold the dynamic acceleration up, so cap the duration
+      if (magnitude < 0.5 * threshold || timestamp - m_start > MAX_DURATION) {
+        m_in_impact = false;
+        publish(true);
+      } else if (onset) {
+        m_impacts++;
+        publish(false);
+      }
+    }
+  }
+
+  /**
+   * Publish the impact in progress.
+   *
+   * @param ended True once the impact has ended, false for its onset
+   */
+  private void publish(boolean ended) {
+    long count = m_count;
+    int slot = (int) (count & MASK);
+    m_timestamp[slot] = m_start;
+    m_peak_timestamp[slot] = m_max_timestamp;
+    m_peak[slot] = m_max;
+    m_direction[slot] = m_max_direction;
+    m_jerk[slot] = m_max_jerk;
+    m_ended[slot] = ended;
+    // Volatile store publishes the slot contents to the readers
+    m_count = count + 1;
+  }
+}
@@ -0,0 +1,188 @@
+package frc.robot.lib.drivers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams the raw ADIS16470 auto SPI frames to a compact binary file so they can be replayed through
+ * the decoder on a desktop ({@link ADIS16470Replay}). The acquire thread only copies the frames into
+ * a ring buffer; a background thread does the file I/O so a slow write can never stall acquisition.
+ * If the ring fills up, whole batches are dropped and counted.
+ *
+ * <p>File layout (big-endian):
+ *
+ * <pre>
+ * int    magic ('ADIS')
+ * int    version
+ * int    words per frame
+ * int    yaw axis (IMUAxis ordinal)
+ * double scaled sample rate (see ADIS16470.configOutputDataRate)
+ * long   FPGA time in microseconds when the first frame was recorded
+ * frames: int DMA timestamp, followed by one byte for each of the remaining words
+ * </pre>
+ */
+public final class ADIS16470Recorder implements AutoCloseable {
+  public static final int MAGIC = 0x41444953;
+  public static final int VERSION = 2;
+
+  private static final int RING_SIZE = 1 << 16; // words (about 17 s of frames at 200 Hz)
+  private static final int RING_MASK = RING_SIZE - 1;
+  private static final int WRITE_BUFFER_SIZE = 1 << 16; // bytes
+
+  private final int[] m_ring = new int[RING_SIZE];
+  private volatile long m_head = 0; // words produced by the acquire thread
+  private volatile long m_tail = 0; // words consumed by the writer thread
+  private volatile long m_start_time = -1;
+  private volatile long m_recorded_frames = 0;
+  private volatile long m_dropped_frames = 0;
+  private volatile boolean m_running = true;
+
+  private final int m_dataset_len;
+  private final ADIS16470.IMUAxis m_yaw_axis;
+  private final double m_scaled_sample_rate;
+  private final FileChannel m_channel;
+  private final Thread m_writer;
+
+  /**
+   * @param path File to write the capture to (replaced if it exists)
+   * @param dataset_len Number of DMA words in each frame
+   * @param yaw_axis The yaw axis the frames were captured with
+   * @param scaled_sample_rate The delta angle sample rate scaling the frames were captured with
+   * @throws IOException If the file can't be opened
+   */
+  public ADIS16470Recorder(
+      Path path, int dataset_len, ADIS16470.IMUAxis yaw_axis, double scaled_sample_rate)
+      throws IOException {
+    m_dataset_len = dataset_len;
+    m_yaw_axis = yaw_axis;
+    m_scaled_sample_rate = scaled_sample_rate;
+    m_channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+    m_writer = new Thread(this::drain, "ADIS16470 Capture");
+    m_writer.setDaemon(true);
+    m_writer.start();
+  }
+
+  /**
+   * Queue a batch of complete frames. Must only be called from the acquire thread.
+   *
+   * @param buffer Raw auto SPI words
+   * @param length Number of words to record (a multiple of the frame length)
+   * @param now Current FPGA time in microseconds
+   */
+  void record(int[] buffer, int length, long now) {
+    if (!m_running) {
+      return;
+    }
+    long head = m_head;
+    if (head + length - m_tail > RING_SIZE) {
+      m_dropped_frames += length / m_dataset_len;
+      return;
+    }
+    for (int i = 0; i < length; i++) {
+      m_ring[(int) ((head + i) & RING_MASK)] = buffer[i];
+    }
+    if (m_start_time < 0) {
+      m_start_time = now;
+    }
+    // Volatile store publishes the copied words to the writer thread
+    m_head = head + length;
+  }
+
+  /** @return Number of frames written to the file so far */
+  public long getRecordedFrames() {
+    return m_recorded_frames;
+  }
+
+  /** @return Number of frames dropped because the writer fell behind */
+  public long getDroppedFrames() {
+    return m_dropped_frames;
+  }
+
+  /** Stop recording, write out everything still queued and close the file. */
+  @Override
+  public void close() {
+    m_running = false;
+    try {
+      m_writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Writer thread: copy queued frames from the ring to the file until closed. */
+  private void drain() {
+    ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    final int frame_bytes = 4 + (m_dataset_len - 1);
+    boolean header_written = false;
+    try {
+      while (true) {
+        long head = m_head;
+        long tail = m_tail;
+        if (head == tail) {
+          if (!m_running) {
+            break;
+          }
+          try {
+            Thread.sleep(20);
+          } catch (InterruptedException e) {
+            break;
+          }
+          continue;
+        }
+
+        if (!header_written) {
+          out.putInt(MAGIC);
+          out.putInt(VERSION);
+          out.putInt(m_dataset_len);
+          out.putInt(m_yaw_axis.ordinal());
+          out.putDouble(m_scaled_sample_rate);
+          out.putLong(m_start_time);
+          header_written = true;
+        }
+
+        // The producer only ever queues whole frames
+        while (tail < head) {
+          if (out.remaining() < frame_bytes) {
+            writeFully(out);
+          }
+          out.putInt(m_ring[(int) (tail & RING_MASK)]);
+          for (int i = 1; i < m_dataset_len; i++) {
+            out.put((byte) m_ring[(int) ((tail + i) & RING_MASK)]);
+          }
+          tail += m_dataset_len;
+          m_recorded_frames++;
+        }
+        m_tail = tail;
+        writeFully(out);
+      }
+    } catch (IOException e) {
+      System.out.println("ADIS16470 capture stopped: " + e.getMessage());
+      m_running = false;
+    } finally {
+      try {
+        m_channel.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  /**
+   * @param out Buffer to write out and clear
+   * @throws IOException If the write fails
+   */
+  private void writeFully(ByteBuffer out) throws IOException {
+    out.flip();
+    while (out.hasRemaining()) {
+      m_channel.write(out);
+    }
+    out.clear();
+  }
+}
@@ -0,0 +1,261 @@
+package frc.robot.lib.drivers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Replays an ADIS16470 capture (see {@link ADIS16470Recorder}) through the same {@link
+ * ADIS16470Decoder} the robot uses, with the original DMA timestamps. This runs on a desktop with no
+ * IMU attached, so decode changes can be benchmarked and the no-motion drift checked against earlier
+ * captures.
+ *
+ * <p>Run with {@code ./gradlew replayImu -Pcapture=<file>}.
+ */
+public final class ADIS16470Replay {
+  // No-motion drift read off the README plots (about 12 minutes from a cold start)
+  private static final double BASELINE_DRIFT = -2.6; // deg/min, WPILib 2022 driver settings
+  private static final double FACTORY_DEFAULT_DRIFT = -0.53; // deg/min, factory defaults
+
+  private final int m_dataset_len;
+  private final ADIS16470.IMUAxis m_yaw_axis;
+  private final double m_scaled_sample_rate;
+  private final long m_start_time;
+  private final int[] m_words;
+  private final int m_frames;
+
+  private ADIS16470Replay(
+      int dataset_len,
+      ADIS16470.IMUAxis yaw_axis,
+      double scaled_sample_rate,
+      long start_time,
+      int[] words,
+      int frames) {
+    m_dataset_len = dataset_len;
+    m_yaw_axis = yaw_axis;
+    m_scaled_sample_rate = scaled_sample_rate;
+    m_start_time = start_time;
+    m_words = words;
+    m_frames = frames;
+  }
+
+  /**
+   * Load a capture file and unpack it back into raw DMA words.
+   *
+   * @param path The capture file
+   * @return The loaded capture
+   * @throws IOException If the file can't be read or isn't a capture
+   */
+  public static ADIS16470Replay load(Path path) throws IOException {
+    ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+    if (in.remaining() < 32 || in.getInt() != ADIS16470Recorder.MAGIC) {
+      throw new IOException("Not an ADIS16470 capture: " + path);
+    }
+    int version = in.getInt();
+    if (version != ADIS16470Recorder.VERSION) {
+      throw new IOException("Unsupported ADIS16470 capture version " + version);
+    }
+    int dataset_len = in.getInt();
+    if (dataset_len != ADIS16470Decoder.DATASET_LEN
+        && dataset_len != ADIS16470Decoder.BURST_DATASET_LEN) {
+      throw new IOException("Capture has an unknown frame length of " + dataset_len + " words");
+    }
+    ADIS16470.IMUAxis yaw_axis = ADIS16470.IMUAxis.values()[in.getInt()];
+    double scaled_sample_rate = in.getDouble();
+    long start_time = in.getLong();
+
+    int frame_bytes = 4 + (dataset_len - 1);
+    int frames = in.remaining() / frame_bytes;
+    int[] words = new int[frames * dataset_len];
+    for (int f = 0; f < frames; f++) {
+      int base = f * dataset_len;
+      words[base] = in.getInt();
+      for (int i = 1; i < dataset_len; i++) {
+        words[base + i] = in.get() & 0xFF;
+      }
+    }
+    return new ADIS16470Replay(
+        dataset_len, yaw_axis, scaled_sample_rate, start_time, words, frames);
+  }
+
+  /** @return Number of frames in the capture */
+  public int getFrameCount() {
+    return m_frames;
+  }
+
+  /** @return The yaw axis the capture was recorded with */
+  public ADIS16470.IMUAxis getYawAxis() {
+    return m_yaw_axis;
+  }
+
+  /**
+   * Create a decoder configured the way the capture was recorded.
+   *
+   * @param history The history for the decoder to record into
+   * @return A new decoder
+   */
+  public ADIS16470Decoder createDecoder(ADIS16470History history) {
+    ADIS16470Decoder decoder = new ADIS16470Decoder(history);
+    decoder.setScaledSampleRate(m_scaled_sample_rate);
+    decoder.setYawAxis(m_yaw_axis);
+    decoder.setReadMode(
+        m_dataset_len == ADIS16470Decoder.BURST_DATASET_LEN
+            ? ADIS16470.ReadMode.kBurst
+            : ADIS16470.ReadMode.kRegister);
+    return decoder;
+  }
+
+  /**
+   * Feed the whole capture through a decoder in batches, the same way the acquire thread does.
+   *
+   * @param decoder The decoder to run
+   * @param batch_frames Number of frames handed to the decoder at a time
+   * @return Time spent decoding in nanoseconds
+   */
+  public long run(ADIS16470Decoder decoder, int batch_frames) {
+    final int batch_len = Math.max(batch_frames, 1) * m_dataset_len;
+    int[] buffer = new int[batch_len];
+    long elapsed = 0;
+    decoder.restart();
+    for (int offset = 0; offset < m_words.length; offset += batch_len) {
+      int length = Math.min(batch_len, m_words.length - offset);
+      System.arraycopy(m_words, offset, buffer, 0, length);
+      long start = System.nanoTime();
+      decoder.decode(buffer, length, m_start_time);
+      elapsed += System.nanoTime() - start;
+    }
+    return elapsed;
+  }
+
+  /**
+   * Replay the capture and fit a line to the heading, for comparing the no-motion drift of a still
+   * capture with and without the zero-motion bias estimator.
+   *
+   * @param bias_estimation True to refine the yaw bias while still, false to only rely on the IMU's
+   *     own startup calibration
+   * @return Least-squares heading drift in degrees per minute
+   */
+  public double measureDrift(boolean bias_estimation) {
+    ADIS16470Decoder decoder = createDecoder(new ADIS16470History(16));
+    decoder.getBiasEstimator().setEnabled(bias_estimation);
+    decoder.restart();
+    int[] buffer = new int[m_dataset_len];
+    double first = Double.NaN;
+    double n = 0.0;
+    double sum_t = 0.0;
+    double sum_a = 0.0;
+    double sum_tt = 0.0;
+    double sum_ta = 0.0;
+    for (int offset = 0; offset + m_dataset_len <= m_words.length; offset += m_dataset_len) {
+      System.arraycopy(m_words, offset, buffer, 0, m_dataset_len);
+      if (decoder.decode(buffer, m_dataset_len, m_start_time) == 0) {
+        continue;
+      }
+      ADIS16470.Sample sample = decoder.getSample();
+      if (Double.isNaN(first)) {
+        first = sample.timestamp;
+      }
+      final double t = (sample.timestamp - first) / 60.0;
+      n += 1.0;
+      sum_t += t;
+      sum_a += sample.angle;
+      sum_tt += t * t;
+      sum_ta += t * sample.angle;
+    }
+    final double denominator = n * sum_tt - sum_t * sum_t;
+    return denominator > 0.0 ? (n * sum_ta - sum_t * sum_a) / denominator : Double.NaN;
+  }
+
+  /**
+   * Replay a capture and print the decode cost and the heading drift.
+   *
+   * @param args The capture file, and optionally the number of timed passes
+   * @throws IOException If the capture can't be loaded
+   */
+  public static void main(String... args) throws IOException {
+    if (args.length < 1 || args[0].isEmpty()) {
+      System.out.println("Usage: ADIS16470Replay <capture file> [passes]");
+      return;
+    }
+    ADIS16470Replay replay = load(Paths.get(args[0]));
+    int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+    if (replay.getFrameCount() < 2) {
+      System.out.println("Capture has no data.");
+      return;
+    }
+
+    // The first pass warms up the JIT; the rest are timed
+    ADIS16470History history = new ADIS16470History(replay.getFrameCount());
+    ADIS16470Decoder decoder = replay.createDecoder(history);
+    replay.run(decoder, 1);
+    double first = history.getOldestTimestamp();
+    ADIS16470.Sample last = decoder.getSample();
+    double minutes = (last.timestamp - first) / 60.0;
+
+    long best = Long.MAX_VALUE;
+    long total = 0;
+    for (int i = 0; i < passes; i++) {
+      long elapsed = replay.run(replay.createDecoder(new ADIS16470History(16)), 1);
+      best = Math.min(best, elapsed);
+      total += elapsed;
+    }
+
+    // Per-sample cost of the optional stages, measured against a decoder without either one
+    long bare = replay.bestOf(passes, false, false);
+    long inclinometer = replay.bestOf(passes, true, false);
+    long attitude = replay.bestOf(passes, false, true);
+
+    System.out.printf("Frames:          %d (%.1f s)%n", replay.getFrameCount(), minutes * 60.0);
+    System.out.printf("Yaw axis:        %s%n", replay.getYawAxis());
+    System.out.printf("Checksum errors: %d%n", decoder.getChecksumErrors());
+    System.out.printf("Final angle:     %.4f deg%n", last.angle);
+    System.out.printf(
+        "Final attitude:  roll %.3f, pitch %.3f, yaw %.3f deg%n",
+        last.attitude.roll,
+        last.attitude.pitch,
+        last.attitude.yaw);
+    System.out.printf("Drift:           %.4f deg/min%n", last.angle / minutes);
+    System.out.printf(
+        "Drift fit:       %.4f deg/min without bias estimation, %.4f deg/min with it%n",
+        replay.measureDrift(false),
+        replay.measureDrift(true));
+    System.out.printf(
+        "README baseline: %.2f deg/min (WPILib settings), %.2f deg/min (factory defaults)%n",
+        BASELINE_DRIFT,
+        FACTORY_DEFAULT_DRIFT);
+    System.out.printf(
+        "Bias estimate:   %.5f deg/s (%d still blocks)%n",
+        decoder.getBiasEstimator().getBias(),
+        decoder.getBiasEstimator().getStillBlocks());
+    System.out.printf(
+        "Decode (best):   %.1f ns/sample%n", (double) best / replay.getFrameCount());
+    System.out.printf(
+        "Decode (mean):   %.1f ns/sample%n",
+        (double) total / passes / replay.getFrameCount());
+    System.out.printf(
+        "Inclinometer:    %.1f ns/sample%n",
+        (double) (inclinometer - bare) / replay.getFrameCount());
+    System.out.printf(
+        "Attitude:        %.1f ns/sample%n", (double) (attitude - bare) / replay.getFrameCount());
+  }
+
+  /**
+   * @param passes Number of timed passes
+   * @param inclinometer True to run the complementary filter inclinometer (it is idle otherwise,
+   *     since nothing subscribes to it)
+   * @param attitude True to run the quaternion attitude estimator
+   * @return Fastest pass in nanoseconds
+   */
+  private long bestOf(int passes, boolean inclinometer, boolean attitude) {
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < passes; i++) {
+      ADIS16470Decoder decoder = createDecoder(new ADIS16470History(16));
+      decoder.setInclinometerEnabled(inclinometer);
+      decoder.setAttitudeEnabled(attitude);
+      best = Math.min(best, run(decoder, 1));
+    }
+    return best;
+  }
+}
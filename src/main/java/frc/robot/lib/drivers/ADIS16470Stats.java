@@ -0,0 +1,132 @@
+package frc.robot.lib.drivers;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Health metrics for the ADIS16470 acquire thread: how many frames each wakeup finds, how often the
+ * read buffer overruns, how much partial data is left behind and how long decoding takes. The
+ * acquire thread is the only writer; the dashboard reads the values at its own (low) rate.
+ *
+ * <p>Histograms use power-of-two buckets. Bucket 0 holds zero, bucket n holds values in [2^(n-1),
+ * 2^n), and the last bucket holds everything larger.
+ */
+public final class ADIS16470Stats {
+  private static final int FRAME_BUCKETS = 8; // 0, 1, 2-3, 4-7, ... 64+
+  private static final int DECODE_BUCKETS = 12; // microseconds: 0, 1, 2-3, ... 1024+
+
+  private volatile long m_wakeups = 0;
+  private volatile long m_frames = 0;
+  private volatile long m_timeouts = 0;
+  private volatile long m_truncated_reads = 0;
+  private volatile long m_partial_frames = 0;
+  private volatile long m_decode_nanos = 0;
+  private volatile long m_max_decode_nanos = 0;
+
+  private final AtomicLongArray m_frames_histogram = new AtomicLongArray(FRAME_BUCKETS);
+  private final AtomicLongArray m_decode_histogram = new AtomicLongArray(DECODE_BUCKETS);
+
+  /**
+   * Record one pass of the acquire loop. Must only be called from the acquire thread.
+   *
+   * @param frames Number of complete frames read
+   * @param timed_out True if the wait for a full batch hit its deadline
+   * @param truncated True if more data was waiting than the read buffer could hold
+   * @param remainder Number of words of an incomplete frame left in the DMA buffer
+   * @param decode_nanos Time spent decoding the frames in nanoseconds
+   */
+  void recordWakeup(
+      int frames, boolean timed_out, boolean truncated, int remainder, long decode_nanos) {
+    m_wakeups = m_wakeups + 1;
+    m_frames = m_frames + frames;
+    if (timed_out) {
+      m_timeouts = m_timeouts + 1;
+    }
+    if (truncated) {
+      m_truncated_reads = m_truncated_reads + 1;
+    }
+    if (remainder > 0) {
+      m_partial_frames = m_partial_frames + 1;
+    }
+    m_decode_nanos = m_decode_nanos + decode_nanos;
+    if (decode_nanos > m_max_decode_nanos) {
+      m_max_decode_nanos = decode_nanos;
+    }
+    increment(m_frames_histogram, bucket(frames, FRAME_BUCKETS));
+    increment(m_decode_histogram, bucket(decode_nanos / 1000, DECODE_BUCKETS));
+  }
+
+  /** @return Number of times the acquire thread woke up with the thread active */
+  public long getWakeups() {
+    return m_wakeups;
+  }
+
+  /** @return Number of complete frames read */
+  public long getFrames() {
+    return m_frames;
+  }
+
+  /** @return Number of wakeups where the batch deadline passed first */
+  public long getTimeouts() {
+    return m_timeouts;
+  }
+
+  /** @return Number of reads capped at the read buffer size (overruns) */
+  public long getTruncatedReads() {
+    return m_truncated_reads;
+  }
+
+  /** @return Number of wakeups that left an incomplete frame in the DMA buffer */
+  public long getPartialFrames() {
+    return m_partial_frames;
+  }
+
+  /** @return Average time spent decoding per wakeup in nanoseconds */
+  public double getAverageDecodeNanos() {
+    long wakeups = m_wakeups;
+    return wakeups > 0 ? (double) m_decode_nanos / wakeups : 0.0;
+  }
+
+  /** @return Longest time spent decoding one wakeup in nanoseconds */
+  public long getMaxDecodeNanos() {
+    return m_max_decode_nanos;
+  }
+
+  /** @return Average time spent decoding per frame in nanoseconds */
+  public double getDecodeNanosPerFrame() {
+    long frames = m_frames;
+    return frames > 0 ? (double) m_decode_nanos / frames : 0.0;
+  }
+
+  /** @return Count of wakeups by frames read (0, 1, 2-3, 4-7, ... 64+) */
+  public double[] getFramesPerWakeupHistogram() {
+    return toArray(m_frames_histogram);
+  }
+
+  /** @return Count of wakeups by decode time in microseconds (0, 1, 2-3, ... 1024+) */
+  public double[] getDecodeTimeHistogram() {
+    return toArray(m_decode_histogram);
+  }
+
+  /**
+   * @param value The value to bucket
+   * @param buckets The number of buckets
+   * @return The power-of-two bucket the value falls in
+   */
+  private static int bucket(long value, int buckets) {
+    int bucket = 64 - Long.numberOfLeadingZeros(Math.max(value, 0));
+    return Math.min(bucket, buckets - 1);
+  }
+
+  /** Single-writer increment; the release store is all the readers need. */
+  private static void increment(AtomicLongArray histogram, int bucket) {
+    histogram.lazySet(bucket, histogram.get(bucket) + 1);
+  }
+
+  private static double[] toArray(AtomicLongArray histogram) {
+    double[] counts = new double[histogram.length()];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = histogram.get(i);
+    }
+    return counts;
+  }
+}
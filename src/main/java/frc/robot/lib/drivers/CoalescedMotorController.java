@@ -0,0 +1,141 @@
+package frc.robot.lib.drivers;
+
+import edu.wpi.first.wpilibj.motorcontrol.MotorController;
+
+/**
+* This class wraps a motor controller and skips the set calls which would not change its output. A demand is only
+* passed on when it has moved by more than the epsilon from the last one passed on, or when it crosses into or out of
+* neutral. The number of API calls passed on and suppressed is counted.
+* <p>A suppressed call saves the JNI call and the work behind it on the robot loop, not CAN frames: the CTRE
+* controllers send their control frame on its own period whether or not the demand was set again, so the bus load is
+* the same either way.
+* <p>The wrapper keeps the demand it last wrote, so {@link #Invalidate} needs to be called whenever the controller may
+* have lost it (e.g. after a factory default reset).
+*
+* @see {@link edu.wpi.first.wpilibj.motorcontrol.MotorController}
+*/
+public class CoalescedMotorController implements MotorController {
+
+    private final MotorController mController;
+    private final double mEpsilon;
+
+    // State
+    private double mLastDemand;
+    private boolean mIsValid;
+    private long mCalls;
+    private long mSuppressedCalls;
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PUBLIC METHODS                                                 */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will force the next demand to be passed on, regardless of the last demand passed on.
+    */
+    public void Invalidate () {
+        mIsValid = false;
+    }
+
+    /**
+    * This method will return the number of demands passed on to the motor controller.
+    *
+    * @return long The number of API calls made
+    */
+    public long GetCalls () {
+        return mCalls;
+    }
+
+    /**
+    * This method will return the number of demands which were not passed on to the motor controller.
+    *
+    * @return long The number of API calls suppressed
+    */
+    public long GetSuppressedCalls () {
+        return mSuppressedCalls;
+    }
+
+    /**
+    * This method will return the wrapped motor controller.
+    *
+    * @return MotorController The wrapped motor controller
+    */
+    public MotorController GetController () {
+        return mController;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PRIVATE METHODS                                                */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will record a demand as passed on to the motor controller.
+    *
+    * @param demand double The demand which was passed on
+    */
+    private void Called ( double demand ) {
+        mLastDemand = demand;
+        mIsValid = true;
+        mCalls++;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                        CLASS CONSTRUCTOR AND OVERRIDES                                        */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    @Override
+    public void set ( double speed ) {
+        boolean isNeutralChange = ( speed == 0.0 ) != ( mLastDemand == 0.0 );
+        if ( mIsValid && !isNeutralChange && Math.abs( speed - mLastDemand ) <= mEpsilon ) {
+            mSuppressedCalls++;
+            return;
+        }
+        mController.set( speed );
+        Called( speed );
+    }
+
+    @Override
+    public double get () {
+        return mController.get();
+    }
+
+    @Override
+    public void setInverted ( boolean isInverted ) {
+        mController.setInverted( isInverted );
+    }
+
+    @Override
+    public boolean getInverted () {
+        return mController.getInverted();
+    }
+
+    @Override
+    public void disable () {
+        mController.disable();
+        Invalidate();
+    }
+
+    @Override
+    public void stopMotor () {
+        mController.stopMotor();
+        Called( 0.0 );
+    }
+
+    /**
+    * The constructor for the CoalescedMotorController class.
+    *
+    * @param controller MotorController The motor controller to wrap
+    * @param epsilon double The smallest change in demand which is passed on
+    */
+    public CoalescedMotorController ( MotorController controller, double epsilon ) {
+        mController = controller;
+        mEpsilon = epsilon;
+        mLastDemand = 0.0;
+        mIsValid = false;
+        mCalls = 0;
+        mSuppressedCalls = 0;
+    }
+
+}
@@ -0,0 +1,212 @@
+package frc.robot.lib.drivers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import frc.robot.Constants.HARDWARE;
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
+import edu.wpi.first.wpilibj.Filesystem;
+
+/**
+* This class is an immutable description of the persistent settings of a device, with a stable hash. The hash is
+* stored with the device once it has been configured, so on the next boot a device whose stored hash matches can skip
+* its factory reset and persistent settings. CTRE devices keep the hash in a custom parameter slot, which is cleared by
+* a factory reset. REV devices don't have one, so their hashes are kept in a file on the roboRIO; that can't tell when
+* a device has been swapped for one with the same firmware, so the file should be deleted when that happens.
+* <p>
+* The hash only covers what is added to the builder, so every persistent setting needs to be added, and a name or
+* version should be added when the configuration steps change without a value changing.
+*/
+public final class ConfigFingerprint {
+
+    /**
+    * This class builds a fingerprint. The settings are sorted by name, so the order they are added in doesn't matter.
+    */
+    public static class Builder {
+        private final TreeMap<String, String> mSettings = new TreeMap<>();
+
+        /**
+        * This method will add a setting.
+        *
+        * @param name String The name of the setting
+        * @param value Object The value of the setting
+        * @return Builder This builder, for chaining
+        */
+        public Builder Add ( String name, Object value ) {
+            mSettings.put( name, String.valueOf( value ) );
+            return this;
+        }
+
+        /**
+        * This method will add every setting of another fingerprint.
+        *
+        * @param fingerprint ConfigFingerprint The fingerprint to add
+        * @return Builder This builder, for chaining
+        */
+        public Builder Add ( ConfigFingerprint fingerprint ) {
+            mSettings.putAll( fingerprint.mSettings );
+            return this;
+        }
+
+        /**
+        * This method will build the fingerprint.
+        *
+        * @return ConfigFingerprint The fingerprint
+        */
+        public ConfigFingerprint Build () {
+            return new ConfigFingerprint( mSettings );
+        }
+    }
+
+    private static final String FILE_NAME = "device_fingerprints.properties";
+    private static final Object mFileLock = new Object();
+
+    private final TreeMap<String, String> mSettings;
+    private final String mCanonical;
+    private final int mHash;
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PUBLIC METHODS                                                 */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will return the hash of the settings. It is never 0, which is the factory default of the custom
+    * parameters.
+    *
+    * @return int The hash
+    */
+    public int GetHash () {
+        return mHash;
+    }
+
+    /**
+    * This method will check the hash stored in a CTRE device's custom parameter slot.
+    *
+    * @param controller BaseMotorController The motor controller
+    * @return boolean True if the device was configured with these settings
+    */
+    public boolean MatchesCTRE ( BaseMotorController controller ) {
+        final int stored = controller.configGetCustomParam( HARDWARE.CTRE_FINGERPRINT_PARAM,
+                                                            HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
+        return ( controller.getLastError() == ErrorCode.OK ) && ( stored == mHash );
+    }
+
+    /**
+    * This method will store the hash in a CTRE device's custom parameter slot.
+    *
+    * @param controller BaseMotorController The motor controller
+    * @return ErrorCode OK if the hash was stored
+    */
+    public ErrorCode StoreCTRE ( BaseMotorController controller ) {
+        return controller.configSetCustomParam( mHash, HARDWARE.CTRE_FINGERPRINT_PARAM,
+                                                HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
+    }
+
+    /**
+    * This method will check the hash stored in the roboRIO fingerprint file.
+    *
+    * @param key String The device's key in the file
+    * @return boolean True if the device was configured with these settings
+    */
+    public boolean MatchesFile ( String key ) {
+        synchronized ( mFileLock ) {
+            return Integer.toString( mHash ).equals( LoadFile().getProperty( key ) );
+        }
+    }
+
+    /**
+    * This method will store the hash in the roboRIO fingerprint file.
+    *
+    * @param key String The device's key in the file
+    * @return boolean True if the hash was stored
+    */
+    public boolean StoreFile ( String key ) {
+        synchronized ( mFileLock ) {
+            Properties fingerprints = LoadFile();
+            fingerprints.setProperty( key, Integer.toString( mHash ) );
+            try ( OutputStream out = Files.newOutputStream( GetFile() ) ) {
+                fingerprints.store( out, "Device configuration fingerprints" );
+                return true;
+            } catch ( IOException e ) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public boolean equals ( Object other ) {
+        return ( other instanceof ConfigFingerprint ) && mCanonical.equals( ( (ConfigFingerprint) other ).mCanonical );
+    }
+
+    @Override
+    public int hashCode () {
+        return mHash;
+    }
+
+    @Override
+    public String toString () {
+        return String.format( "%08x {%s}", mHash, mCanonical );
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PRIVATE METHODS                                                */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will return the path of the roboRIO fingerprint file.
+    *
+    * @return Path The fingerprint file
+    */
+    private static Path GetFile () {
+        return Filesystem.getOperatingDirectory().toPath().resolve( FILE_NAME );
+    }
+
+    /**
+    * This method will read the roboRIO fingerprint file. A missing or unreadable file has no fingerprints.
+    *
+    * @return Properties The stored fingerprints
+    */
+    private static Properties LoadFile () {
+        Properties fingerprints = new Properties();
+        try ( InputStream in = Files.newInputStream( GetFile() ) ) {
+            fingerprints.load( in );
+        } catch ( IOException e ) {
+            // Nothing has been stored yet
+        }
+        return fingerprints;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                        CLASS CONSTRUCTOR AND OVERRIDES                                        */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * The constructor for the ConfigFingerprint class.
+    *
+    * @param settings Map<String, String> The settings, sorted by name
+    */
+    private ConfigFingerprint ( Map<String, String> settings ) {
+        mSettings = new TreeMap<>( settings );
+        StringBuilder canonical = new StringBuilder();
+        for ( Map.Entry<String, String> setting : mSettings.entrySet() ) {
+            canonical.append( setting.getKey() ).append( '=' ).append( setting.getValue() ).append( ';' );
+        }
+        mCanonical = canonical.toString();
+        CRC32 crc = new CRC32();
+        crc.update( mCanonical.getBytes( StandardCharsets.UTF_8 ) );
+        final int hash = (int) crc.getValue();
+        mHash = ( hash == 0 ) ? 1 : hash;
+    }
+
+}
@@ -0,0 +1,364 @@
+package frc.robot.lib.drivers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import frc.robot.Constants.HARDWARE;
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
+import com.revrobotics.REVLibError;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+* This class configures independent motor controllers concurrently at boot. Every device's blocking configuration
+* calls run on their own thread, so the boot time is set by the slowest device instead of the sum of all of them. Each
+* device gets a bounded time to finish, and the failures and timeouts of all the devices are gathered into one report.
+* The total and per-device configuration times are printed, so slow devices can be found.
+* <p>
+* The steps which need their devices to be configured first (e.g. resetting the subsystem state) are added with
+* {@link #AfterConfiguration}, and run on the calling thread in the order they were added. A step belongs to the
+* devices added since the previous step, i.e. to the subsystem which added them.
+* <p>
+* A device which times out can't be stopped, and its configuration (which may start with a factory default) would
+* undo anything done to it in the meantime. So the step it belongs to is held back and reported, and runs from
+* {@link #Update} once the device has finished. {@link #Update} also tells the caller when a late device finished, so
+* anything else set on the devices afterwards (e.g. the status frame plan) can be applied again.
+* <p>
+* A device can be added with a {@link ConfigFingerprint} of its persistent settings. When the fingerprint stored with
+* the device matches, the device takes the warm path and only its non-persistent settings are applied. Otherwise it
+* takes the cold path, and the fingerprint is stored once the configuration succeeds. The report shows which path each
+* device took and the time of each path.
+*/
+public class DeviceConfigurator {
+
+    /**
+    * The configuration of a device which has a fingerprint.
+    */
+    public interface Task<E> {
+        /**
+        * This method will configure the device.
+        *
+        * @param isConfigured boolean True if the persistent settings are already on the device and can be skipped
+        * @return E The result of the configuration
+        */
+        E Configure ( boolean isConfigured );
+    }
+
+    /**
+    * The configuration of a single device.
+    */
+    private static class DeviceTask {
+        private final String mName;
+        private Supplier<String> mTask;
+        private CompletableFuture<String> mFuture;
+        private volatile double mSeconds = Double.NaN;
+        private volatile boolean mIsWarm = false;
+        private String mResult;
+
+        private DeviceTask ( String name, Supplier<String> task ) {
+            mName = name;
+            mTask = task;
+        }
+    }
+
+    /**
+    * A step which runs once the devices it belongs to have been configured.
+    */
+    private static class Step {
+        private final Runnable mStep;
+        private final List<DeviceTask> mDevices;
+
+        private Step ( Runnable step, List<DeviceTask> devices ) {
+            mStep = step;
+            mDevices = devices;
+        }
+    }
+
+    private final List<DeviceTask> mDevices = new ArrayList<>();
+    private final List<Step> mAfterConfiguration = new ArrayList<>();
+    private final List<DeviceTask> mLateDevices = new ArrayList<>();
+    private final List<Step> mLateSteps = new ArrayList<>();
+    private final List<String> mFailures = new ArrayList<>();
+    private int mStepDevices = 0;
+    private double mTotalSeconds = 0.0;
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PUBLIC METHODS                                                 */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will add the configuration of a CTRE device.
+    *
+    * @param name String The name of the device in the report
+    * @param task Supplier<ErrorCode> The configuration, returning OK when every setting was applied
+    */
+    public void AddCTRE ( String name, Supplier<ErrorCode> task ) {
+        mDevices.add( new DeviceTask( name, () -> {
+            ErrorCode error = task.get();
+            return ( error == ErrorCode.OK ) ? null : "EC " + error;
+        } ) );
+    }
+
+    /**
+    * This method will add the configuration of a REV device.
+    *
+    * @param name String The name of the device in the report
+    * @param task Supplier<REVLibError> The configuration, returning kOk when every setting was applied
+    */
+    public void AddREV ( String name, Supplier<REVLibError> task ) {
+        mDevices.add( new DeviceTask( name, () -> {
+            REVLibError error = task.get();
+            return ( error == REVLibError.kOk ) ? null : "EC " + error;
+        } ) );
+    }
+
+    /**
+    * This method will add the configuration of a CTRE device which is skipped when the fingerprint stored in the
+    * device's custom parameter slot matches.
+    *
+    * @param name String The name of the device in the report
+    * @param controller BaseMotorController The motor controller
+    * @param fingerprint ConfigFingerprint The fingerprint of the persistent settings
+    * @param task Task<ErrorCode> The configuration, returning OK when every setting was applied
+    */
+    public void AddCTRE ( String name, BaseMotorController controller, ConfigFingerprint fingerprint,
+                          Task<ErrorCode> task ) {
+        DeviceTask device = new DeviceTask( name, null );
+        mDevices.add( device );
+        device.mTask = () -> {
+            device.mIsWarm = !HARDWARE.FORCE_DEVICE_CONFIG && fingerprint.MatchesCTRE( controller );
+            ErrorCode error = task.Configure( device.mIsWarm );
+            if ( error == ErrorCode.OK && !device.mIsWarm ) {
+                error = fingerprint.StoreCTRE( controller );
+            }
+            return ( error == ErrorCode.OK ) ? null : "EC " + error;
+        };
+    }
+
+    /**
+    * This method will add the configuration of a REV device which is skipped when the fingerprint stored in the roboRIO
+    * fingerprint file matches. The cold path needs to burn the settings to flash, so they are still there next boot.
+    *
+    * @param name String The name of the device in the report and its key in the fingerprint file
+    * @param fingerprint ConfigFingerprint The fingerprint of the persistent settings
+    * @param task Task<REVLibError> The configuration, returning kOk when every setting was applied
+    */
+    public void AddREV ( String name, ConfigFingerprint fingerprint, Task<REVLibError> task ) {
+        DeviceTask device = new DeviceTask( name, null );
+        mDevices.add( device );
+        device.mTask = () -> {
+            device.mIsWarm = !HARDWARE.FORCE_DEVICE_CONFIG && fingerprint.MatchesFile( name );
+            final REVLibError error = task.Configure( device.mIsWarm );
+            if ( error != REVLibError.kOk ) {
+                return "EC " + error;
+            }
+            if ( !device.mIsWarm && !fingerprint.StoreFile( name ) ) {
+                return "could not store the fingerprint";
+            }
+            return null;
+        };
+    }
+
+    /**
+    * This method will add a step which runs once the devices added since the previous step have been configured.
+    *
+    * @param step Runnable The step to run
+    */
+    public void AfterConfiguration ( Runnable step ) {
+        List<DeviceTask> devices = new ArrayList<>( mDevices.subList( mStepDevices, mDevices.size() ) );
+        mAfterConfiguration.add( new Step( step, devices ) );
+        mStepDevices = mDevices.size();
+    }
+
+    /**
+    * This method will configure every device concurrently, wait for them (up to
+    * {@link HARDWARE#DEVICE_CONFIG_TIMEOUT_MS} each), run the after-configuration steps and report the results. A
+    * device which times out is left running in the background and reported as failed, and the step it belongs to is
+    * held back until {@link #Update} sees it finish.
+    *
+    * @return boolean True if every device was configured
+    */
+    public boolean Run () {
+        final long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool( Math.max( mDevices.size(), 1 ), runnable -> {
+            Thread thread = new Thread( runnable, "DeviceConfigurator" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        for ( DeviceTask device : mDevices ) {
+            device.mFuture = CompletableFuture.supplyAsync( () -> {
+                final long deviceStart = System.nanoTime();
+                try {
+                    return device.mTask.get();
+                } finally {
+                    device.mSeconds = ( System.nanoTime() - deviceStart ) * 1.0e-9;
+                }
+            }, executor );
+        }
+        executor.shutdown();
+
+        // Every device has the same deadline, counted from when they all started
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos( HARDWARE.DEVICE_CONFIG_TIMEOUT_MS );
+        mFailures.clear();
+        mLateDevices.clear();
+        mLateSteps.clear();
+        for ( DeviceTask device : mDevices ) {
+            try {
+                device.mResult = device.mFuture.get( Math.max( deadline - System.nanoTime(), 0 ), TimeUnit.NANOSECONDS );
+            } catch ( TimeoutException e ) {
+                device.mResult = "timed out after " + HARDWARE.DEVICE_CONFIG_TIMEOUT_MS + "ms";
+                mLateDevices.add( device );
+            } catch ( ExecutionException e ) {
+                device.mResult = e.getCause().toString();
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                device.mResult = "interrupted";
+            }
+            if ( device.mResult != null ) {
+                mFailures.add( device.mName + ": " + device.mResult );
+            }
+        }
+
+        for ( Step step : mAfterConfiguration ) {
+            if ( IsStepReady( step ) ) {
+                step.mStep.run();
+            } else {
+                mLateSteps.add( step );
+            }
+        }
+        mTotalSeconds = ( System.nanoTime() - start ) * 1.0e-9;
+        Report();
+        return mFailures.isEmpty();
+    }
+
+    /**
+    * This method will check on the devices which timed out. The result of each one which has finished since is
+    * reported, and the held back steps whose devices have all finished are run. It is meant to be called periodically
+    * on the main robot thread, and does nothing once every device has finished.
+    *
+    * @return boolean True if a device which timed out finished since the last call
+    */
+    public boolean Update () {
+        if ( mLateDevices.isEmpty() ) {
+            return false;
+        }
+        boolean isFinished = false;
+        for ( int i = mLateDevices.size() - 1; i >= 0; i-- ) {
+            DeviceTask device = mLateDevices.get( i );
+            if ( !device.mFuture.isDone() ) {
+                continue;
+            }
+            mLateDevices.remove( i );
+            mFailures.remove( device.mName + ": " + device.mResult );
+            try {
+                device.mResult = device.mFuture.join();
+            } catch ( RuntimeException e ) {
+                device.mResult = ( ( e.getCause() != null ) ? e.getCause() : e ).toString();
+            }
+            isFinished = true;
+            if ( device.mResult == null ) {
+                DriverStation.reportWarning( String.format( "%s was configured late, after %.0fms", device.mName,
+                                                            device.mSeconds * 1000.0 ), false );
+            } else {
+                mFailures.add( device.mName + ": " + device.mResult );
+                DriverStation.reportError( "Device configuration failed for " + device.mName + ": " + device.mResult,
+                                           false );
+            }
+        }
+        for ( int i = 0; i < mLateSteps.size(); ) {
+            Step step = mLateSteps.get( i );
+            if ( IsStepReady( step ) ) {
+                mLateSteps.remove( i );
+                step.mStep.run();
+            } else {
+                i++;
+            }
+        }
+        return isFinished;
+    }
+
+    /**
+    * This method will return the failures from the last run.
+    *
+    * @return List<String> The failed devices with their errors
+    */
+    public List<String> GetFailures () {
+        return mFailures;
+    }
+
+    /**
+    * This method will return the total configuration time of the last run.
+    *
+    * @return double The total time in seconds
+    */
+    public double GetTotalSeconds () {
+        return mTotalSeconds;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PRIVATE METHODS                                                */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will check whether every device a step belongs to has finished, whether or not it succeeded.
+    *
+    * @param step Step The step
+    * @return boolean True if the step can run
+    */
+    private boolean IsStepReady ( Step step ) {
+        for ( DeviceTask device : step.mDevices ) {
+            if ( mLateDevices.contains( device ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+    * This method will print the configuration times and report the failures to the driver station.
+    */
+    private void Report () {
+        StringBuilder report = new StringBuilder();
+        int warm = 0;
+        double warmSeconds = 0.0;
+        double coldSeconds = 0.0;
+        for ( DeviceTask device : mDevices ) {
+            if ( Double.isNaN( device.mSeconds ) ) {
+                report.append( " " + device.mName + "=unfinished" );
+                continue;
+            }
+            report.append( String.format( " %s=%.0fms%s", device.mName, device.mSeconds * 1000.0,
+                                          device.mIsWarm ? "(warm)" : "" ) );
+            if ( device.mIsWarm ) {
+                warm++;
+                warmSeconds = Math.max( warmSeconds, device.mSeconds );
+            } else {
+                coldSeconds = Math.max( coldSeconds, device.mSeconds );
+            }
+        }
+        System.out.println( String.format( "Configured %d devices in %.0fms (%d cold, slowest %.0fms; %d warm, slowest "
+                                           + "%.0fms):", mDevices.size(), mTotalSeconds * 1000.0, mDevices.size() - warm,
+                                           coldSeconds * 1000.0, warm, warmSeconds * 1000.0 ) + report );
+        if ( !mFailures.isEmpty() ) {
+            DriverStation.reportError( "Device configuration failed for " + mFailures.size() + " device(s): "
+                                       + String.join( ", ", mFailures ), false );
+        }
+        if ( !mLateSteps.isEmpty() ) {
+            List<String> late = new ArrayList<>();
+            for ( DeviceTask device : mLateDevices ) {
+                late.add( device.mName );
+            }
+            DriverStation.reportWarning( "Held back " + mLateSteps.size() + " after-configuration step(s) until "
+                                         + String.join( ", ", late ) + " finish", false );
+        }
+    }
+
+}
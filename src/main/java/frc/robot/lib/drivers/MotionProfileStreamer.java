@@ -0,0 +1,293 @@
+package frc.robot.lib.drivers;
+
+import frc.robot.Constants.HARDWARE;
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.motion.MotionProfileStatus;
+import com.ctre.phoenix.motion.SetValueMotionProfile;
+import com.ctre.phoenix.motion.TrajectoryPoint;
+import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
+
+/**
+* This class streams time-stamped profiles into the buffered motion profile executor of CTRE motor controllers, so the
+* controllers follow the profiles at their own rate instead of the rate of the scheduler loop. A background
+* {@link Notifier} runs at twice the point rate: it funnels points from the API buffer into the controllers and tops the
+* API buffer up in batches of {@link HARDWARE#MOTION_PROFILE_BATCH_POINTS}, so a long profile doesn't need to be
+* pushed all at once. The controllers are enabled together once each has {@link HARDWARE#MOTION_PROFILE_MIN_POINTS}
+* points buffered (or its whole profile), and they hold the last point when their profiles end.
+* <p>
+* An underrun (a controller running out of points before the end of its profile) is counted and cleared, and is
+* reported once the profile ends. The controllers need a position sensor and a gain slot with the profile gains.
+* <p>
+* The profile positions are relative to where each controller's sensor is when the profile starts, so a profile can be
+* built ahead of time and started more than once.
+*
+* @see {@link https://docs.ctre-phoenix.com/en/stable/ch16_ClosedLoop.html#motion-profiling}
+*/
+public class MotionProfileStreamer {
+
+    /**
+    * The state of the streamer.
+    */
+    public enum State {
+        kIdle,                  // Nothing has been started, or the profile was stopped
+        kBuffering,             // Filling the controller buffers before enabling
+        kRunning,               // The controllers are following the profile
+        kHolding,               // The controllers are holding the last point
+    }
+
+    /**
+    * The profile of a single controller, with one point per period. It isn't changed by streaming, so it can be reused.
+    */
+    public static final class Profile {
+        /** Target positions in sensor units, relative to the position when the profile starts */
+        public final double[] positions;
+        /** Target velocities in sensor units per 100ms */
+        public final double[] velocities;
+        /** Arbitrary feedforwards as a fraction of the output */
+        public final double[] feedforwards;
+
+        /**
+        * The constructor for the Profile class.
+        *
+        * @param points int The number of points in the profile
+        */
+        public Profile ( int points ) {
+            positions = new double[ points ];
+            velocities = new double[ points ];
+            feedforwards = new double[ points ];
+        }
+    }
+
+    /**
+    * The streaming state of a single controller.
+    */
+    private static class Channel {
+        private final BaseMotorController mController;
+        private final MotionProfileStatus mStatus = new MotionProfileStatus();
+        private Profile mProfile;
+        private double mOffset;
+        private int mNext;
+
+        private Channel ( BaseMotorController controller ) {
+            mController = controller;
+        }
+    }
+
+    private final String mName;
+    private final Channel[] mChannels;
+    private final Notifier mNotifier;
+    private final TrajectoryPoint mPoint = new TrajectoryPoint();
+
+    // State (shared with the notifier)
+    private State mState = State.kIdle;
+    private int mPeriodMs;
+    private int mSlot;
+    private long mUnderruns;
+    private long mStreamedPoints;
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PUBLIC METHODS                                                 */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will start streaming a profile to each controller. Any profile already running is cleared first. The
+    * profiles are given in the order of the controllers.
+    *
+    * @param periodMs int The time between the points of the profiles in milliseconds
+    * @param slot int The gain slot the controllers use for the profiles
+    * @param profiles Profile... The profile of each controller
+    */
+    public synchronized void Start ( int periodMs, int slot, Profile... profiles ) {
+        if ( profiles.length != mChannels.length ) {
+            throw new IllegalArgumentException( mName + " needs " + mChannels.length + " profiles" );
+        }
+        Clear();
+        mPeriodMs = periodMs;
+        mSlot = slot;
+        mUnderruns = 0;
+        mStreamedPoints = 0;
+        for ( int i = 0; i < mChannels.length; i++ ) {
+            Channel channel = mChannels[ i ];
+            channel.mProfile = profiles[ i ];
+            channel.mOffset = channel.mController.getSelectedSensorPosition();
+            channel.mNext = 0;
+            channel.mController.changeMotionControlFramePeriod( Math.max( periodMs / 2, 1 ) );
+        }
+        mState = State.kBuffering;
+        mNotifier.startPeriodic( periodMs / 2000.0 );
+    }
+
+    /**
+    * This method will stop streaming and disable the profile executors. The controllers are left in neutral until they
+    * are given another output.
+    */
+    public synchronized void Stop () {
+        mNotifier.stop();
+        Clear();
+        mState = State.kIdle;
+    }
+
+    /**
+    * This method will return the state of the streamer.
+    *
+    * @return State The state
+    */
+    public synchronized State GetState () {
+        return mState;
+    }
+
+    /**
+    * This method will return whether every controller has reached the end of its profile.
+    *
+    * @return boolean True once the controllers are holding the last point
+    */
+    public synchronized boolean IsFinished () {
+        return mState == State.kHolding;
+    }
+
+    /**
+    * This method will return the number of underruns of the current profile.
+    *
+    * @return long The number of underruns seen across the controllers
+    */
+    public synchronized long GetUnderruns () {
+        return mUnderruns;
+    }
+
+    /**
+    * This method will return the number of points which have been pushed for the current profile.
+    *
+    * @return long The number of points pushed across the controllers
+    */
+    public synchronized long GetStreamedPoints () {
+        return mStreamedPoints;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PRIVATE METHODS                                                */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will run one streaming step. It is only called by the notifier.
+    */
+    private synchronized void Update () {
+        if ( mState == State.kIdle ) {
+            return;
+        }
+        boolean isBuffered = true;
+        boolean isLast = true;
+        for ( Channel channel : mChannels ) {
+            channel.mController.processMotionProfileBuffer();
+            if ( channel.mController.getMotionProfileStatus( channel.mStatus ) != ErrorCode.OK ) {
+                isBuffered = false;
+                isLast = false;
+                continue;
+            }
+            Refill( channel );
+            if ( channel.mStatus.hasUnderrun ) {
+                mUnderruns++;
+                channel.mController.clearMotionProfileHasUnderrun( 0 );
+            }
+            final boolean isFullyPushed = channel.mNext >= channel.mProfile.positions.length;
+            isBuffered &= ( channel.mStatus.btmBufferCnt >= HARDWARE.MOTION_PROFILE_MIN_POINTS ) || isFullyPushed;
+            isLast &= channel.mStatus.activePointValid && channel.mStatus.isLast;
+        }
+
+        switch ( mState ) {
+            case kBuffering:
+                if ( isBuffered ) {
+                    SetOutput( SetValueMotionProfile.Enable );
+                    mState = State.kRunning;
+                }
+                break;
+            case kRunning:
+                if ( isLast ) {
+                    SetOutput( SetValueMotionProfile.Hold );
+                    mState = State.kHolding;
+                    mNotifier.stop();
+                    if ( mUnderruns > 0 ) {
+                        DriverStation.reportWarning( mName + " profile had " + mUnderruns + " underrun(s)", false );
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+    * This method will push the next batch of points of a controller's profile into the API buffer, as far as there is
+    * room.
+    *
+    * @param channel Channel The controller to refill
+    */
+    private void Refill ( Channel channel ) {
+        final Profile profile = channel.mProfile;
+        final int end = Math.min( profile.positions.length,
+                                  channel.mNext + Math.min( HARDWARE.MOTION_PROFILE_BATCH_POINTS,
+                                                            channel.mStatus.topBufferRem ) );
+        for ( ; channel.mNext < end; channel.mNext++ ) {
+            final int i = channel.mNext;
+            mPoint.position = channel.mOffset + profile.positions[ i ];
+            mPoint.velocity = profile.velocities[ i ];
+            mPoint.arbFeedFwd = profile.feedforwards[ i ];
+            mPoint.profileSlotSelect0 = mSlot;
+            mPoint.timeDur = mPeriodMs;
+            mPoint.zeroPos = false;
+            mPoint.isLastPoint = ( i == profile.positions.length - 1 );
+            if ( channel.mController.pushMotionProfileTrajectory( mPoint ) != ErrorCode.OK ) {
+                break;
+            }
+            mStreamedPoints++;
+        }
+    }
+
+    /**
+    * This method will set the motion profile output of every controller.
+    *
+    * @param value SetValueMotionProfile The output of the profile executors
+    */
+    private void SetOutput ( SetValueMotionProfile value ) {
+        for ( Channel channel : mChannels ) {
+            channel.mController.set( ControlMode.MotionProfile, value.value );
+        }
+    }
+
+    /**
+    * This method will disable the profile executors and clear their buffers.
+    */
+    private void Clear () {
+        for ( Channel channel : mChannels ) {
+            channel.mController.set( ControlMode.MotionProfile, SetValueMotionProfile.Disable.value );
+            channel.mController.clearMotionProfileTrajectories();
+            channel.mController.clearMotionProfileHasUnderrun( 0 );
+        }
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                        CLASS CONSTRUCTOR AND OVERRIDES                                        */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * The constructor for the MotionProfileStreamer class.
+    *
+    * @param name String The name of the streamer, which is also the name of its thread
+    * @param controllers BaseMotorController... The controllers which follow the profiles
+    */
+    public MotionProfileStreamer ( String name, BaseMotorController... controllers ) {
+        mName = name;
+        mChannels = new Channel[ controllers.length ];
+        for ( int i = 0; i < controllers.length; i++ ) {
+            mChannels[ i ] = new Channel( controllers[ i ] );
+        }
+        mNotifier = new Notifier( this::Update );
+        mNotifier.setName( name );
+    }
+
+}
@@ -23,8 +23,10 @@ public class SparkMax {
     * </ul>
     * <p>
     * @param sparkMax CANSparkMax The motor controller to initialize
+    * @return REVLibError kOk if every setting was applied, otherwise the last error
     */        
-    public static void SetDefaultConfig ( CANSparkMax sparkMax ) {
+    public static REVLibError SetDefaultConfig ( CANSparkMax sparkMax ) {
+        REVLibError error = REVLibError.kOk;
         REVLibError canError;
         long faults;
 
@@ -34,22 +36,26 @@ public class SparkMax {
             canError = sparkMax.clearFaults();
             if ( canError != REVLibError.kOk ) {
                 //mLogger.error( "Could not clear sticky faults due to EC: [{}]", canError.toString() );
+                error = canError;
             }  
         }
         canError = sparkMax.restoreFactoryDefaults();
         if ( canError != REVLibError.kOk ) {
             //mLogger.error( "Could not factory reset SparkMax [{}] due to EC: [{}]", sparkMax.getDeviceId(), canError.toString() );
+            error = canError;
         }  
         canError = sparkMax.enableVoltageCompensation( 12.0 );
         if ( canError != REVLibError.kOk ) {
             //mLogger.error( "Could not set SparkMax [{}] voltage compensation due to EC: [{}]", sparkMax.getDeviceId(), canError.toString() );
+            error = canError;
         }  
         canError = sparkMax.setIdleMode( IdleMode.kBrake );
         if ( canError != REVLibError.kOk ) {
             //mLogger.error( "Could not set SparkMax [{}] idle mode due to EC: [{}]", sparkMax.getDeviceId(), canError.toString() );
+            error = canError;
         }        
         sparkMax.set( 0.0 );        
-
+        return error;
     }
 
     /**
@@ -0,0 +1,303 @@
+package frc.robot.lib.drivers;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import frc.robot.Constants.HARDWARE;
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.motorcontrol.StatusFrame;
+import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
+import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
+import com.ctre.phoenix.motorcontrol.can.BaseTalon;
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
+import com.revrobotics.REVLibError;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+* This class sets the status frame periods of every motor controller from one declarative plan. Each subsystem adds
+* its devices and says which signals it consumes from each of them and how often. When the plan is applied, every
+* status frame is set to the fastest period any of its signals needs, and the frames nobody consumes are slowed down
+* to {@link HARDWARE#STATUS_FRAME_SLOW_MS}. The plan is also used to estimate the CAN bus load, so the cost of adding
+* a mechanism or a signal can be seen before it is on the robot.
+* <p>
+* Status frame periods are not stored on the devices, so the plan needs to be applied on every boot, after the devices
+* have been configured.
+*
+* @see {@link https://docs.ctre-phoenix.com/en/stable/ch18_CommonAPI.html#setting-status-frame-periods}
+* @see {@link https://docs.revrobotics.com/sparkmax/operating-modes/control-interfaces#periodic-status-frames}
+*/
+public class StatusFramePlanner {
+
+    /**
+    * The signals a subsystem can consume from a motor controller.
+    */
+    public enum Signal {
+        kOutput,                // Applied output and faults (also read by followers)
+        kPosition,              // Selected sensor position
+        kVelocity,              // Selected sensor velocity
+        kCurrent,               // Motor current
+        kTemperatureVoltage,    // Controller temperature and bus voltage
+        kClosedLoop,            // Closed-loop error and target
+        kMotionProfile,         // Motion profile buffer status (CTRE only)
+    }
+
+    /**
+    * The status frames of a vendor, with the signals each one carries and its default period. The frames with no
+    * signals carry data nothing on the robot reads (unused sensor inputs, auxiliary PID and targets), so they are
+    * always slowed down.
+    */
+    private enum Frame {
+        kCTREStatus1( StatusFrame.Status_1_General, 10, EnumSet.of( Signal.kOutput ) ),
+        kCTREStatus2( StatusFrame.Status_2_Feedback0, 20,
+                      EnumSet.of( Signal.kPosition, Signal.kVelocity, Signal.kCurrent ) ),
+        kCTREStatus3( StatusFrameEnhanced.Status_3_Quadrature, 160, EnumSet.noneOf( Signal.class ) ),
+        kCTREStatus4( StatusFrame.Status_4_AinTempVbat, 160, EnumSet.of( Signal.kTemperatureVoltage ) ),
+        kCTREStatus8( StatusFrameEnhanced.Status_8_PulseWidth, 160, EnumSet.noneOf( Signal.class ) ),
+        kCTREStatus9( StatusFrame.Status_9_MotProfBuffer, 50, EnumSet.of( Signal.kMotionProfile ) ),
+        kCTREStatus10( StatusFrame.Status_10_Targets, 160, EnumSet.noneOf( Signal.class ) ),
+        kCTREStatus11( StatusFrameEnhanced.Status_11_UartGadgeteer, 250, EnumSet.noneOf( Signal.class ) ),
+        kCTREStatus12( StatusFrame.Status_12_Feedback1, 160, EnumSet.noneOf( Signal.class ) ),
+        kCTREStatus13( StatusFrame.Status_13_Base_PIDF0, 160, EnumSet.of( Signal.kClosedLoop ) ),
+        kCTREStatus14( StatusFrame.Status_14_Turn_PIDF1, 160, EnumSet.noneOf( Signal.class ) ),
+        kREVStatus0( PeriodicFrame.kStatus0, 10, EnumSet.of( Signal.kOutput ) ),
+        kREVStatus1( PeriodicFrame.kStatus1, 20,
+                     EnumSet.of( Signal.kVelocity, Signal.kCurrent, Signal.kTemperatureVoltage ) ),
+        kREVStatus2( PeriodicFrame.kStatus2, 20, EnumSet.of( Signal.kPosition ) );
+
+        // The frames of each type of device (the Victor SPX has no sensor inputs of its own)
+        private static final EnumSet<Frame> TALON = EnumSet.range( kCTREStatus1, kCTREStatus14 );
+        private static final EnumSet<Frame> VICTOR = EnumSet.of( kCTREStatus1, kCTREStatus2, kCTREStatus4,
+                                                                 kCTREStatus9, kCTREStatus10, kCTREStatus12,
+                                                                 kCTREStatus13, kCTREStatus14 );
+        private static final EnumSet<Frame> REV = EnumSet.range( kREVStatus0, kREVStatus2 );
+
+        private final StatusFrame mCTREFrame;
+        private final StatusFrameEnhanced mTalonFrame;
+        private final PeriodicFrame mREVFrame;
+        private final int mDefaultMs;
+        private final EnumSet<Signal> mSignals;
+
+        private Frame ( StatusFrame ctreFrame, int defaultMs, EnumSet<Signal> signals ) {
+            this( ctreFrame, null, null, defaultMs, signals );
+        }
+
+        private Frame ( StatusFrameEnhanced talonFrame, int defaultMs, EnumSet<Signal> signals ) {
+            this( null, talonFrame, null, defaultMs, signals );
+        }
+
+        private Frame ( PeriodicFrame revFrame, int defaultMs, EnumSet<Signal> signals ) {
+            this( null, null, revFrame, defaultMs, signals );
+        }
+
+        private Frame ( StatusFrame ctreFrame, StatusFrameEnhanced talonFrame, PeriodicFrame revFrame, int defaultMs,
+                        EnumSet<Signal> signals ) {
+            mCTREFrame = ctreFrame;
+            mTalonFrame = talonFrame;
+            mREVFrame = revFrame;
+            mDefaultMs = defaultMs;
+            mSignals = signals;
+        }
+    }
+
+    /**
+    * The plan for a single motor controller, which is built by chaining the signals it consumes.
+    */
+    public static class DevicePlan {
+        private final String mName;
+        private final BaseMotorController mCTREController;
+        private final CANSparkMax mSparkMax;
+        private final EnumSet<Frame> mFrames;
+        private final EnumMap<Signal, Integer> mConsumed = new EnumMap<>( Signal.class );
+        private final EnumMap<Frame, Integer> mPeriods = new EnumMap<>( Frame.class );
+        private int mControlMs;
+
+        private DevicePlan ( String name, BaseMotorController ctreController, CANSparkMax sparkMax, int controlMs ) {
+            mName = name;
+            mCTREController = ctreController;
+            mSparkMax = sparkMax;
+            if ( ctreController != null ) {
+                mFrames = ( ctreController instanceof BaseTalon ) ? Frame.TALON : Frame.VICTOR;
+            } else {
+                mFrames = Frame.REV;
+            }
+            mControlMs = controlMs;
+        }
+
+        /**
+        * This method will add a signal the device needs to provide at least as often as the given period. When more
+        * than one subsystem or command consumes the same signal, the fastest period wins.
+        *
+        * @param signal Signal The signal which is consumed
+        * @param periodMs int The longest period in milliseconds the signal can be updated at
+        * @return DevicePlan This plan, for chaining
+        */
+        public DevicePlan Consume ( Signal signal, int periodMs ) {
+            mConsumed.merge( signal, periodMs, Math::min );
+            return this;
+        }
+
+        /**
+        * This method will mark the device as the master of on-controller followers, which watch its applied output.
+        *
+        * @return DevicePlan This plan, for chaining
+        */
+        public DevicePlan Lead () {
+            return Consume( Signal.kOutput, Frame.kCTREStatus1.mDefaultMs );
+        }
+
+        /**
+        * This method will set how often the device is sent a control frame, for the bus load estimate.
+        *
+        * @param periodMs int The control frame period in milliseconds
+        * @return DevicePlan This plan, for chaining
+        */
+        public DevicePlan Control ( int periodMs ) {
+            mControlMs = periodMs;
+            return this;
+        }
+
+        /**
+        * This method will return the planned period of each of the device's status frames.
+        *
+        * @return Map<Frame, Integer> The status frame periods in milliseconds
+        */
+        private Map<Frame, Integer> Plan () {
+            mPeriods.clear();
+            for ( Frame frame : mFrames ) {
+                int period = HARDWARE.STATUS_FRAME_SLOW_MS;
+                for ( Signal signal : frame.mSignals ) {
+                    if ( mConsumed.containsKey( signal ) ) {
+                        period = Math.min( period, mConsumed.get( signal ) );
+                    }
+                }
+                mPeriods.put( frame, Math.max( period, 1 ) );
+            }
+            return mPeriods;
+        }
+
+        /**
+        * This method will return the estimated number of CAN frames per second to and from the device.
+        *
+        * @return double The frames per second
+        */
+        private double GetFramesPerSecond () {
+            double framesPerSecond = ( mControlMs > 0 ) ? 1000.0 / mControlMs : 0.0;
+            for ( int period : Plan().values() ) {
+                framesPerSecond += 1000.0 / period;
+            }
+            return framesPerSecond;
+        }
+    }
+
+    // Bus load model: 1 Mbps bus, extended frames with 8 data bytes and average bit stuffing
+    private static final double BITS_PER_SECOND = 1.0e6;
+    private static final double BITS_PER_FRAME = 130.0;
+
+    private final List<DevicePlan> mDevices = new ArrayList<>();
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PUBLIC METHODS                                                 */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will add a CTRE motor controller to the plan. It starts out consuming nothing, so every frame will be
+    * slowed down unless a signal is added.
+    *
+    * @param name String The name of the device in the report
+    * @param controller BaseMotorController The motor controller
+    * @return DevicePlan The plan for the device
+    */
+    public DevicePlan Add ( String name, BaseMotorController controller ) {
+        DevicePlan plan = new DevicePlan( name, controller, null, HARDWARE.CTRE_CONTROL_FRAME_MS );
+        mDevices.add( plan );
+        return plan;
+    }
+
+    /**
+    * This method will add a REV motor controller to the plan. It starts out consuming nothing, so every frame will be
+    * slowed down unless a signal is added.
+    *
+    * @param name String The name of the device in the report
+    * @param sparkMax CANSparkMax The motor controller
+    * @return DevicePlan The plan for the device
+    */
+    public DevicePlan Add ( String name, CANSparkMax sparkMax ) {
+        DevicePlan plan = new DevicePlan( name, null, sparkMax, HARDWARE.REV_CONTROL_FRAME_MS );
+        mDevices.add( plan );
+        return plan;
+    }
+
+    /**
+    * This method will set the status frame periods of every device in the plan, and print the plan with the estimated
+    * bus load before and after.
+    *
+    * @return int The number of status frame periods which could not be set
+    */
+    public int Apply () {
+        int failures = 0;
+        for ( DevicePlan device : mDevices ) {
+            StringBuilder line = new StringBuilder( device.mName + ":" );
+            for ( Map.Entry<Frame, Integer> entry : device.Plan().entrySet() ) {
+                Frame frame = entry.getKey();
+                int period = entry.getValue();
+                boolean isOk;
+                if ( frame.mTalonFrame != null ) {
+                    ErrorCode error = ( (BaseTalon) device.mCTREController ).setStatusFramePeriod(
+                        frame.mTalonFrame, period, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
+                    isOk = ( error == ErrorCode.OK );
+                } else if ( frame.mCTREFrame != null ) {
+                    ErrorCode error = device.mCTREController.setStatusFramePeriod( frame.mCTREFrame, period,
+                                                                                   HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
+                    isOk = ( error == ErrorCode.OK );
+                } else {
+                    REVLibError error = device.mSparkMax.setPeriodicFramePeriod( frame.mREVFrame, period );
+                    isOk = ( error == REVLibError.kOk );
+                }
+                if ( !isOk ) {
+                    failures++;
+                    DriverStation.reportWarning( "Could not set " + device.mName + " " + frame + " period", false );
+                }
+                line.append( String.format( " %s=%dms", frame, period ) );
+            }
+            System.out.println( line );
+        }
+        System.out.println( String.format( "Status frame plan: estimated CAN load %.1f%% (%.1f%% with default periods)",
+                                           GetEstimatedBusLoad(), GetDefaultBusLoad() ) );
+        return failures;
+    }
+
+    /**
+    * This method will return the estimated CAN bus load of the planned devices.
+    *
+    * @return double The estimated bus load in percent
+    */
+    public double GetEstimatedBusLoad () {
+        double framesPerSecond = 0.0;
+        for ( DevicePlan device : mDevices ) {
+            framesPerSecond += device.GetFramesPerSecond();
+        }
+        return framesPerSecond * BITS_PER_FRAME / BITS_PER_SECOND * 100.0;
+    }
+
+    /**
+    * This method will return the estimated CAN bus load of the planned devices if every status frame were left at its
+    * default period.
+    *
+    * @return double The estimated bus load in percent
+    */
+    public double GetDefaultBusLoad () {
+        double framesPerSecond = 0.0;
+        for ( DevicePlan device : mDevices ) {
+            framesPerSecond += ( device.mControlMs > 0 ) ? 1000.0 / device.mControlMs : 0.0;
+            for ( Frame frame : device.mFrames ) {
+                framesPerSecond += 1000.0 / frame.mDefaultMs;
+            }
+        }
+        return framesPerSecond * BITS_PER_FRAME / BITS_PER_SECOND * 100.0;
+    }
+
+}
@@ -8,16 +8,37 @@ import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
 import com.ctre.phoenix.motorcontrol.can.WPI_VictorSPX;
 import com.ctre.phoenix.motorcontrol.FeedbackDevice;
 import com.ctre.phoenix.motorcontrol.ControlMode;
-import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
 
 /**
 * This class provides methods to configure Talon SRX motor controllers as both masters and followers. Also, any sticky
-* errors present will be logged and cleared.
+* errors present will be logged and cleared. The status frame periods are set by the {@link StatusFramePlanner}.
+* The fingerprints describe the persistent settings of each configuration, so a configured device can be skipped at
+* boot (see {@link DeviceConfigurator}); they need to be kept in step with the configuration methods.
 *
 * @see {@link https://phoenix-documentation.readthedocs.io/en/latest/ch13_MC.html}
 */
 public class TalonSRX {
 
+    private static final double VOLTAGE_COMP_SATURATION = 12.0;
+    private static final FeedbackDevice MAG_ENCODER_SENSOR = FeedbackDevice.CTRE_MagEncoder_Relative;
+    private static final SensorVelocityMeasPeriod VELOCITY_MEAS_PERIOD = SensorVelocityMeasPeriod.Period_50Ms;
+    private static final int VELOCITY_MEAS_WINDOW = 1;
+    private static final double CLOSED_LOOP_RAMP = 0.0;
+
+    /** The persistent settings of {@link #CommonConfig} */
+    public static final ConfigFingerprint COMMON_FINGERPRINT = new ConfigFingerprint.Builder()
+        .Add( "TalonSRX.FactoryDefault", true )
+        .Add( "TalonSRX.VoltageCompSaturation", VOLTAGE_COMP_SATURATION )
+        .Build();
+
+    /** The persistent settings of {@link #CTREMagEncoderConfig} */
+    public static final ConfigFingerprint MAG_ENCODER_FINGERPRINT = new ConfigFingerprint.Builder()
+        .Add( "TalonSRX.Sensor", MAG_ENCODER_SENSOR )
+        .Add( "TalonSRX.VelocityMeasPeriod", VELOCITY_MEAS_PERIOD )
+        .Add( "TalonSRX.VelocityMeasWindow", VELOCITY_MEAS_WINDOW )
+        .Add( "TalonSRX.ClosedLoopRamp", CLOSED_LOOP_RAMP )
+        .Build();
+
     /**
     * This method is intended to initialize the motor controller to default configuration common to all modes or
     * operation.
@@ -28,8 +49,10 @@ public class TalonSRX {
     * </ul>
     *
     * @param talon WPI_TalonSRX The motor controller to initialize
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
     */
-    public static void CommonConfig ( WPI_TalonSRX talon ) {
+    public static ErrorCode CommonConfig ( WPI_TalonSRX talon ) {
+        ErrorCode error = ErrorCode.OK;
         StickyFaults faults = new StickyFaults();
 
         talon.getStickyFaults( faults );
@@ -38,18 +61,33 @@ public class TalonSRX {
             final ErrorCode clearStickyFaults = talon.clearStickyFaults( HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
             if ( clearStickyFaults != ErrorCode.OK ) {
                 //mLogger.error( "Could not clear sticky faults due to EC: [{}]", clearStickyFaults );
+                error = clearStickyFaults;
             }  
         }
         final ErrorCode configFactoryDefault = talon.configFactoryDefault();
         if ( configFactoryDefault != ErrorCode.OK ) {
             //mLogger.error( "Could not factory reset TalonSRX [{}] due to EC: [{}]", talon.getDeviceID(), configFactoryDefault );
+            error = configFactoryDefault;
         }  
 
-        final ErrorCode configVoltageCompSaturation = talon.configVoltageCompSaturation( 12.0, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
+        final ErrorCode configVoltageCompSaturation = talon.configVoltageCompSaturation( VOLTAGE_COMP_SATURATION, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
         if ( configVoltageCompSaturation != ErrorCode.OK ) {
             //mLogger.error( "Could not set TalonSRX [{}] voltage compensation due to EC: [{}]", talon.getDeviceID(), configVoltageCompSaturation );
+            error = configVoltageCompSaturation;
                 }  
         talon.enableVoltageCompensation( false );
+        return error;
+    }
+
+    /**
+    * This method will apply the settings of {@link #CommonConfig} which are not stored on the device.
+    *
+    * @param talon WPI_TalonSRX The motor controller to initialize
+    * @return ErrorCode Always OK
+    */
+    private static ErrorCode CommonSettings ( WPI_TalonSRX talon ) {
+        talon.enableVoltageCompensation( false );
+        return ErrorCode.OK;
     }
 
     /**
@@ -62,39 +100,119 @@ public class TalonSRX {
     * </ul><p>
     *
     * @param talon WPI_TalonSRX The motor controller to configure
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
     */  
-    public static void CTREMagEncoderConfig ( WPI_TalonSRX talon ) {
-        final ErrorCode configSelectedFeedbackSensor = talon.configSelectedFeedbackSensor( FeedbackDevice.CTRE_MagEncoder_Relative, 0, 100 );
+    public static ErrorCode CTREMagEncoderConfig ( WPI_TalonSRX talon ) {
+        ErrorCode error = ErrorCode.OK;
+        final ErrorCode configSelectedFeedbackSensor = talon.configSelectedFeedbackSensor( MAG_ENCODER_SENSOR, 0, 100 );
         if ( configSelectedFeedbackSensor != ErrorCode.OK ) {
             //mLogger.error( "Could not detect encoder due EC: [{}]", configSelectedFeedbackSensor );
+            error = configSelectedFeedbackSensor;
         }
-        final ErrorCode configVelocityMeasurementPeriod = talon.configVelocityMeasurementPeriod( SensorVelocityMeasPeriod.Period_50Ms, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
+        final ErrorCode configVelocityMeasurementPeriod = talon.configVelocityMeasurementPeriod( VELOCITY_MEAS_PERIOD, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
         if ( configVelocityMeasurementPeriod != ErrorCode.OK ) {
             //mLogger.error( "Could not set TalonSRX [{}] voltage compensation due to EC: [{}]", talon.getDeviceID(), configVelocityMeasurementPeriod );
+            error = configVelocityMeasurementPeriod;
         }
-        final ErrorCode configVelocityMeasurementWindow = talon.configVelocityMeasurementWindow( 1, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
+        final ErrorCode configVelocityMeasurementWindow = talon.configVelocityMeasurementWindow( VELOCITY_MEAS_WINDOW, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
         if ( configVelocityMeasurementWindow != ErrorCode.OK ) {
             //mLogger.error( "Could not set TalonSRX [{}] velocity measurement window due to EC: [{}]", talon.getDeviceID(), configVelocityMeasurementWindow );
+            error = configVelocityMeasurementWindow;
         }
-        final ErrorCode configClosedloopRamp = talon.configClosedloopRamp( 0.0, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
+        final ErrorCode configClosedloopRamp = talon.configClosedloopRamp( CLOSED_LOOP_RAMP, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
         if ( configClosedloopRamp != ErrorCode.OK ) {
             //mLogger.error( "Could not set TalonSRX [{}] closed loop ramp due to EC: [{}]", talon.getDeviceID(), configClosedloopRamp );
+            error = configClosedloopRamp;
         }
+        return error;
+    }
+
+    /**
+    * This method will return the persistent settings of {@link #VelocityGainsConfig}.
+    *
+    * @param slot int The gain slot
+    * @param kF double The feedforward gain
+    * @param kP double The proportional gain
+    * @param kI double The integral gain
+    * @param kD double The derivative gain
+    * @param iZone double The integral zone in sensor units per 100ms
+    * @param periodMs int The closed-loop period in milliseconds
+    * @return ConfigFingerprint The fingerprint of the gain slot
+    */
+    public static ConfigFingerprint VelocityGainsFingerprint ( int slot, double kF, double kP, double kI, double kD,
+                                                              double iZone, int periodMs ) {
+        final String prefix = "TalonSRX.Slot" + slot + ".";
+        return new ConfigFingerprint.Builder()
+            .Add( prefix + "kF", kF )
+            .Add( prefix + "kP", kP )
+            .Add( prefix + "kI", kI )
+            .Add( prefix + "kD", kD )
+            .Add( prefix + "IntegralZone", iZone )
+            .Add( prefix + "ClosedLoopPeriod", periodMs )
+            .Build();
+    }
+
+    /**
+    * This method is intended to configure a gain slot for closed-loop velocity control on the Talon SRX. It also
+    * configures motion profile slots, where kF acts on the target velocity and the other gains on the position error.
+    * <p> <ul>
+    * <li>Set the PIDF gains and integral zone of the slot
+    * <li>Set the closed-loop period of the slot (1ms runs the loop at 1kHz)
+    * </ul><p>
+    *
+    * @param talon WPI_TalonSRX The motor controller to configure
+    * @param slot int The gain slot
+    * @param kF double The feedforward gain
+    * @param kP double The proportional gain
+    * @param kI double The integral gain
+    * @param kD double The derivative gain
+    * @param iZone double The integral zone in sensor units per 100ms
+    * @param periodMs int The closed-loop period in milliseconds
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
+    */
+    public static ErrorCode VelocityGainsConfig ( WPI_TalonSRX talon, int slot, double kF, double kP, double kI,
+                                                  double kD, double iZone, int periodMs ) {
+        ErrorCode error = ErrorCode.OK;
+        final ErrorCode[] results = {
+            talon.config_kF( slot, kF, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS ),
+            talon.config_kP( slot, kP, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS ),
+            talon.config_kI( slot, kI, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS ),
+            talon.config_kD( slot, kD, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS ),
+            talon.config_IntegralZone( slot, iZone, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS ),
+            talon.configClosedLoopPeriod( slot, periodMs, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS )
+        };
+        for ( ErrorCode result : results ) {
+            if ( result != ErrorCode.OK ) {
+                //mLogger.error( "Could not set TalonSRX [{}] slot [{}] gains due to EC: [{}]", talon.getDeviceID(), slot, result );
+                error = result;
+            }
+        }
+        return error;
     }
 
     /**
     * Configures a Talon SRX motor controller to be a master.
     *
     * @param talon WPI_TalonSRX The motor controller to configure
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
     */  
-    public static void ConfigureTalonSRX ( WPI_TalonSRX talon ) {
-        CommonConfig( talon );
-        final ErrorCode setStatusFramePeriod = talon.setStatusFramePeriod( StatusFrameEnhanced.Status_2_Feedback0, 20, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
-        if ( setStatusFramePeriod != ErrorCode.OK ) {
-            //mLogger.error( "Could not set TalonSRX [{}] status frame period due to EC: [{}]", talon.getDeviceID(), setStatusFramePeriod );
-        }  
+    public static ErrorCode ConfigureTalonSRX ( WPI_TalonSRX talon ) {
+        return ConfigureTalonSRX( talon, false );
+    }
+
+    /**
+    * Configures a Talon SRX motor controller to be a master, skipping the persistent settings when the device already
+    * has them (see {@link #COMMON_FINGERPRINT}).
+    *
+    * @param talon WPI_TalonSRX The motor controller to configure
+    * @param isConfigured boolean True if the persistent settings are already on the device
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
+    */  
+    public static ErrorCode ConfigureTalonSRX ( WPI_TalonSRX talon, boolean isConfigured ) {
+        final ErrorCode error = isConfigured ? CommonSettings( talon ) : CommonConfig( talon );
         talon.set( ControlMode.PercentOutput, 0.0 );
         //mLogger.info( "Configured master TalonSRX [{}]", talon.getDeviceID() );
+        return error;
     }
 
     /**
@@ -102,15 +220,13 @@ public class TalonSRX {
     *
     * @param talon WPI_TalonSRX The motor controller to configure
     * @param master WPI_TalonSRX The motor controller to follow 
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
     */  
-    public static void ConfigureTalonSRX ( WPI_TalonSRX talon, WPI_TalonSRX master ) {
-        CommonConfig( talon );
-        final ErrorCode setStatusFramePeriod = talon.setStatusFramePeriod( StatusFrameEnhanced.Status_2_Feedback0, 160, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
-        if ( setStatusFramePeriod != ErrorCode.OK ) {
-            //mLogger.error( "Could not set TalonSRX [{}] status frame period due to EC: [{}]", talon.getDeviceID(), setStatusFramePeriod );
-        }  
+    public static ErrorCode ConfigureTalonSRX ( WPI_TalonSRX talon, WPI_TalonSRX master ) {
+        final ErrorCode error = CommonConfig( talon );
         talon.follow( master);
         //mLogger.info( "Configured follower TalonSRX [{}], master [{}]", talon.getDeviceID(), master.getDeviceID() );
+        return error;
     }
 
     /**
@@ -118,15 +234,13 @@ public class TalonSRX {
     *
     * @param talon WPI_TalonSRX The motor controller to configure
     * @param master WPI_VictorSPX The motor controller to follow
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
     */  
-    public static void ConfigureTalonSRX ( WPI_TalonSRX talon, WPI_VictorSPX master ) {
-        CommonConfig( talon );
-        final ErrorCode setStatusFramePeriod = talon.setStatusFramePeriod( StatusFrameEnhanced.Status_2_Feedback0, 20, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
-        if ( setStatusFramePeriod != ErrorCode.OK ) {
-            //mLogger.error( "Could not set TalonSRX [{}] status frame period due to EC: [{}]", talon.getDeviceID(), setStatusFramePeriod );
-        }  
+    public static ErrorCode ConfigureTalonSRX ( WPI_TalonSRX talon, WPI_VictorSPX master ) {
+        final ErrorCode error = CommonConfig( talon );
         talon.follow( master);
         //mLogger.info( "Configured follower TalonSRX [{}], master [{}]", talon.getDeviceID(), master.getDeviceID() );
+        return error;
     }
 
 }
\ No newline at end of file
@@ -9,11 +9,21 @@ import com.ctre.phoenix.motorcontrol.ControlMode;
 
 /**
 * This class provides methods to configure Victor SPX motor controllers as both masters and followers.  Also, any
-* sticky errors present will be logged and cleared.
+* sticky errors present will be logged and cleared. The fingerprint describes the persistent settings, so a configured
+* device can be skipped at boot (see {@link DeviceConfigurator}); it needs to be kept in step with the configuration.
 *
 * @see {@link https://phoenix-documentation.readthedocs.io/en/latest/ch13_MC.html}
 */
 public class VictorSPX {
+
+    private static final double VOLTAGE_COMP_SATURATION = 12.0;
+
+    /** The persistent settings of {@link #CommonConfig} */
+    public static final ConfigFingerprint COMMON_FINGERPRINT = new ConfigFingerprint.Builder()
+        .Add( "VictorSPX.FactoryDefault", true )
+        .Add( "VictorSPX.VoltageCompSaturation", VOLTAGE_COMP_SATURATION )
+        .Build();
+
     /**
     * This method is intended to initialize the motor controller to default configuration common to all modes or
     * operation.
@@ -24,8 +34,10 @@ public class VictorSPX {
     * </ul>
     *
     * @param victor WPI_VictorSPX The motor controller to initialize
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
     */
-    private static void CommonConfig ( WPI_VictorSPX victor ) {
+    private static ErrorCode CommonConfig ( WPI_VictorSPX victor ) {
+        ErrorCode error = ErrorCode.OK;
         StickyFaults faults = new StickyFaults();
 
         victor.getStickyFaults( faults );
@@ -34,31 +46,76 @@ public class VictorSPX {
             final ErrorCode clearStickyFaults = victor.clearStickyFaults( HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
             if ( clearStickyFaults != ErrorCode.OK ) {
                 //mLogger.error( "Could not clear sticky faults due to EC: [{}]", clearStickyFaults );
+                error = clearStickyFaults;
             }  
         }
     
         final ErrorCode configFactoryDefault = victor.configFactoryDefault();
         if ( configFactoryDefault != ErrorCode.OK ) {
             //mLogger.error( "Could not factory reset VictorSPX [{}] due to EC: [{}]", victor.getDeviceID(), configFactoryDefault );
+            error = configFactoryDefault;
         }  
 
-        final ErrorCode configVoltageCompSaturation = victor.configVoltageCompSaturation( 12.0, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
+        final ErrorCode configVoltageCompSaturation = victor.configVoltageCompSaturation( VOLTAGE_COMP_SATURATION, HARDWARE.CTRE_CAN_LONG_TIMEOUT_MS );
         if ( configVoltageCompSaturation != ErrorCode.OK ) {
             //mLogger.error( "Could not set VictorSPX [{}] voltage compensation due to EC: [{}]", victor.getDeviceID(), configVoltageCompSaturation );
+            error = configVoltageCompSaturation;
         }  
         //victor.enableVoltageCompensation( true );
         victor.enableVoltageCompensation( false );
+        return error;
+    }
+
+    /**
+    * This method will apply the settings of {@link #CommonConfig} which are not stored on the device.
+    *
+    * @param victor WPI_VictorSPX The motor controller to initialize
+    * @return ErrorCode Always OK
+    */
+    private static ErrorCode CommonSettings ( WPI_VictorSPX victor ) {
+        victor.enableVoltageCompensation( false );
+        return ErrorCode.OK;
     }
 
     /**
     * Configures a Victor SPX motor controller to be a master.
     *
     * @param victor WPI_VictorSPX The motor controller to configure
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
     */  
-    public static void ConfigureVictorSPX ( WPI_VictorSPX victor ) {
-        CommonConfig( victor );
+    public static ErrorCode ConfigureVictorSPX ( WPI_VictorSPX victor ) {
+        return ConfigureVictorSPX( victor, false );
+    }
+
+    /**
+    * Configures a Victor SPX motor controller to be a master, skipping the persistent settings when the device already
+    * has them (see {@link #COMMON_FINGERPRINT}).
+    *
+    * @param victor WPI_VictorSPX The motor controller to configure
+    * @param isConfigured boolean True if the persistent settings are already on the device
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
+    */  
+    public static ErrorCode ConfigureVictorSPX ( WPI_VictorSPX victor, boolean isConfigured ) {
+        final ErrorCode error = isConfigured ? CommonSettings( victor ) : CommonConfig( victor );
         victor.set( ControlMode.PercentOutput, 0.0 );
         //mLogger.info(" Configured leader VictorSPX [{}]", victor.getDeviceID() );
+        return error;
+    }
+
+    /**
+    * Configures a Victor SPX motor controller to be a follower, skipping the persistent settings when the device
+    * already has them (see {@link #COMMON_FINGERPRINT}).
+    *
+    * @param victor WPI_VictorSPX The Victor SPX motor controller to configure 
+    * @param master WPI_TalonSRX The Talon SRX motor controller to follow 
+    * @param isConfigured boolean True if the persistent settings are already on the device
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
+    */ 
+    public static ErrorCode ConfigureVictorSPX ( WPI_VictorSPX victor, WPI_TalonSRX master, boolean isConfigured ) {
+        final ErrorCode error = isConfigured ? CommonSettings( victor ) : CommonConfig( victor );
+        victor.follow( master );
+        //mLogger.info( "Configured follower VictorSPX [{}], master [{}]", victor.getDeviceID(), master.getDeviceID() );
+        return error;
     }
   
     /**
@@ -66,11 +123,13 @@ public class VictorSPX {
     *
     * @param victor WPI_VictorSPX The Victor SPX motor controller to configure 
     * @param master WPI_TalonSRX The Talon SRX motor controller to follow 
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
     */ 
-    public static void ConfigureVictorSPX ( WPI_VictorSPX victor, WPI_TalonSRX master ) {
-        CommonConfig( victor );
+    public static ErrorCode ConfigureVictorSPX ( WPI_VictorSPX victor, WPI_TalonSRX master ) {
+        final ErrorCode error = CommonConfig( victor );
         victor.follow( master );
         //mLogger.info( "Configured follower VictorSPX [{}], master [{}]", victor.getDeviceID(), master.getDeviceID() );
+        return error;
     }
 
     /**
@@ -78,11 +137,13 @@ public class VictorSPX {
     *
     * @param victor WPI_VictorSPX The Victor SPX motor controller to configure 
     * @param master WPI_VictorSPX The Victor SPX motor controller to follow 
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
     */ 
-    public static void ConfigureVictorSPX ( WPI_VictorSPX victor, WPI_VictorSPX master ) {
-        CommonConfig( victor );
+    public static ErrorCode ConfigureVictorSPX ( WPI_VictorSPX victor, WPI_VictorSPX master ) {
+        final ErrorCode error = CommonConfig( victor );
         victor.follow( master );
         //mLogger.info( "Configured follower VictorSPX [{}], master [{}]", victor.getDeviceID(), master.getDeviceID() );
+        return error;
     }
 
 }
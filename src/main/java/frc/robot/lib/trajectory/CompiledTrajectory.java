@@ -0,0 +1,333 @@
+package frc.robot.lib.trajectory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+* This class holds a trajectory which was sampled ahead of time at a fixed period, in primitive arrays. The
+* trajectories are compiled on the desktop at build time (see {@link TrajectoryCompiler}) into a compact binary file
+* under the deploy directory, and loaded at boot with one memory-mapped bulk read per column. Sampling at any time is
+* an index and an interpolation into a caller-owned {@link Sample}, so following a trajectory doesn't allocate.
+* <p>
+* The file is a header (magic, version, number of samples, sample period and total time) followed by one column of
+* doubles per field: x, y, heading, velocity, acceleration and curvature.
+*/
+public final class CompiledTrajectory {
+
+    /**
+    * A sample of the trajectory. The caller owns it and reuses it for every call to {@link #Sample}.
+    */
+    public static final class Sample {
+        /** Time since the start of the trajectory in seconds */
+        public double time;
+        /** Field-relative x in meters */
+        public double x;
+        /** Field-relative y in meters */
+        public double y;
+        /** Field-relative heading in radians */
+        public double heading;
+        /** Velocity in meters per second */
+        public double velocity;
+        /** Acceleration in meters per second squared */
+        public double acceleration;
+        /** Curvature in radians per meter */
+        public double curvature;
+    }
+
+    public static final int MAGIC = 0x5452414A;     // "TRAJ"
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".traj";
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 8;
+    private static final int COLUMNS = 6;
+
+    private final String mName;
+    private final double mPeriod;
+    private final double mTotalSeconds;
+    private final int mCount;
+    private final double[] mX;
+    private final double[] mY;
+    private final double[] mHeading;
+    private final double[] mVelocity;
+    private final double[] mAcceleration;
+    private final double[] mCurvature;
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PUBLIC METHODS                                                 */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will sample a trajectory at a fixed period. The last sample is at the end of the trajectory.
+    *
+    * @param name String The name of the trajectory
+    * @param trajectory Trajectory The trajectory to sample
+    * @param periodSeconds double The sample period in seconds
+    * @return CompiledTrajectory The sampled trajectory
+    */
+    public static CompiledTrajectory Compile ( String name, Trajectory trajectory, double periodSeconds ) {
+        final double totalSeconds = trajectory.getTotalTimeSeconds();
+        final int count = (int) Math.ceil( totalSeconds / periodSeconds ) + 1;
+        CompiledTrajectory compiled = new CompiledTrajectory( name, periodSeconds, totalSeconds, count );
+        for ( int i = 0; i < count; i++ ) {
+            final Trajectory.State state = trajectory.sample( Math.min( i * periodSeconds, totalSeconds ) );
+            compiled.mX[ i ] = state.poseMeters.getX();
+            compiled.mY[ i ] = state.poseMeters.getY();
+            compiled.mHeading[ i ] = state.poseMeters.getRotation().getRadians();
+            compiled.mVelocity[ i ] = state.velocityMetersPerSecond;
+            compiled.mAcceleration[ i ] = state.accelerationMetersPerSecondSq;
+            compiled.mCurvature[ i ] = state.curvatureRadPerMeter;
+        }
+        return compiled;
+    }
+
+    /**
+    * This method will load a compiled trajectory file. The file is memory-mapped and each column is bulk-read into its
+    * array.
+    *
+    * @param name String The name of the trajectory
+    * @param path Path The compiled trajectory file
+    * @return CompiledTrajectory The loaded trajectory
+    * @throws IOException If the file can't be read or isn't a compiled trajectory
+    */
+    public static CompiledTrajectory Load ( String name, Path path ) throws IOException {
+        try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) ) {
+            final MappedByteBuffer in = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+            if ( in.remaining() < HEADER_BYTES || in.getInt() != MAGIC ) {
+                throw new IOException( "Not a compiled trajectory: " + path );
+            }
+            final int version = in.getInt();
+            if ( version != VERSION ) {
+                throw new IOException( "Unsupported compiled trajectory version " + version + ": " + path );
+            }
+            final int count = in.getInt();
+            final double period = in.getDouble();
+            final double totalSeconds = in.getDouble();
+            if ( count < 1 || period <= 0.0 || in.remaining() != (long) count * COLUMNS * Double.BYTES ) {
+                throw new IOException( "Truncated or corrupt compiled trajectory: " + path );
+            }
+            CompiledTrajectory compiled = new CompiledTrajectory( name, period, totalSeconds, count );
+            for ( double[] column : compiled.Columns() ) {
+                in.asDoubleBuffer().get( column );
+                in.position( in.position() + count * Double.BYTES );
+            }
+            return compiled;
+        }
+    }
+
+    /**
+    * This method will load every compiled trajectory file in a directory, named after their files. A file which can't
+    * be loaded is reported and skipped.
+    *
+    * @param directory Path The directory of compiled trajectory files
+    * @return Map<String, CompiledTrajectory> The loaded trajectories by name, in file name order
+    */
+    public static Map<String, CompiledTrajectory> LoadAll ( Path directory ) {
+        Map<String, CompiledTrajectory> trajectories = new TreeMap<>();
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory, "*" + EXTENSION ) ) {
+            for ( Path file : files ) {
+                final String fileName = file.getFileName().toString();
+                final String name = fileName.substring( 0, fileName.length() - EXTENSION.length() );
+                try {
+                    trajectories.put( name, Load( name, file ) );
+                } catch ( IOException e ) {
+                    DriverStation.reportError( "Could not load trajectory " + name + ": " + e.getMessage(), false );
+                }
+            }
+        } catch ( IOException e ) {
+            DriverStation.reportError( "Could not list the trajectories in " + directory + ": " + e.getMessage(),
+                                       false );
+        }
+        return trajectories;
+    }
+
+    /**
+    * This method will write the trajectory to a compiled trajectory file.
+    *
+    * @param path Path The file to write
+    * @throws IOException If the file can't be written
+    */
+    public void Write ( Path path ) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate( HEADER_BYTES + mCount * COLUMNS * Double.BYTES );
+        out.putInt( MAGIC );
+        out.putInt( VERSION );
+        out.putInt( mCount );
+        out.putDouble( mPeriod );
+        out.putDouble( mTotalSeconds );
+        for ( double[] column : Columns() ) {
+            out.asDoubleBuffer().put( column );
+            out.position( out.position() + mCount * Double.BYTES );
+        }
+        Files.write( path, out.array() );
+    }
+
+    /**
+    * This method will sample the trajectory, interpolating between the compiled samples by their times. The last
+    * interval is usually shorter than the period, since the last sample is at the end of the trajectory. Times outside
+    * of the trajectory are clamped to its start or end. Nothing is allocated.
+    *
+    * @param time double The time since the start of the trajectory in seconds
+    * @param sample Sample The sample to fill in
+    * @return Sample The filled in sample
+    */
+    public Sample Sample ( double time, Sample sample ) {
+        time = MathUtil.clamp( time, 0.0, mTotalSeconds );
+        final int i = Math.min( (int) ( time / mPeriod ), mCount - 1 );
+        final int j = Math.min( i + 1, mCount - 1 );
+        final double start = GetSampleTime( i );
+        final double end = GetSampleTime( j );
+        final double fraction = ( end > start ) ? MathUtil.clamp( ( time - start ) / ( end - start ), 0.0, 1.0 ) : 0.0;
+        sample.time = time;
+        sample.x = Interpolate( mX, i, j, fraction );
+        sample.y = Interpolate( mY, i, j, fraction );
+        sample.heading = mHeading[ i ] + MathUtil.angleModulus( mHeading[ j ] - mHeading[ i ] ) * fraction;
+        sample.velocity = Interpolate( mVelocity, i, j, fraction );
+        sample.acceleration = Interpolate( mAcceleration, i, j, fraction );
+        sample.curvature = Interpolate( mCurvature, i, j, fraction );
+        return sample;
+    }
+
+    /**
+    * This method will rebuild a WPILib trajectory from the compiled samples, for the code which needs one. This
+    * allocates, so it should be done before the trajectory is needed.
+    *
+    * @return Trajectory The trajectory
+    */
+    public Trajectory ToTrajectory () {
+        List<Trajectory.State> states = new ArrayList<>( mCount );
+        for ( int i = 0; i < mCount; i++ ) {
+            final Pose2d pose = new Pose2d( mX[ i ], mY[ i ], new Rotation2d( mHeading[ i ] ) );
+            states.add( new Trajectory.State( GetSampleTime( i ), mVelocity[ i ],
+                                              mAcceleration[ i ], pose, mCurvature[ i ] ) );
+        }
+        return new Trajectory( states );
+    }
+
+    /**
+    * This method will return the name of the trajectory.
+    *
+    * @return String The name
+    */
+    public String GetName () {
+        return mName;
+    }
+
+    /**
+    * This method will return the starting pose of the trajectory.
+    *
+    * @return Pose2d The starting pose in meters
+    */
+    public Pose2d GetInitialPose () {
+        return new Pose2d( mX[ 0 ], mY[ 0 ], new Rotation2d( mHeading[ 0 ] ) );
+    }
+
+    /**
+    * This method will return the length of the trajectory.
+    *
+    * @return double The total time in seconds
+    */
+    public double GetTotalSeconds () {
+        return mTotalSeconds;
+    }
+
+    /**
+    * This method will return the sample period of the trajectory.
+    *
+    * @return double The sample period in seconds
+    */
+    public double GetPeriod () {
+        return mPeriod;
+    }
+
+    /**
+    * This method will return the number of compiled samples.
+    *
+    * @return int The number of samples
+    */
+    public int GetCount () {
+        return mCount;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PRIVATE METHODS                                                */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will return the time of a compiled sample.
+    *
+    * @param index int The index of the sample
+    * @return double The time since the start of the trajectory in seconds
+    */
+    private double GetSampleTime ( int index ) {
+        return Math.min( index * mPeriod, mTotalSeconds );
+    }
+
+    /**
+    * This method will return the columns in the order they are stored in the file.
+    *
+    * @return double[][] The columns
+    */
+    private double[][] Columns () {
+        return new double[][] { mX, mY, mHeading, mVelocity, mAcceleration, mCurvature };
+    }
+
+    /**
+    * This method will linearly interpolate between two samples of a column.
+    *
+    * @param column double[] The column
+    * @param i int The index of the earlier sample
+    * @param j int The index of the later sample
+    * @param fraction double The fraction of the way from the earlier to the later sample
+    * @return double The interpolated value
+    */
+    private static double Interpolate ( double[] column, int i, int j, double fraction ) {
+        return column[ i ] + ( column[ j ] - column[ i ] ) * fraction;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                        CLASS CONSTRUCTOR AND OVERRIDES                                        */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString () {
+        return String.format( "%s (%d samples, %.2f s)", mName, mCount, mTotalSeconds );
+    }
+
+    /**
+    * The constructor for the CompiledTrajectory class.
+    *
+    * @param name String The name of the trajectory
+    * @param period double The sample period in seconds
+    * @param totalSeconds double The total time in seconds
+    * @param count int The number of samples
+    */
+    private CompiledTrajectory ( String name, double period, double totalSeconds, int count ) {
+        mName = name;
+        mPeriod = period;
+        mTotalSeconds = totalSeconds;
+        mCount = count;
+        mX = new double[ count ];
+        mY = new double[ count ];
+        mHeading = new double[ count ];
+        mVelocity = new double[ count ];
+        mAcceleration = new double[ count ];
+        mCurvature = new double[ count ];
+    }
+
+}
@@ -0,0 +1,81 @@
+package frc.robot.lib.trajectory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import edu.wpi.first.math.trajectory.Trajectory;
+import frc.robot.AutonomousTrajectories;
+import frc.robot.Constants.TRAJECTORY;
+
+/**
+* This class compiles the autonomous trajectories into the deploy directory at build time, so the robot never
+* generates them. Every trajectory of {@link AutonomousTrajectories} is generated, sampled at
+* {@link TRAJECTORY#SAMPLE_PERIOD_S} and written as a {@link CompiledTrajectory} file. Files of trajectories which are
+* no longer defined are deleted, so the robot doesn't load stale paths.
+* <p>
+* This runs on the desktop as part of the build, or with {@code ./gradlew compileTrajectories}.
+*/
+public final class TrajectoryCompiler {
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PUBLIC METHODS                                                 */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will compile trajectories into a directory and delete the files of any other trajectories there.
+    *
+    * @param trajectories Map<String, Trajectory> The trajectories by name
+    * @param directory Path The output directory
+    * @param periodSeconds double The sample period in seconds
+    * @throws IOException If a file can't be written or deleted
+    */
+    public static void CompileAll ( Map<String, Trajectory> trajectories, Path directory, double periodSeconds )
+        throws IOException {
+        Files.createDirectories( directory );
+        final String pattern = "*" + CompiledTrajectory.EXTENSION;
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory, pattern ) ) {
+            for ( Path file : files ) {
+                final String fileName = file.getFileName().toString();
+                final String name = fileName.substring( 0, fileName.length() - CompiledTrajectory.EXTENSION.length() );
+                if ( !trajectories.containsKey( name ) ) {
+                    Files.delete( file );
+                    System.out.println( "Deleted stale trajectory " + name );
+                }
+            }
+        }
+        for ( Map.Entry<String, Trajectory> entry : trajectories.entrySet() ) {
+            CompiledTrajectory compiled = CompiledTrajectory.Compile( entry.getKey(), entry.getValue(), periodSeconds );
+            final Path file = directory.resolve( entry.getKey() + CompiledTrajectory.EXTENSION );
+            compiled.Write( file );
+            System.out.println( "Compiled trajectory " + compiled + " to " + file + " (" + Files.size( file )
+                                + " bytes)" );
+        }
+    }
+
+    /**
+    * This method will compile the autonomous trajectories.
+    *
+    * @param args String... The output directory (the deploy trajectory directory by default)
+    * @throws IOException If a file can't be written or deleted
+    */
+    public static void main ( String... args ) throws IOException {
+        final Path directory = ( args.length > 0 && !args[ 0 ].isEmpty() )
+                               ? Paths.get( args[ 0 ] )
+                               : Paths.get( "src", "main", "deploy", TRAJECTORY.DIRECTORY );
+        final long start = System.nanoTime();
+        CompileAll( AutonomousTrajectories.Generate(), directory, TRAJECTORY.SAMPLE_PERIOD_S );
+        System.out.println( String.format( "Compiled the trajectories in %.0fms",
+                                           ( System.nanoTime() - start ) * 1.0e-6 ) );
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                        CLASS CONSTRUCTOR AND OVERRIDES                                        */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    private TrajectoryCompiler () {}
+
+}
@@ -0,0 +1,266 @@
+package frc.robot.lib.trajectory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.DifferentialDriveKinematics;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryConfig;
+import edu.wpi.first.math.trajectory.TrajectoryGenerator;
+import frc.robot.Constants.TRAJECTORY;
+
+/**
+* This class generates trajectories which can't be compiled ahead of time (e.g. from wherever the robot is back to a
+* scoring pose) on a background worker thread, so the generation never runs in the scheduler loop. A request returns a
+* future right away, which completes once the trajectory has been generated. Whatever has to be done with the
+* trajectory before it can be followed (e.g. preparing its motion profile) can be done on the worker thread as well.
+* <p>
+* The trajectory is generated between the exact poses of the request. The cache key is the exact end pose, the start
+* pose quantized to {@link TRAJECTORY#POSE_QUANTUM_M} and {@link TRAJECTORY#HEADING_QUANTUM_DEG}, and the constraints,
+* so a request from about the same place to the same goal is answered from a least-recently-used cache of
+* {@link TRAJECTORY#CACHE_SIZE} trajectories right away, and a request which is already being generated shares its
+* future. A cached trajectory ends exactly at the goal, and starts within a quantum of where the robot is.
+*/
+public class TrajectoryService {
+
+    /**
+    * The constraints of a requested trajectory.
+    */
+    public static final class Constraints {
+        /** Velocity limit in meters per second */
+        public final double maxVelocity;
+        /** Acceleration limit in meters per second squared */
+        public final double maxAcceleration;
+        /** True if the robot drives the trajectory backwards */
+        public final boolean isReversed;
+
+        /**
+        * The constructor for the Constraints class.
+        *
+        * @param maxVelocity double The velocity limit in meters per second
+        * @param maxAcceleration double The acceleration limit in meters per second squared
+        * @param isReversed boolean True if the robot drives the trajectory backwards
+        */
+        public Constraints ( double maxVelocity, double maxAcceleration, boolean isReversed ) {
+            this.maxVelocity = maxVelocity;
+            this.maxAcceleration = maxAcceleration;
+            this.isReversed = isReversed;
+        }
+
+        @Override
+        public boolean equals ( Object other ) {
+            if ( !( other instanceof Constraints ) ) {
+                return false;
+            }
+            Constraints constraints = (Constraints) other;
+            return maxVelocity == constraints.maxVelocity && maxAcceleration == constraints.maxAcceleration
+                   && isReversed == constraints.isReversed;
+        }
+
+        @Override
+        public int hashCode () {
+            return Double.hashCode( maxVelocity ) * 31 * 31 + Double.hashCode( maxAcceleration ) * 31
+                   + Boolean.hashCode( isReversed );
+        }
+    }
+
+    /**
+    * The cache key of a request: the quantized start pose, the exact end pose and the constraints.
+    */
+    private static final class Key {
+        private final long[] mStart;
+        private final double[] mEnd;
+        private final Constraints mConstraints;
+
+        private Key ( Pose2d start, Pose2d end, Constraints constraints ) {
+            mStart = new long[] { Quantize( start.getX(), TRAJECTORY.POSE_QUANTUM_M ),
+                                  Quantize( start.getY(), TRAJECTORY.POSE_QUANTUM_M ),
+                                  Quantize( start.getRotation().getDegrees(), TRAJECTORY.HEADING_QUANTUM_DEG ) };
+            mEnd = new double[] { end.getX(), end.getY(), end.getRotation().getRadians() };
+            mConstraints = constraints;
+        }
+
+        private static long Quantize ( double value, double quantum ) {
+            return Math.round( value / quantum );
+        }
+
+        @Override
+        public boolean equals ( Object other ) {
+            if ( !( other instanceof Key ) ) {
+                return false;
+            }
+            Key key = (Key) other;
+            return Arrays.equals( mStart, key.mStart ) && Arrays.equals( mEnd, key.mEnd )
+                   && mConstraints.equals( key.mConstraints );
+        }
+
+        @Override
+        public int hashCode () {
+            return ( Arrays.hashCode( mStart ) * 31 + Arrays.hashCode( mEnd ) ) * 31 + mConstraints.hashCode();
+        }
+    }
+
+    private final Supplier<Pose2d> mPose;
+    private final DifferentialDriveKinematics mKinematics;
+    private final ExecutorService mWorker;
+    private final Map<Key, CompletableFuture<Trajectory>> mCache;
+
+    // Statistics
+    private long mHits;
+    private long mMisses;
+    private volatile double mLastGenerationSeconds;
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PUBLIC METHODS                                                 */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will request a trajectory from the current pose of the robot to a goal pose.
+    *
+    * @param goal Pose2d The goal pose in meters
+    * @param constraints Constraints The constraints of the trajectory
+    * @return CompletableFuture<Trajectory> The trajectory, once it has been generated
+    */
+    public CompletableFuture<Trajectory> RequestTo ( Pose2d goal, Constraints constraints ) {
+        return Request( mPose.get(), goal, constraints );
+    }
+
+    /**
+    * This method will request a trajectory from the current pose of the robot to a goal pose, and then prepare it on
+    * the worker thread as well, so nothing but the result is left for the caller to do.
+    *
+    * @param goal Pose2d The goal pose in meters
+    * @param constraints Constraints The constraints of the trajectory
+    * @param preparation Function<Trajectory, T> The preparation of the trajectory, which must not touch hardware
+    * @return CompletableFuture<T> The prepared trajectory, once it has been generated and prepared
+    */
+    public <T> CompletableFuture<T> RequestTo ( Pose2d goal, Constraints constraints,
+                                                Function<Trajectory, T> preparation ) {
+        return RequestTo( goal, constraints ).thenApplyAsync( preparation, mWorker );
+    }
+
+    /**
+    * This method will request a trajectory between two poses. The future completes on the worker thread, or right
+    * away when the trajectory is cached. It completes exceptionally if the trajectory can't be generated, and that
+    * failure isn't cached.
+    *
+    * @param start Pose2d The start pose in meters
+    * @param end Pose2d The end pose in meters
+    * @param constraints Constraints The constraints of the trajectory
+    * @return CompletableFuture<Trajectory> The trajectory, once it has been generated
+    */
+    public CompletableFuture<Trajectory> Request ( Pose2d start, Pose2d end, Constraints constraints ) {
+        final Key key = new Key( start, end, constraints );
+        synchronized ( mCache ) {
+            CompletableFuture<Trajectory> cached = mCache.get( key );
+            if ( cached != null ) {
+                mHits++;
+                return cached;
+            }
+            mMisses++;
+            CompletableFuture<Trajectory> future = CompletableFuture.supplyAsync( () -> Generate( start, end,
+                                                                                                   constraints ),
+                                                                                  mWorker );
+            mCache.put( key, future );
+            future.whenComplete( ( trajectory, error ) -> {
+                if ( error != null ) {
+                    synchronized ( mCache ) {
+                        mCache.remove( key, future );
+                    }
+                }
+            } );
+            return future;
+        }
+    }
+
+    /**
+    * This method will return the number of requests which were answered from the cache.
+    *
+    * @return long The number of cache hits
+    */
+    public long GetHits () {
+        synchronized ( mCache ) {
+            return mHits;
+        }
+    }
+
+    /**
+    * This method will return the number of requests which needed a trajectory to be generated.
+    *
+    * @return long The number of cache misses
+    */
+    public long GetMisses () {
+        synchronized ( mCache ) {
+            return mMisses;
+        }
+    }
+
+    /**
+    * This method will return how long the last trajectory took to generate.
+    *
+    * @return double The generation time in seconds
+    */
+    public double GetLastGenerationSeconds () {
+        return mLastGenerationSeconds;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PRIVATE METHODS                                                */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will generate the trajectory of a request. It is only called on the worker thread.
+    *
+    * @param start Pose2d The start pose in meters
+    * @param end Pose2d The end pose in meters
+    * @param constraints Constraints The constraints of the trajectory
+    * @return Trajectory The trajectory
+    */
+    private Trajectory Generate ( Pose2d start, Pose2d end, Constraints constraints ) {
+        final long startTime = System.nanoTime();
+        TrajectoryConfig config = new TrajectoryConfig( constraints.maxVelocity, constraints.maxAcceleration )
+            .setKinematics( mKinematics )
+            .setReversed( constraints.isReversed );
+        Trajectory trajectory = TrajectoryGenerator.generateTrajectory( start, List.of(), end, config );
+        mLastGenerationSeconds = ( System.nanoTime() - startTime ) * 1.0e-9;
+        return trajectory;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                        CLASS CONSTRUCTOR AND OVERRIDES                                        */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * The constructor for the TrajectoryService class.
+    *
+    * @param pose Supplier<Pose2d> The current pose of the robot
+    * @param kinematics DifferentialDriveKinematics The kinematics of the drivetrain
+    */
+    public TrajectoryService ( Supplier<Pose2d> pose, DifferentialDriveKinematics kinematics ) {
+        mPose = pose;
+        mKinematics = kinematics;
+        mWorker = Executors.newSingleThreadExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "TrajectoryService" );
+            thread.setDaemon( true );
+            thread.setPriority( Thread.MIN_PRIORITY );
+            return thread;
+        } );
+        mCache = new LinkedHashMap<>( TRAJECTORY.CACHE_SIZE, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry ( Map.Entry<Key, CompletableFuture<Trajectory>> eldest ) {
+                return size() > TRAJECTORY.CACHE_SIZE;
+            }
+        };
+    }
+
+}
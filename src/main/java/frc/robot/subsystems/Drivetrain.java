@@ -1,17 +1,35 @@
 package frc.robot.subsystems;
 
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.util.sendable.SendableBuilder;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
 import com.ctre.phoenix.motorcontrol.can.WPI_VictorSPX;
+import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.motorcontrol.ControlMode;
+import com.ctre.phoenix.motorcontrol.DemandType;
+import com.ctre.phoenix.motorcontrol.InvertType;
 import com.ctre.phoenix.motorcontrol.NeutralMode;
 import edu.wpi.first.wpilibj.drive.DifferentialDrive;
 import frc.robot.Constants.DRIVETRAIN;
+import frc.robot.Constants.HARDWARE;
+import frc.robot.lib.drivers.CoalescedMotorController;
+import frc.robot.lib.drivers.ConfigFingerprint;
+import frc.robot.lib.drivers.DeviceConfigurator;
+import frc.robot.lib.drivers.MotionProfileStreamer;
+import frc.robot.lib.drivers.StatusFramePlanner;
+import frc.robot.lib.drivers.StatusFramePlanner.Signal;
 import frc.robot.lib.drivers.TalonSRX;
 import frc.robot.lib.drivers.VictorSPX;
-//import frc.robot.lib.drivers.ADIS16470;
+import frc.robot.lib.drivers.ADIS16470;
+import frc.robot.lib.trajectory.CompiledTrajectory;
+import edu.wpi.first.wpilibj.motorcontrol.MotorController;
 import edu.wpi.first.wpilibj.motorcontrol.MotorControllerGroup;
 import edu.wpi.first.wpilibj.PneumaticsModuleType;
+import edu.wpi.first.wpilibj.RobotController;
 
 /**
 * The Drivetrain class is designed to use the command-based programming model and extends the SubsystemBase class.
@@ -19,6 +37,30 @@ import edu.wpi.first.wpilibj.PneumaticsModuleType;
 */
 public class Drivetrain extends SubsystemBase {
 
+    /**
+    * The motion profile of each side of the drivetrain for a trajectory, prepared for one gear.
+    */
+    public static final class PreparedMotionProfile {
+        /** Left side profile */
+        public final MotionProfileStreamer.Profile left;
+        /** Right side profile */
+        public final MotionProfileStreamer.Profile right;
+        /** True if the profile was prepared for high gear */
+        public final boolean isHighGear;
+
+        private PreparedMotionProfile ( int points, boolean isHighGear ) {
+            left = new MotionProfileStreamer.Profile( points );
+            right = new MotionProfileStreamer.Profile( points );
+            this.isHighGear = isHighGear;
+        }
+    }
+
+    // Talon SRX velocity units (counts per 100ms) per meter per second of wheel speed
+    private static final double VELOCITY_UNITS_PER_MPS = DRIVETRAIN.ENCODER_COUNTS_PER_REV
+                                                         * DRIVETRAIN.ENCODER_TO_WHEEL_RATIO
+                                                         / ( Math.PI * DRIVETRAIN.WHEEL_DIAMETER_M ) / 10.0;
+    private static final double POSITION_UNITS_PER_M = VELOCITY_UNITS_PER_MPS * 10.0;
+
     // Hardware
     private final WPI_TalonSRX mLeftMaster;
     private final WPI_VictorSPX mLeftFollower_1;
@@ -27,9 +69,14 @@ public class Drivetrain extends SubsystemBase {
     private final WPI_VictorSPX mRightFollower_1;
     private final WPI_VictorSPX mRightFollower_2;
     public final DoubleSolenoid mShifter;
-    //private final ADIS16470 mIMU;
+    private final ADIS16470 mIMU;
+    private final DrivetrainOdometry mOdometry;
+    private final MotionProfileStreamer mMotionProfile;
 
     // Drive conrol (both open and closed loop)
+    private final CoalescedMotorController[] mCoalescedOutputs;
+    private static final String[] mCoalescedOutputNames = { "Left Master", "Left Follower 1", "Left Follower 2",
+                                                             "Right Master", "Right Follower 1", "Right Follower 2" };
     public DifferentialDrive mDifferentialDrive;
     private MotorControllerGroup mLeftMotorControllerGroup;
     private MotorControllerGroup mRightMotorControllerGroup;
@@ -38,6 +85,11 @@ public class Drivetrain extends SubsystemBase {
     private boolean mIsReversedDirection;
     private boolean mIsHighGear;
     private boolean mIsBrakeMode;
+    private boolean mIsClosedLoop;
+    private int mVelocitySlot;
+    private double mCANUtilization;
+    private double mCANUtilizationSum;
+    private long mCANUtilizationCount;
 
 
     //-----------------------------------------------------------------------------------------------------------------
@@ -53,11 +105,14 @@ public class Drivetrain extends SubsystemBase {
         if ( wantsReversedDirection != mIsReversedDirection ) {
             mIsReversedDirection = wantsReversedDirection;
             mLeftMaster.setInverted( !mIsReversedDirection );
-            mLeftFollower_1.setInverted( !mIsReversedDirection );
-            mLeftFollower_2.setInverted( !mIsReversedDirection );
             mRightMaster.setInverted( !mIsReversedDirection) ;
-            mRightFollower_1.setInverted( !mIsReversedDirection );
-            mRightFollower_2.setInverted( !mIsReversedDirection );
+            // Hardware followers, and followers in closed-loop, take the inversion of their master
+            if ( !DRIVETRAIN.USE_HARDWARE_FOLLOWERS && !mIsClosedLoop ) {
+                mLeftFollower_1.setInverted( !mIsReversedDirection );
+                mLeftFollower_2.setInverted( !mIsReversedDirection );
+                mRightFollower_1.setInverted( !mIsReversedDirection );
+                mRightFollower_2.setInverted( !mIsReversedDirection );
+            }
         }
     }
 
@@ -132,10 +187,154 @@ public class Drivetrain extends SubsystemBase {
         return mIsBrakeMode;
     }
 
+    /**
+    * This method will return the state of the drive control 
+    *
+    * @return boolean True if the masters are running closed-loop velocity control, false for open-loop
+    */
+    public boolean IsClosedLoop () {
+        return mIsClosedLoop;
+    }
+
+    /**
+    * This method will return the state of the motion profile 
+    *
+    * @return MotionProfileStreamer.State The state of the streamed motion profile
+    */
+    public MotionProfileStreamer.State GetMotionProfileState () {
+        return mMotionProfile.GetState();
+    }
+
+    /**
+    * This method will force the next open-loop output to be written to every motor controller.
+    */
+    public void InvalidateOutputs () {
+        for ( CoalescedMotorController output : mCoalescedOutputs ) {
+            if ( output != null ) {
+                output.Invalidate();
+            }
+        }
+    }
+
+    /**
+    * This method will return the latest odometry snapshot, which is updated at the odometry rate on its own thread.
+    *
+    * @return DrivetrainOdometry.PoseSnapshot The latest pose, wheel distances and wheel velocities
+    */
+    public DrivetrainOdometry.PoseSnapshot GetPoseSnapshot () {
+        return mOdometry.GetSnapshot();
+    }
+
+    /**
+    * This method will return the latest field-relative pose.
+    *
+    * @return Pose2d The pose in meters
+    */
+    public Pose2d GetPose () {
+        return mOdometry.GetSnapshot().pose;
+    }
+
+    /**
+    * This method will reset the field-relative pose, e.g. to the starting pose of an autonomous routine.
+    *
+    * @param pose Pose2d The new pose in meters
+    */
+    public void ResetPose ( Pose2d pose ) {
+        mOdometry.ResetPose( pose );
+    }
+
+    /**
+    * This method will add the configuration of the drivetrain motor controllers to the configurator. Each motor
+    * controller is configured on its own, its persistent settings are skipped when its stored fingerprint matches, and
+    * the subsystem state is reset once they are all done.
+    *
+    * @param configurator DeviceConfigurator The device configurator
+    */
+    public void ConfigureDevices ( DeviceConfigurator configurator ) {
+        final ConfigFingerprint master = new ConfigFingerprint.Builder()
+            .Add( TalonSRX.COMMON_FINGERPRINT )
+            .Add( TalonSRX.MAG_ENCODER_FINGERPRINT )
+            .Add( TalonSRX.VelocityGainsFingerprint( DRIVETRAIN.LOW_GEAR_VELOCITY_SLOT, DRIVETRAIN.LOW_GEAR_KF,
+                                                     DRIVETRAIN.LOW_GEAR_KP, DRIVETRAIN.LOW_GEAR_KI,
+                                                     DRIVETRAIN.LOW_GEAR_KD, DRIVETRAIN.LOW_GEAR_IZONE,
+                                                     DRIVETRAIN.CLOSED_LOOP_PERIOD_MS ) )
+            .Add( TalonSRX.VelocityGainsFingerprint( DRIVETRAIN.HIGH_GEAR_VELOCITY_SLOT, DRIVETRAIN.HIGH_GEAR_KF,
+                                                     DRIVETRAIN.HIGH_GEAR_KP, DRIVETRAIN.HIGH_GEAR_KI,
+                                                     DRIVETRAIN.HIGH_GEAR_KD, DRIVETRAIN.HIGH_GEAR_IZONE,
+                                                     DRIVETRAIN.CLOSED_LOOP_PERIOD_MS ) )
+            .Add( TalonSRX.VelocityGainsFingerprint( DRIVETRAIN.LOW_GEAR_MOTION_PROFILE_SLOT,
+                                                     DRIVETRAIN.LOW_GEAR_MP_KF, DRIVETRAIN.LOW_GEAR_MP_KP,
+                                                     DRIVETRAIN.LOW_GEAR_MP_KI, DRIVETRAIN.LOW_GEAR_MP_KD,
+                                                     DRIVETRAIN.LOW_GEAR_MP_IZONE, DRIVETRAIN.CLOSED_LOOP_PERIOD_MS ) )
+            .Add( TalonSRX.VelocityGainsFingerprint( DRIVETRAIN.HIGH_GEAR_MOTION_PROFILE_SLOT,
+                                                     DRIVETRAIN.HIGH_GEAR_MP_KF, DRIVETRAIN.HIGH_GEAR_MP_KP,
+                                                     DRIVETRAIN.HIGH_GEAR_MP_KI, DRIVETRAIN.HIGH_GEAR_MP_KD,
+                                                     DRIVETRAIN.HIGH_GEAR_MP_IZONE, DRIVETRAIN.CLOSED_LOOP_PERIOD_MS ) )
+            .Build();
+        final ConfigFingerprint follower = VictorSPX.COMMON_FINGERPRINT;
+        configurator.AddCTRE( "Left Master", mLeftMaster, master,
+                              isConfigured -> ConfigureMaster( mLeftMaster, false, isConfigured ) );
+        configurator.AddCTRE( "Left Follower 1", mLeftFollower_1, follower,
+                              isConfigured -> ConfigureFollower( mLeftFollower_1, mLeftMaster, false, isConfigured ) );
+        configurator.AddCTRE( "Left Follower 2", mLeftFollower_2, follower,
+                              isConfigured -> ConfigureFollower( mLeftFollower_2, mLeftMaster, false, isConfigured ) );
+        configurator.AddCTRE( "Right Master", mRightMaster, master,
+                              isConfigured -> ConfigureMaster( mRightMaster, true, isConfigured ) );
+        configurator.AddCTRE( "Right Follower 1", mRightFollower_1, follower,
+                              isConfigured -> ConfigureFollower( mRightFollower_1, mRightMaster, true, isConfigured ) );
+        configurator.AddCTRE( "Right Follower 2", mRightFollower_2, follower,
+                              isConfigured -> ConfigureFollower( mRightFollower_2, mRightMaster, true, isConfigured ) );
+        configurator.AfterConfiguration( this::Initialize );
+    }
+
+    /**
+    * This method will add the drivetrain motor controllers to the status frame plan. The masters provide the encoder
+    * position and velocity at the odometry rate, and always lead the followers, since the followers follow them on the
+    * controller in closed loop (and all the time with hardware followers). Nothing is read from the followers.
+    *
+    * @param planner StatusFramePlanner The status frame planner
+    */
+    public void PlanStatusFrames ( StatusFramePlanner planner ) {
+        StatusFramePlanner.DevicePlan leftMaster = planner.Add( "Left Master", mLeftMaster )
+                                                          .Consume( Signal.kPosition, DRIVETRAIN.ODOMETRY_FRAME_MS )
+                                                          .Consume( Signal.kVelocity, DRIVETRAIN.ODOMETRY_FRAME_MS );
+        StatusFramePlanner.DevicePlan rightMaster = planner.Add( "Right Master", mRightMaster )
+                                                           .Consume( Signal.kPosition, DRIVETRAIN.ODOMETRY_FRAME_MS )
+                                                           .Consume( Signal.kVelocity, DRIVETRAIN.ODOMETRY_FRAME_MS );
+        leftMaster.Consume( Signal.kMotionProfile, DRIVETRAIN.MOTION_PROFILE_PERIOD_MS );
+        rightMaster.Consume( Signal.kMotionProfile, DRIVETRAIN.MOTION_PROFILE_PERIOD_MS );
+        // The followers follow their master on the controller in closed loop even without hardware followers
+        leftMaster.Lead();
+        rightMaster.Lead();
+        planner.Add( "Left Follower 1", mLeftFollower_1 );
+        planner.Add( "Left Follower 2", mLeftFollower_2 );
+        planner.Add( "Right Follower 1", mRightFollower_1 );
+        planner.Add( "Right Follower 2", mRightFollower_2 );
+    }
+
+    /**
+    * This method will return the filtered CAN bus utilization.
+    *
+    * @return double The CAN bus utilization in percent
+    */
+    public double GetCANUtilization () {
+        return mCANUtilization * 100.0;
+    }
+
+    /**
+    * This method will return the average CAN bus utilization since the robot program started.
+    *
+    * @return double The average CAN bus utilization in percent
+    */
+    public double GetAverageCANUtilization () {
+        return ( mCANUtilizationCount > 0 ) ? mCANUtilizationSum / mCANUtilizationCount * 100.0 : 0.0;
+    }
+
     /**
     * This method will set the output based on the driver inputs and the reversed direction state.
     */
     public void SetOpenLoopOutput ( double throttle, double turn, boolean quickTurn ) {
+        ExitClosedLoop();
         if ( mIsReversedDirection ) {
             mDifferentialDrive.curvatureDrive( throttle, -turn, quickTurn );
         } else {
@@ -147,45 +346,319 @@ public class Drivetrain extends SubsystemBase {
     * This method will set the output based on a motor voltage.
     */
     public void SetOpenLoopOutput( double leftVolts, double rightVolts ) {
+        ExitClosedLoop();
         mLeftMotorControllerGroup.setVoltage( leftVolts );
         mRightMotorControllerGroup.setVoltage( -rightVolts );
         mDifferentialDrive.feed();
       }
 
+    /**
+    * This method will set the wheel speeds based on the driver inputs and the reversed direction state. The inputs are
+    * shaped like the open-loop curvature drive, and full input is the top speed of the current gear.
+    *
+    * @param throttle double The throttle input
+    * @param turn double The turn input
+    * @param quickTurn boolean True to turn in place
+    */
+    public void SetClosedLoopOutput ( double throttle, double turn, boolean quickTurn ) {
+        throttle = MathUtil.applyDeadband( throttle, DRIVETRAIN.VELOCITY_DEADBAND );
+        turn = MathUtil.applyDeadband( turn, DRIVETRAIN.VELOCITY_DEADBAND );
+        DifferentialDrive.WheelSpeeds speeds = DifferentialDrive.curvatureDriveIK( throttle,
+                                                                                  mIsReversedDirection ? -turn : turn,
+                                                                                  quickTurn );
+        final double maxSpeed = mIsHighGear ? DRIVETRAIN.HIGH_GEAR_MAX_SPEED_MPS : DRIVETRAIN.LOW_GEAR_MAX_SPEED_MPS;
+        SetVelocityOutput( speeds.left * maxSpeed, speeds.right * maxSpeed );
+    }
+
+    /**
+    * This method will set the wheel speeds, which are held by the PIDF loops running on the masters.
+    *
+    * @param leftMetersPerSecond double The left wheel speed in meters per second
+    * @param rightMetersPerSecond double The right wheel speed in meters per second
+    */
+    public void SetVelocityOutput ( double leftMetersPerSecond, double rightMetersPerSecond ) {
+        SetVelocityOutput( leftMetersPerSecond, rightMetersPerSecond, 0.0, 0.0 );
+    }
+
+    /**
+    * This method will set the wheel speeds with an added feedforward (e.g. for the acceleration of a trajectory). The
+    * PIDF loops run on the masters at {@link DRIVETRAIN#CLOSED_LOOP_PERIOD_MS}, using the gain slot of the current
+    * gear, and the static friction feedforward of the gear is added in the direction of travel. The wheel speeds have
+    * the same sign convention as the curvature drive.
+    *
+    * @param leftMetersPerSecond double The left wheel speed in meters per second
+    * @param rightMetersPerSecond double The right wheel speed in meters per second
+    * @param leftFeedforwardVolts double The additional left feedforward in volts
+    * @param rightFeedforwardVolts double The additional right feedforward in volts
+    */
+    public void SetVelocityOutput ( double leftMetersPerSecond, double rightMetersPerSecond,
+                                    double leftFeedforwardVolts, double rightFeedforwardVolts ) {
+        EnterClosedLoop();
+        StopMotionProfile();
+        final int slot = mIsHighGear ? DRIVETRAIN.HIGH_GEAR_VELOCITY_SLOT : DRIVETRAIN.LOW_GEAR_VELOCITY_SLOT;
+        if ( slot != mVelocitySlot ) {
+            mVelocitySlot = slot;
+            mLeftMaster.selectProfileSlot( slot, 0 );
+            mRightMaster.selectProfileSlot( slot, 0 );
+        }
+        final double staticVolts = mIsHighGear ? DRIVETRAIN.HIGH_GEAR_KS_VOLTS : DRIVETRAIN.LOW_GEAR_KS_VOLTS;
+        final double batteryVolts = RobotController.getBatteryVoltage();
+        final double leftVolts = StaticFeedforward( leftMetersPerSecond, staticVolts ) + leftFeedforwardVolts;
+        final double rightVolts = StaticFeedforward( rightMetersPerSecond, staticVolts ) + rightFeedforwardVolts;
+        mLeftMaster.set( ControlMode.Velocity, leftMetersPerSecond * VELOCITY_UNITS_PER_MPS,
+                         DemandType.ArbitraryFeedForward, leftVolts / batteryVolts );
+        mRightMaster.set( ControlMode.Velocity, rightMetersPerSecond * VELOCITY_UNITS_PER_MPS,
+                          DemandType.ArbitraryFeedForward, rightVolts / batteryVolts );
+        mDifferentialDrive.feed();
+    }
+
+    /**
+    * This method will convert a trajectory into a motion profile for each side, ready to be started. The wheel speeds
+    * come from the trajectory's velocity and curvature, the positions are relative to where the encoders are when the
+    * profile starts, and the feedforward is the static friction feedforward of the given gear at the nominal battery
+    * voltage. Nothing on the drivetrain is touched, so profiles can be prepared on any thread ahead of time.
+    *
+    * @param trajectory CompiledTrajectory The trajectory to follow
+    * @param isHighGear boolean True to prepare the profile for high gear, false for low gear
+    * @return PreparedMotionProfile The motion profile of each side
+    */
+    public static PreparedMotionProfile PrepareMotionProfile ( CompiledTrajectory trajectory, boolean isHighGear ) {
+        final double periodSeconds = DRIVETRAIN.MOTION_PROFILE_PERIOD_MS / 1000.0;
+        final double totalSeconds = trajectory.GetTotalSeconds();
+        final int points = (int) Math.ceil( totalSeconds / periodSeconds ) + 1;
+        final double staticVolts = isHighGear ? DRIVETRAIN.HIGH_GEAR_KS_VOLTS : DRIVETRAIN.LOW_GEAR_KS_VOLTS;
+        PreparedMotionProfile profile = new PreparedMotionProfile( points, isHighGear );
+        CompiledTrajectory.Sample sample = new CompiledTrajectory.Sample();
+
+        double leftDistance = 0.0;
+        double rightDistance = 0.0;
+        double lastLeftSpeed = 0.0;
+        double lastRightSpeed = 0.0;
+        double lastTime = 0.0;
+        for ( int i = 0; i < points; i++ ) {
+            final double time = Math.min( i * periodSeconds, totalSeconds );
+            trajectory.Sample( time, sample );
+            final double turn = sample.curvature * DRIVETRAIN.TRACK_WIDTH_M / 2.0;
+            final double leftSpeed = sample.velocity * ( 1.0 - turn );
+            final double rightSpeed = sample.velocity * ( 1.0 + turn );
+            if ( i > 0 ) {
+                leftDistance += ( lastLeftSpeed + leftSpeed ) / 2.0 * ( time - lastTime );
+                rightDistance += ( lastRightSpeed + rightSpeed ) / 2.0 * ( time - lastTime );
+            }
+            profile.left.positions[ i ] = leftDistance * POSITION_UNITS_PER_M;
+            profile.left.velocities[ i ] = leftSpeed * VELOCITY_UNITS_PER_MPS;
+            profile.left.feedforwards[ i ] = StaticFeedforward( leftSpeed, staticVolts )
+                                             / HARDWARE.NOMINAL_BATTERY_VOLTS;
+            profile.right.positions[ i ] = rightDistance * POSITION_UNITS_PER_M;
+            profile.right.velocities[ i ] = rightSpeed * VELOCITY_UNITS_PER_MPS;
+            profile.right.feedforwards[ i ] = StaticFeedforward( rightSpeed, staticVolts )
+                                              / HARDWARE.NOMINAL_BATTERY_VOLTS;
+            lastLeftSpeed = leftSpeed;
+            lastRightSpeed = rightSpeed;
+            lastTime = time;
+        }
+        return profile;
+    }
+
+    /**
+    * This method will convert a trajectory into a motion profile for each side, ready to be started.
+    *
+    * @param trajectory Trajectory The trajectory to follow
+    * @param isHighGear boolean True to prepare the profile for high gear, false for low gear
+    * @return PreparedMotionProfile The motion profile of each side
+    * @see #PrepareMotionProfile(CompiledTrajectory, boolean)
+    */
+    public static PreparedMotionProfile PrepareMotionProfile ( Trajectory trajectory, boolean isHighGear ) {
+        return PrepareMotionProfile( CompiledTrajectory.Compile( "", trajectory, DRIVETRAIN.MOTION_PROFILE_PERIOD_MS
+                                                                                 / 1000.0 ), isHighGear );
+    }
+
+    /**
+    * This method will start streaming a prepared motion profile to the masters, which then follow it at
+    * {@link DRIVETRAIN#MOTION_PROFILE_PERIOD_MS} on their own. The transmission is shifted into the gear the profile
+    * was prepared for, and the masters use the motion profile gain slot of that gear, whose gains act on the position
+    * error (the velocity slots' gains act on the velocity error, so they have the wrong units for a profile).
+    *
+    * @param profile PreparedMotionProfile The motion profile to follow
+    */
+    public void StartMotionProfile ( PreparedMotionProfile profile ) {
+        EnterClosedLoop();
+        SetHighGear( profile.isHighGear );
+        mVelocitySlot = -1;
+        mMotionProfile.Start( DRIVETRAIN.MOTION_PROFILE_PERIOD_MS,
+                              profile.isHighGear ? DRIVETRAIN.HIGH_GEAR_MOTION_PROFILE_SLOT
+                                                 : DRIVETRAIN.LOW_GEAR_MOTION_PROFILE_SLOT,
+                              profile.left, profile.right );
+    }
+
+    /**
+    * This method will convert a trajectory into a motion profile for the current gear and start streaming it to the
+    * masters.
+    *
+    * @param trajectory Trajectory The trajectory to follow
+    */
+    public void StartMotionProfile ( Trajectory trajectory ) {
+        StartMotionProfile( PrepareMotionProfile( trajectory, mIsHighGear ) );
+    }
+
+    /**
+    * This method will return whether the streamed motion profile has reached its end.
+    *
+    * @return boolean True once the masters are holding the last point of the profile
+    */
+    public boolean IsMotionProfileFinished () {
+        return mMotionProfile.IsFinished();
+    }
+
+    /**
+    * This method will return the number of underruns of the last streamed motion profile.
+    *
+    * @return long The number of underruns seen across the masters
+    */
+    public long GetMotionProfileUnderruns () {
+        return mMotionProfile.GetUnderruns();
+    }
+
+    /**
+    * This method will stop the streamed motion profile, if there is one, leaving the masters in neutral.
+    */
+    public void StopMotionProfile () {
+        if ( mMotionProfile.GetState() != MotionProfileStreamer.State.kIdle ) {
+            mMotionProfile.Stop();
+            mVelocitySlot = -1;
+        }
+    }
+
 
     //-----------------------------------------------------------------------------------------------------------------
     /*                                                PRIVATE METHODS                                                */
     //-----------------------------------------------------------------------------------------------------------------
 
     /**
-    * This method will initialize the Drivetrain subsystem.
+    * This method will initialize the Drivetrain subsystem once its motor controllers have been configured, and start
+    * the odometry.
     */
     private void Initialize () {
-        ResetMotorControllers();
+        InvalidateOutputs();
         ResetSensors();
         ResetState();
+        mOdometry.Start();
     }
 
     /**
-    * This method will reset senor and vision controller information.
-    */ 
-    private void ResetMotorControllers () {
-        TalonSRX.ConfigureTalonSRX( mLeftMaster );
-        TalonSRX.CTREMagEncoderConfig( mLeftMaster );
-        // mLeftMaster.setSensorPhase();
-        // mLeftMaster.configSelectedFeedbackCoefficient(coefficient)
-        VictorSPX.ConfigureVictorSPX( mLeftFollower_1 );
-        VictorSPX.ConfigureVictorSPX( mLeftFollower_2 );
-        
-        TalonSRX.ConfigureTalonSRX( mRightMaster );
-        TalonSRX.CTREMagEncoderConfig( mRightMaster );
-        mRightMaster.setInverted( true );
-        // mRightMaster.setSensorPhase();
-        // mRightMaster.configSelectedFeedbackCoefficient(coefficient)
-        VictorSPX.ConfigureVictorSPX( mRightFollower_1 );
-        mRightFollower_1.setInverted( true );
-        VictorSPX.ConfigureVictorSPX( mRightFollower_2 );
-        mRightFollower_2.setInverted( true );
+    * This method will switch the drivetrain to closed-loop velocity control. Followers which are not on-controller
+    * followers are made to follow their master, since only the masters have an encoder.
+    */
+    private void EnterClosedLoop () {
+        if ( mIsClosedLoop ) {
+            return;
+        }
+        mIsClosedLoop = true;
+        mVelocitySlot = -1;
+        if ( !DRIVETRAIN.USE_HARDWARE_FOLLOWERS ) {
+            mLeftFollower_1.follow( mLeftMaster );
+            mLeftFollower_2.follow( mLeftMaster );
+            mRightFollower_1.follow( mRightMaster );
+            mRightFollower_2.follow( mRightMaster );
+            mLeftFollower_1.setInverted( InvertType.FollowMaster );
+            mLeftFollower_2.setInverted( InvertType.FollowMaster );
+            mRightFollower_1.setInverted( InvertType.FollowMaster );
+            mRightFollower_2.setInverted( InvertType.FollowMaster );
+        }
+    }
+
+    /**
+    * This method will switch the drivetrain back to open-loop control. The next open-loop output is written to every
+    * motor controller, since the masters were last set directly.
+    */
+    private void ExitClosedLoop () {
+        if ( !mIsClosedLoop ) {
+            return;
+        }
+        mIsClosedLoop = false;
+        StopMotionProfile();
+        if ( !DRIVETRAIN.USE_HARDWARE_FOLLOWERS ) {
+            mLeftFollower_1.setInverted( !mIsReversedDirection );
+            mLeftFollower_2.setInverted( !mIsReversedDirection );
+            mRightFollower_1.setInverted( !mIsReversedDirection );
+            mRightFollower_2.setInverted( !mIsReversedDirection );
+        }
+        InvalidateOutputs();
+    }
+
+    /**
+    * This method will return the static friction feedforward for a wheel speed.
+    *
+    * @param metersPerSecond double The wheel speed in meters per second
+    * @param staticVolts double The static friction feedforward in volts
+    * @return double The feedforward in volts, in the direction of travel (none when stopped)
+    */
+    private static double StaticFeedforward ( double metersPerSecond, double staticVolts ) {
+        return ( metersPerSecond == 0.0 ) ? 0.0 : Math.copySign( staticVolts, metersPerSecond );
+    }
+
+    /**
+    * This method will configure a drivetrain master motor controller.
+    *
+    * @param master WPI_TalonSRX The motor controller to configure
+    * @param isInverted boolean True if the motor controller output is inverted
+    * @param isConfigured boolean True if the persistent settings are already on the device
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
+    */
+    private ErrorCode ConfigureMaster ( WPI_TalonSRX master, boolean isInverted, boolean isConfigured ) {
+        ErrorCode error = TalonSRX.ConfigureTalonSRX( master, isConfigured );
+        if ( !isConfigured ) {
+            final ErrorCode[] results = {
+                TalonSRX.CTREMagEncoderConfig( master ),
+                TalonSRX.VelocityGainsConfig( master, DRIVETRAIN.LOW_GEAR_VELOCITY_SLOT, DRIVETRAIN.LOW_GEAR_KF,
+                                              DRIVETRAIN.LOW_GEAR_KP, DRIVETRAIN.LOW_GEAR_KI, DRIVETRAIN.LOW_GEAR_KD,
+                                              DRIVETRAIN.LOW_GEAR_IZONE, DRIVETRAIN.CLOSED_LOOP_PERIOD_MS ),
+                TalonSRX.VelocityGainsConfig( master, DRIVETRAIN.HIGH_GEAR_VELOCITY_SLOT, DRIVETRAIN.HIGH_GEAR_KF,
+                                              DRIVETRAIN.HIGH_GEAR_KP, DRIVETRAIN.HIGH_GEAR_KI, DRIVETRAIN.HIGH_GEAR_KD,
+                                              DRIVETRAIN.HIGH_GEAR_IZONE, DRIVETRAIN.CLOSED_LOOP_PERIOD_MS ),
+                TalonSRX.VelocityGainsConfig( master, DRIVETRAIN.LOW_GEAR_MOTION_PROFILE_SLOT,
+                                              DRIVETRAIN.LOW_GEAR_MP_KF, DRIVETRAIN.LOW_GEAR_MP_KP,
+                                              DRIVETRAIN.LOW_GEAR_MP_KI, DRIVETRAIN.LOW_GEAR_MP_KD,
+                                              DRIVETRAIN.LOW_GEAR_MP_IZONE, DRIVETRAIN.CLOSED_LOOP_PERIOD_MS ),
+                TalonSRX.VelocityGainsConfig( master, DRIVETRAIN.HIGH_GEAR_MOTION_PROFILE_SLOT,
+                                              DRIVETRAIN.HIGH_GEAR_MP_KF, DRIVETRAIN.HIGH_GEAR_MP_KP,
+                                              DRIVETRAIN.HIGH_GEAR_MP_KI, DRIVETRAIN.HIGH_GEAR_MP_KD,
+                                              DRIVETRAIN.HIGH_GEAR_MP_IZONE, DRIVETRAIN.CLOSED_LOOP_PERIOD_MS )
+            };
+            for ( ErrorCode result : results ) {
+                if ( result != ErrorCode.OK ) {
+                    error = result;
+                }
+            }
+        }
+        master.setInverted( isInverted );
+        master.setSensorPhase( ( master == mLeftMaster ) ? DRIVETRAIN.LEFT_SENSOR_PHASE
+                                                         : DRIVETRAIN.RIGHT_SENSOR_PHASE );
+        // master.configSelectedFeedbackCoefficient(coefficient)
+        return error;
+    }
+
+    /**
+    * This method will configure a drivetrain follower motor controller, either as an on-controller follower of its
+    * master or as a master of its own.
+    *
+    * @param follower WPI_VictorSPX The motor controller to configure
+    * @param master WPI_TalonSRX The motor controller on the same side of the drivetrain
+    * @param isInverted boolean True if the motor controller output is inverted (when not an on-controller follower)
+    * @param isConfigured boolean True if the persistent settings are already on the device
+    * @return ErrorCode OK if every setting was applied, otherwise the last error
+    */
+    private ErrorCode ConfigureFollower ( WPI_VictorSPX follower, WPI_TalonSRX master, boolean isInverted,
+                                          boolean isConfigured ) {
+        final ErrorCode error;
+        if ( DRIVETRAIN.USE_HARDWARE_FOLLOWERS ) {
+            error = VictorSPX.ConfigureVictorSPX( follower, master, isConfigured );
+            follower.setInverted( InvertType.FollowMaster );
+        } else {
+            error = VictorSPX.ConfigureVictorSPX( follower, isConfigured );
+            follower.setInverted( isInverted );
+        }
+        return error;
     }
 
     /**
@@ -201,6 +674,8 @@ public class Drivetrain extends SubsystemBase {
     * This method will reset all of the internal states.
     */ 
     private void ResetState () {
+        mIsClosedLoop = false;
+        mVelocitySlot = -1;
         mIsHighGear = false;
         SetHighGear( true );
         mIsBrakeMode = false;
@@ -210,15 +685,80 @@ public class Drivetrain extends SubsystemBase {
     }
 
 
+    /**
+    * This method will wrap a motor controller so that redundant open-loop set calls are skipped.
+    *
+    * @param index int The index of the motor controller in the published counts
+    * @param controller MotorController The motor controller to wrap
+    * @return CoalescedMotorController The wrapped motor controller
+    */
+    private CoalescedMotorController Coalesce ( int index, MotorController controller ) {
+        mCoalescedOutputs[ index ] = new CoalescedMotorController( controller, DRIVETRAIN.OUTPUT_EPSILON );
+        return mCoalescedOutputs[ index ];
+    }
+
+
     //-----------------------------------------------------------------------------------------------------------------
     /*                                        CLASS CONSTRUCTOR AND OVERRIDES                                        */
     //-----------------------------------------------------------------------------------------------------------------
 
+    /**
+    * We are overriding the periodic to track the CAN bus utilization, so the effect of the follower mode (and any other
+    * change in CAN traffic) can be measured. The drive is also kept fed while a motion profile is streaming, since no
+    * output is set during the profile.
+    */
+    @Override
+    public void periodic () {
+        if ( mMotionProfile.GetState() != MotionProfileStreamer.State.kIdle ) {
+            mDifferentialDrive.feed();
+        }
+        double utilization = RobotController.getCANStatus().percentBusUtilization;
+        mCANUtilization += DRIVETRAIN.CAN_UTILIZATION_FILTER_GAIN * ( utilization - mCANUtilization );
+        mCANUtilizationSum += utilization;
+        mCANUtilizationCount++;
+    }
+
+    /**
+    * We are overriding the initSendable to publish the number of open-loop API calls made and suppressed for each motor
+    * controller, which shows how many calls the coalescing saves on the robot loop (the CAN frames are the same either
+    * way). The CAN bus utilization is published along with the follower mode.
+    * 
+    * @param builder SendableBuilder This is inherited from SubsystemBase
+    */
+    @Override
+    public void initSendable ( SendableBuilder builder ) {
+        super.initSendable( builder );
+        builder.addBooleanProperty( "Hardware Followers", () -> DRIVETRAIN.USE_HARDWARE_FOLLOWERS, null );
+        builder.addBooleanProperty( "Closed Loop", this::IsClosedLoop, null );
+        builder.addDoubleProperty( "Velocity Slot", () -> mVelocitySlot, null );
+        builder.addStringProperty( "Motion Profile", () -> mMotionProfile.GetState().toString(), null );
+        builder.addDoubleProperty( "Motion Profile Points", () -> mMotionProfile.GetStreamedPoints(), null );
+        builder.addDoubleProperty( "Motion Profile Underruns", () -> mMotionProfile.GetUnderruns(), null );
+        builder.addDoubleProperty( "CAN Utilization", this::GetCANUtilization, null );
+        builder.addDoubleProperty( "CAN Utilization Avg", this::GetAverageCANUtilization, null );
+        builder.addDoubleProperty( "Pose X", () -> GetPose().getX(), null );
+        builder.addDoubleProperty( "Pose Y", () -> GetPose().getY(), null );
+        builder.addDoubleProperty( "Pose Heading", () -> GetPose().getRotation().getDegrees(), null );
+        builder.addDoubleProperty( "Odometry Updates", () -> mOdometry.GetUpdates(), null );
+        builder.addDoubleProperty( "Odometry Update ms", () -> mOdometry.GetLastUpdateSeconds() * 1000.0, null );
+        builder.addDoubleProperty( "Odometry Update ms Max", () -> mOdometry.GetMaxUpdateSeconds() * 1000.0, null );
+        for ( int i = 0; i < mCoalescedOutputs.length; i++ ) {
+            CoalescedMotorController output = mCoalescedOutputs[ i ];
+            if ( output == null ) {
+                continue;
+            }
+            builder.addDoubleProperty( mCoalescedOutputNames[ i ] + " API Calls", () -> output.GetCalls(), null );
+            builder.addDoubleProperty( mCoalescedOutputNames[ i ] + " API Calls Suppressed",
+                                       () -> output.GetSuppressedCalls(), null );
+        }
+    }
 
     /**
-    * The constructor for the Drivetrain class.
+    * The constructor for the Drivetrain class. The motor controllers are configured by {@link #ConfigureDevices}.
+    *
+    * @param imu ADIS16470 The IMU used for the odometry heading
     */ 
-    public Drivetrain () {
+    public Drivetrain ( ADIS16470 imu ) {
         mLeftMaster = new WPI_TalonSRX( DRIVETRAIN.LEFT_MASTER_ID );
         mLeftFollower_1 = new WPI_VictorSPX( DRIVETRAIN.LEFT_FOLLOWER_1_ID );
         mLeftFollower_2 = new WPI_VictorSPX( DRIVETRAIN.LEFT_FOLLOWER_2_ID );
@@ -227,13 +767,25 @@ public class Drivetrain extends SubsystemBase {
         mRightFollower_2 = new WPI_VictorSPX( DRIVETRAIN.RIGHT_FOLLOWER_2_ID );
         mShifter = new DoubleSolenoid( PneumaticsModuleType.CTREPCM, DRIVETRAIN.HIGH_GEAR_SOLENOID_ID, 
                                                      DRIVETRAIN.LOW_GEAR_SOLENOID_ID );
-        //mIMU = new ADIS16470(); 
+        mIMU = imu;
+        mOdometry = new DrivetrainOdometry( mLeftMaster, mRightMaster, mIMU );
+        mMotionProfile = new MotionProfileStreamer( "DrivetrainMotionProfile", mLeftMaster, mRightMaster );
 
 
-        mLeftMotorControllerGroup = new MotorControllerGroup( mLeftMaster, mLeftFollower_1, mLeftFollower_2 );
-        mRightMotorControllerGroup = new MotorControllerGroup( mRightMaster, mRightFollower_1, mRightFollower_2 );
+        mCoalescedOutputs = new CoalescedMotorController[ mCoalescedOutputNames.length ];
+        if ( DRIVETRAIN.USE_HARDWARE_FOLLOWERS ) {
+            // The followers mirror their master on the controller, so only the masters are written
+            mLeftMotorControllerGroup = new MotorControllerGroup( Coalesce( 0, mLeftMaster ) );
+            mRightMotorControllerGroup = new MotorControllerGroup( Coalesce( 3, mRightMaster ) );
+        } else {
+            mLeftMotorControllerGroup = new MotorControllerGroup( Coalesce( 0, mLeftMaster ),
+                                                                  Coalesce( 1, mLeftFollower_1 ),
+                                                                  Coalesce( 2, mLeftFollower_2 ) );
+            mRightMotorControllerGroup = new MotorControllerGroup( Coalesce( 3, mRightMaster ),
+                                                                   Coalesce( 4, mRightFollower_1 ),
+                                                                   Coalesce( 5, mRightFollower_2 ) );
+        }
         mDifferentialDrive = new DifferentialDrive( mLeftMotorControllerGroup, mRightMotorControllerGroup );
-        Initialize();
     }
 
 
@@ -0,0 +1,231 @@
+package frc.robot.subsystems;
+
+import java.util.concurrent.atomic.AtomicReference;
+import com.ctre.phoenix.motorcontrol.can.WPI_TalonSRX;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.DifferentialDriveOdometry;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.DRIVETRAIN;
+import frc.robot.lib.drivers.ADIS16470;
+
+/**
+* The DrivetrainOdometry class tracks the drivetrain pose on its own {@link Notifier}, at
+* {@link DRIVETRAIN#ODOMETRY_PERIOD_S} instead of the 20ms scheduler loop. Every update reads the master encoders and
+* the IMU heading, runs the WPILib differential drive odometry and publishes an immutable {@link PoseSnapshot}. Commands
+* read the latest snapshot without locking, and pose resets are handed to the odometry thread, which is the only thread
+* touching the odometry state.
+* <p>
+* The encoder distances are accumulated from deltas, because inverting a Talon SRX also inverts its sensor reading:
+* when the drive direction is reversed, the readings are re-baselined instead of being seen as a jump. Until the IMU
+* is ready, the heading comes from the encoders and the track width.
+*
+* @see {@link edu.wpi.first.math.kinematics.DifferentialDriveOdometry}
+*/
+public class DrivetrainOdometry {
+
+    /**
+    * An immutable snapshot of the odometry.
+    */
+    public static final class PoseSnapshot {
+        /** FPGA timestamp in seconds of the update */
+        public final double timestamp;
+        /** Field-relative pose in meters */
+        public final Pose2d pose;
+        /** Left side distance in meters since the last pose reset */
+        public final double leftDistance;
+        /** Right side distance in meters since the last pose reset */
+        public final double rightDistance;
+        /** Left side velocity in meters per second */
+        public final double leftVelocity;
+        /** Right side velocity in meters per second */
+        public final double rightVelocity;
+
+        private PoseSnapshot ( double timestamp, Pose2d pose, double leftDistance, double rightDistance,
+                               double leftVelocity, double rightVelocity ) {
+            this.timestamp = timestamp;
+            this.pose = pose;
+            this.leftDistance = leftDistance;
+            this.rightDistance = rightDistance;
+            this.leftVelocity = leftVelocity;
+            this.rightVelocity = rightVelocity;
+        }
+    }
+
+    private static final double METERS_PER_COUNT = Math.PI * DRIVETRAIN.WHEEL_DIAMETER_M
+                                                   / DRIVETRAIN.ENCODER_COUNTS_PER_REV
+                                                   / DRIVETRAIN.ENCODER_TO_WHEEL_RATIO;
+
+    private final WPI_TalonSRX mLeftMaster;
+    private final WPI_TalonSRX mRightMaster;
+    private final ADIS16470 mIMU;
+    private final Notifier mNotifier;
+    private final AtomicReference<Pose2d> mPendingReset = new AtomicReference<>();
+    private volatile PoseSnapshot mSnapshot = new PoseSnapshot( 0.0, new Pose2d(), 0.0, 0.0, 0.0, 0.0 );
+
+    // Odometry thread state
+    private DifferentialDriveOdometry mOdometry;
+    private boolean mIsBaselined;
+    private boolean mLastLeftInverted;
+    private boolean mLastRightInverted;
+    private double mLastLeftCounts;
+    private double mLastRightCounts;
+    private double mLeftDistance;
+    private double mRightDistance;
+    private double mHeadingOffset;
+    private double mLastHeading;
+    private boolean mLastIMUHeading;
+
+    // Statistics
+    private volatile long mUpdates;
+    private volatile double mLastUpdateSeconds;
+    private volatile double mMaxUpdateSeconds;
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PUBLIC METHODS                                                 */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will start the odometry updates.
+    */
+    public void Start () {
+        mNotifier.startPeriodic( DRIVETRAIN.ODOMETRY_PERIOD_S );
+    }
+
+    /**
+    * This method will stop the odometry updates.
+    */
+    public void Stop () {
+        mNotifier.stop();
+    }
+
+    /**
+    * This method will return the latest odometry snapshot. It can be called from any thread.
+    *
+    * @return PoseSnapshot The latest snapshot
+    */
+    public PoseSnapshot GetSnapshot () {
+        return mSnapshot;
+    }
+
+    /**
+    * This method will reset the pose. The reset is applied by the odometry thread on its next update.
+    *
+    * @param pose Pose2d The new field-relative pose in meters
+    */
+    public void ResetPose ( Pose2d pose ) {
+        mPendingReset.set( pose );
+    }
+
+    /**
+    * This method will return the number of odometry updates.
+    *
+    * @return long The number of updates
+    */
+    public long GetUpdates () {
+        return mUpdates;
+    }
+
+    /**
+    * This method will return how long the last odometry update took.
+    *
+    * @return double The update time in seconds
+    */
+    public double GetLastUpdateSeconds () {
+        return mLastUpdateSeconds;
+    }
+
+    /**
+    * This method will return the longest odometry update.
+    *
+    * @return double The longest update time in seconds
+    */
+    public double GetMaxUpdateSeconds () {
+        return mMaxUpdateSeconds;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                                PRIVATE METHODS                                                */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * This method will run one odometry update. It is only called by the notifier.
+    */
+    private void Update () {
+        final double start = Timer.getFPGATimestamp();
+
+        // Accumulate the encoder deltas, re-baselining when the sensor direction changed
+        final boolean leftInverted = mLeftMaster.getInverted();
+        final boolean rightInverted = mRightMaster.getInverted();
+        final double leftCounts = mLeftMaster.getSelectedSensorPosition();
+        final double rightCounts = mRightMaster.getSelectedSensorPosition();
+        final double leftSign = DRIVETRAIN.LEFT_ENCODER_SIGN * ( leftInverted ? -1.0 : 1.0 );
+        final double rightSign = DRIVETRAIN.RIGHT_ENCODER_SIGN * ( rightInverted ? -1.0 : 1.0 );
+        if ( mIsBaselined && leftInverted == mLastLeftInverted && rightInverted == mLastRightInverted ) {
+            mLeftDistance += leftSign * ( leftCounts - mLastLeftCounts ) * METERS_PER_COUNT;
+            mRightDistance += rightSign * ( rightCounts - mLastRightCounts ) * METERS_PER_COUNT;
+        }
+        mIsBaselined = true;
+        mLastLeftInverted = leftInverted;
+        mLastRightInverted = rightInverted;
+        mLastLeftCounts = leftCounts;
+        mLastRightCounts = rightCounts;
+
+        // Sensor velocity is in counts per 100ms
+        final double leftVelocity = leftSign * mLeftMaster.getSelectedSensorVelocity() * 10.0 * METERS_PER_COUNT;
+        final double rightVelocity = rightSign * mRightMaster.getSelectedSensorVelocity() * 10.0 * METERS_PER_COUNT;
+
+        // Heading from the IMU once it is ready, kept continuous when the source changes
+        final boolean isIMUHeading = ( mIMU != null ) && mIMU.isReady();
+        final double encoderHeading = Math.toDegrees( ( mRightDistance - mLeftDistance ) / DRIVETRAIN.TRACK_WIDTH_M );
+        final double heading = isIMUHeading ? mIMU.getAngle() : encoderHeading;
+        if ( mOdometry != null && isIMUHeading != mLastIMUHeading ) {
+            mHeadingOffset += heading - mLastHeading;
+        }
+        mLastIMUHeading = isIMUHeading;
+        mLastHeading = heading;
+
+        final Pose2d reset = mPendingReset.getAndSet( null );
+        if ( reset != null || mOdometry == null ) {
+            final Pose2d pose = ( reset != null ) ? reset : new Pose2d();
+            mLeftDistance = 0.0;
+            mRightDistance = 0.0;
+            mHeadingOffset = heading;
+            mOdometry = new DifferentialDriveOdometry( Rotation2d.fromDegrees( 0.0 ), pose );
+        }
+        final Pose2d pose = mOdometry.update( Rotation2d.fromDegrees( heading - mHeadingOffset ), mLeftDistance,
+                                              mRightDistance );
+        mSnapshot = new PoseSnapshot( start, pose, mLeftDistance, mRightDistance, leftVelocity, rightVelocity );
+
+        final double elapsed = Timer.getFPGATimestamp() - start;
+        mLastUpdateSeconds = elapsed;
+        if ( elapsed > mMaxUpdateSeconds ) {
+            mMaxUpdateSeconds = elapsed;
+        }
+        mUpdates++;
+    }
+
+
+    //-----------------------------------------------------------------------------------------------------------------
+    /*                                        CLASS CONSTRUCTOR AND OVERRIDES                                        */
+    //-----------------------------------------------------------------------------------------------------------------
+
+    /**
+    * The constructor for the DrivetrainOdometry class. The odometry doesn't run until it is started.
+    *
+    * @param leftMaster WPI_TalonSRX The left master with the left encoder
+    * @param rightMaster WPI_TalonSRX The right master with the right encoder
+    * @param imu ADIS16470 The IMU for the heading, or null to only use the encoders
+    */
+    public DrivetrainOdometry ( WPI_TalonSRX leftMaster, WPI_TalonSRX rightMaster, ADIS16470 imu ) {
+        mLeftMaster = leftMaster;
+        mRightMaster = rightMaster;
+        mIMU = imu;
+        mNotifier = new Notifier( this::Update );
+        mNotifier.setName( "DrivetrainOdometry" );
+    }
+
+}
@@ -7,6 +7,10 @@ import com.revrobotics.CANSparkMaxLowLevel.MotorType;
 import com.revrobotics.RelativeEncoder;
 import com.revrobotics.REVLibError;
 import frc.robot.Constants.INTAKE;
+import frc.robot.lib.drivers.ConfigFingerprint;
+import frc.robot.lib.drivers.DeviceConfigurator;
+import frc.robot.lib.drivers.StatusFramePlanner;
+import frc.robot.lib.drivers.StatusFramePlanner.Signal;
 
 /**
  * The Intake class is designed to use the command-based programming model and extends the SubsystemBase class.
@@ -15,6 +19,12 @@ import frc.robot.Constants.INTAKE;
  */
 public class Intake extends SubsystemBase {
 
+    // Persistent motor controller settings
+    private static final CANSparkMax.IdleMode IDLE_MODE = CANSparkMax.IdleMode.kCoast;
+    private static final int CURRENT_LIMIT_A = 20;
+    private static final double VELOCITY_CONVERSION_FACTOR = Math.PI * INTAKE.DIAMETER_FT / 60.0
+                                                             / INTAKE.GEARING_REDUCTION;
+
     // Hardware
     private final CANSparkMax mNeo550;
     private RelativeEncoder mEncoder;
@@ -33,6 +43,41 @@ public class Intake extends SubsystemBase {
         mNeo550.set( dutyCycle );
     }
 
+    /**
+     * This method will add the configuration of the intake motor controller to the configurator. The settings are
+     * burned to flash on the cold path, so they can be skipped on later boots while the firmware is unchanged.
+     * 
+     * @param configurator DeviceConfigurator The device configurator
+     */
+    public void ConfigureDevices ( DeviceConfigurator configurator ) {
+        final ConfigFingerprint fingerprint = new ConfigFingerprint.Builder()
+            .Add( "SparkMax.Firmware", mNeo550.getFirmwareVersion() )
+            .Add( "SparkMax.FactoryDefault", true )
+            .Add( "SparkMax.IdleMode", IDLE_MODE )
+            .Add( "SparkMax.SmartCurrentLimit", CURRENT_LIMIT_A )
+            .Add( "SparkMax.VelocityConversionFactor", VELOCITY_CONVERSION_FACTOR )
+            .Build();
+        configurator.AddREV( "Intake SparkMax " + INTAKE.CAN_ID, fingerprint, isConfigured -> {
+            if ( isConfigured ) {
+                SetIntakeMotorOutput( 0.0 );
+                return REVLibError.kOk;
+            }
+            final REVLibError error = ResetMotorController();
+            final REVLibError burnFlash = mNeo550.burnFlash();
+            return ( error != REVLibError.kOk ) ? error : burnFlash;
+        } );
+    }
+
+    /**
+     * This method will add the intake motor controller to the status frame plan. Only the velocity is read, once per
+     * loop, for the dashboard.
+     * 
+     * @param planner StatusFramePlanner The status frame planner
+     */
+    public void PlanStatusFrames ( StatusFramePlanner planner ) {
+        planner.Add( "Intake", mNeo550 ).Consume( Signal.kVelocity, 20 );
+    }
+
 
     //-----------------------------------------------------------------------------------------------------------------
     /*                                                PRIVATE METHODS                                                */
@@ -41,8 +86,11 @@ public class Intake extends SubsystemBase {
 
     /**
      * This method will intialize the motor controller.
+     * 
+     * @return REVLibError kOk if every setting was applied, otherwise the last error
      */ 
-    private void ResetMotorController () {
+    private REVLibError ResetMotorController () {
+        REVLibError result = REVLibError.kOk;
         REVLibError error;
         short faults;
 
@@ -53,6 +101,7 @@ public class Intake extends SubsystemBase {
             error = mNeo550.clearFaults();
             if ( error != REVLibError.kOk ) {
                 //mLogger.error( "Could not clear sticky faults due to EC: [{}]", canError.toString() );
+                result = error;
             }  
         }
 
@@ -60,6 +109,7 @@ public class Intake extends SubsystemBase {
         error = mNeo550.restoreFactoryDefaults();
         if ( error != REVLibError.kOk ) {
             //mLogger.error( "Could not factory reset SparkMax [{}] due to EC: [{}]", sparkMax.getDeviceId(), canError.toString() );
+            result = error;
         }  
         // canError = sparkMax.enableVoltageCompensation( 12.0 );
         // if ( canError != REVLibError.kOk ) {
@@ -67,14 +117,26 @@ public class Intake extends SubsystemBase {
         // }
 
         // Set idle to coast
-        error = mNeo550.setIdleMode( CANSparkMax.IdleMode.kCoast );
+        error = mNeo550.setIdleMode( IDLE_MODE );
         if ( error != REVLibError.kOk ) {
             //mLogger.error( "Could not set SparkMax [{}] idle mode due to EC: [{}]", sparkMax.getDeviceId(), canError.toString() );
+            result = error;
         }        
 
         // Set 10A stall and free speed current limit
-        error = mNeo550.setSmartCurrentLimit( 20, 20 );
+        error = mNeo550.setSmartCurrentLimit( CURRENT_LIMIT_A, CURRENT_LIMIT_A );
+        if ( error != REVLibError.kOk ) {
+            result = error;
+        }
 
+        // Rev per Minute to Feet per Second
+        error = mEncoder.setVelocityConversionFactor( VELOCITY_CONVERSION_FACTOR );
+        if ( error != REVLibError.kOk ) {
+            result = error;
+        }
+
+        SetIntakeMotorOutput( 0.0 );
+        return result;
     }
 
     /**
@@ -91,14 +153,11 @@ public class Intake extends SubsystemBase {
     
     
     /**
-     * The constructor for the Intake class.
+     * The constructor for the Intake class. The motor controller is configured by {@link #ConfigureDevices}.
      */ 
     public Intake () {
         mNeo550 = new CANSparkMax( INTAKE.CAN_ID, MotorType.kBrushless );
-        ResetMotorController();
-        SetIntakeMotorOutput( 0.0 );
         mEncoder = mNeo550.getEncoder();
-        mEncoder.setVelocityConversionFactor( Math.PI * INTAKE.DIAMETER_FT / 60.0 / INTAKE.GEARING_REDUCTION ); // Rev per Minute to Feet per Second
     }
 
     /**
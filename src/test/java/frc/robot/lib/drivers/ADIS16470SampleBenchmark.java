@@ -0,0 +1,251 @@
+package frc.robot.lib.drivers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+/**
+ * Contention and latency microbenchmark for reading the ADIS16470 outputs. It compares the
+ * lock-free {@link ADIS16470.Sample} publication against a model of the original driver, where the
+ * acquire thread updated the outputs while holding the object monitor and every getter took the
+ * same monitor.
+ *
+ * <p>Both paths run the same {@link ADIS16470Decoder} on the writer thread, fed as fast as it can
+ * go (a worst case far above the real 200-2000 Hz), while reader threads read the angle, the three
+ * rates, the X/Y accelerations and the temperature as fast as they can. Every synthetic frame
+ * encodes one counter in all of its outputs, so a reader can tell when the values it read came from
+ * different samples (a torn read). The results are printed; the test only asserts that the
+ * lock-free path never tears.
+ */
+public class ADIS16470SampleBenchmark {
+  private static final int READERS = 2;
+  private static final double SECONDS = 0.5;
+  private static final int LATENCY_SAMPLES = 1 << 16;
+
+  /** The outputs of the original driver: plain fields behind the object monitor. */
+  private static final class SynchronizedOutputs {
+    private double m_angle;
+    private double m_gyro_rate_x;
+    private double m_gyro_rate_y;
+    private double m_gyro_rate_z;
+    private double m_accel_x;
+    private double m_accel_y;
+    private double m_temp;
+
+    synchronized void set(ADIS16470.Sample sample) {
+      m_angle = sample.angle;
+      m_gyro_rate_x = sample.gyroRateX;
+      m_gyro_rate_y = sample.gyroRateY;
+      m_gyro_rate_z = sample.gyroRateZ;
+      m_accel_x = sample.accelX;
+      m_accel_y = sample.accelY;
+      m_temp = sample.temp;
+    }
+
+    synchronized double getAngle() {
+      return m_angle;
+    }
+
+    synchronized double getRateX() {
+      return m_gyro_rate_x;
+    }
+
+    synchronized double getRateY() {
+      return m_gyro_rate_y;
+    }
+
+    synchronized double getRateZ() {
+      return m_gyro_rate_z;
+    }
+
+    synchronized double getAccelX() {
+      return m_accel_x;
+    }
+
+    synchronized double getAccelY() {
+      return m_accel_y;
+    }
+
+    synchronized double getTemp() {
+      return m_temp;
+    }
+  }
+
+  /** The result of one benchmark run. */
+  private static final class Result {
+    long writes;
+    long reads;
+    long torn;
+    double p50Nanos;
+    double p99Nanos;
+    double maxNanos;
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%10.0f %10.0f %9.1f %9.1f %9.1f %8d",
+          writes / SECONDS, reads / SECONDS, p50Nanos, p99Nanos, maxNanos, torn);
+    }
+  }
+
+  @Test
+  public void lockFreeSampleVersusSynchronizedGetters() throws InterruptedException {
+    // Warm up both paths so the JIT has compiled them before anything is timed
+    run(false);
+    run(true);
+
+    final Result lockFree = run(false);
+    final Result locked = run(true);
+    System.out.println(
+        String.format(
+            "%-13s %10s %10s %9s %9s %9s %8s",
+            "Path", "Writes/s", "Reads/s", "p50 ns", "p99 ns", "Max ns", "Torn"));
+    System.out.println(String.format("%-13s %s", "Lock-free", lockFree));
+    System.out.println(String.format("%-13s %s", "Synchronized", locked));
+
+    assertEquals("Torn lock-free reads", 0, lockFree.torn);
+    assertTrue(lockFree.writes > 0 && lockFree.reads > 0);
+  }
+
+  /**
+   * Run the writer and the readers for {@link #SECONDS}.
+   *
+   * @param synchronizedPath True to publish and read through the monitor, false to read the
+   *     published samples
+   * @return The result
+   */
+  private static Result run(boolean synchronizedPath) throws InterruptedException {
+    final ADIS16470Decoder decoder = new ADIS16470Decoder(new ADIS16470History(16));
+    final SynchronizedOutputs outputs = new SynchronizedOutputs();
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final CountDownLatch started = new CountDownLatch(READERS + 1);
+    final Result result = new Result();
+    final long[] reads = new long[READERS];
+    final long[] torn = new long[READERS];
+    final long[][] latencies = new long[READERS][LATENCY_SAMPLES];
+
+    Thread writer =
+        new Thread(
+            () -> {
+              final int[] frame = new int[ADIS16470Decoder.DATASET_LEN];
+              long timestamp = 1000000;
+              int counter = 0;
+              started.countDown();
+              while (running.get()) {
+                counter = (counter + 1) % 30000;
+                timestamp += 5000;
+                fillFrame(frame, timestamp, counter);
+                decoder.decode(frame, frame.length, timestamp);
+                if (synchronizedPath) {
+                  outputs.set(decoder.getSample());
+                }
+                result.writes++;
+              }
+            },
+            "Writer");
+
+    Thread[] readers = new Thread[READERS];
+    for (int r = 0; r < READERS; r++) {
+      final int index = r;
+      readers[r] =
+          new Thread(
+              () -> {
+                long count = 0;
+                long tears = 0;
+                started.countDown();
+                while (running.get()) {
+                  final long start = System.nanoTime();
+                  final double rate_x;
+                  final double rate_y;
+                  final double rate_z;
+                  final double accel_x;
+                  final double accel_y;
+                  final double temp;
+                  if (synchronizedPath) {
+                    outputs.getAngle();
+                    rate_x = outputs.getRateX();
+                    rate_y = outputs.getRateY();
+                    rate_z = outputs.getRateZ();
+                    accel_x = outputs.getAccelX();
+                    accel_y = outputs.getAccelY();
+                    temp = outputs.getTemp();
+                  } else {
+                    final ADIS16470.Sample sample = decoder.getSample();
+                    rate_x = sample.gyroRateX;
+                    rate_y = sample.gyroRateY;
+                    rate_z = sample.gyroRateZ;
+                    accel_x = sample.accelX;
+                    accel_y = sample.accelY;
+                    temp = sample.temp;
+                  }
+                  latencies[index][(int) (count & (LATENCY_SAMPLES - 1))] =
+                      System.nanoTime() - start;
+                  final long k = Math.round(rate_x * 10.0);
+                  if (Math.round(rate_y * 10.0) != k
+                      || Math.round(rate_z * 10.0) != k
+                      || Math.round(accel_x * 800.0) != k
+                      || Math.round(accel_y * 800.0) != k
+                      || Math.round(temp * 10.0) != k) {
+                    tears++;
+                  }
+                  count++;
+                }
+                reads[index] = count;
+                torn[index] = tears;
+              },
+              "Reader " + r);
+    }
+
+    writer.start();
+    for (Thread reader : readers) {
+      reader.start();
+    }
+    started.await();
+    Thread.sleep((long) (SECONDS * 1000));
+    running.set(false);
+    writer.join();
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    long[] all = new long[0];
+    for (int r = 0; r < READERS; r++) {
+      result.reads += reads[r];
+      result.torn += torn[r];
+      final int filled = (int) Math.min(reads[r], LATENCY_SAMPLES);
+      final int offset = all.length;
+      all = Arrays.copyOf(all, offset + filled);
+      System.arraycopy(latencies[r], 0, all, offset, filled);
+    }
+    Arrays.sort(all);
+    if (all.length > 0) {
+      result.p50Nanos = all[all.length / 2];
+      result.p99Nanos = all[(int) (all.length * 0.99)];
+      result.maxNanos = all[all.length - 1];
+    }
+    return result;
+  }
+
+  /**
+   * Build a register mode frame whose rates, accelerations and temperature all encode the counter.
+   *
+   * @param frame The frame to fill in
+   * @param timestamp The DMA timestamp in microseconds
+   * @param counter The value every output encodes
+   */
+  private static void fillFrame(int[] frame, long timestamp, int counter) {
+    Arrays.fill(frame, 0);
+    frame[0] = (int) timestamp;
+    final int high = (counter >> 8) & 0xFF;
+    final int low = counter & 0xFF;
+    // Gyro X/Y/Z, accel X/Y/Z and temperature, each a 16-bit word
+    for (int i = 15; i <= 27; i += 2) {
+      frame[i] = high;
+      frame[i + 1] = low;
+    }
+  }
+}
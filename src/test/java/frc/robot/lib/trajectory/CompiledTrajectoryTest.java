@@ -0,0 +1,106 @@
+package frc.robot.lib.trajectory;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+
+/**
+* Desktop tests of the compiled trajectory file round trip and of sampling near the end of a trajectory, where the
+* last interval is shorter than the sample period.
+*/
+public class CompiledTrajectoryTest {
+    private static final double PERIOD = 0.1;
+    private static final double TOTAL_SECONDS = 1.234;
+    private static final double ACCELERATION = 2.0;
+    private static final double EPSILON = 1.0e-9;
+
+    @Test
+    public void writeAndLoadRoundTrip () throws IOException {
+        final CompiledTrajectory compiled = CompiledTrajectory.Compile( "test", BuildTrajectory(), PERIOD );
+        final Path file = Files.createTempFile( "compiled", CompiledTrajectory.EXTENSION );
+        try {
+            compiled.Write( file );
+            final CompiledTrajectory loaded = CompiledTrajectory.Load( "test", file );
+            assertEquals( compiled.GetCount(), loaded.GetCount() );
+            assertEquals( compiled.GetPeriod(), loaded.GetPeriod(), 0.0 );
+            assertEquals( compiled.GetTotalSeconds(), loaded.GetTotalSeconds(), 0.0 );
+
+            final CompiledTrajectory.Sample expected = new CompiledTrajectory.Sample();
+            final CompiledTrajectory.Sample actual = new CompiledTrajectory.Sample();
+            for ( int i = 0; i < compiled.GetCount(); i++ ) {
+                final double time = Math.min( i * PERIOD, TOTAL_SECONDS );
+                compiled.Sample( time, expected );
+                loaded.Sample( time, actual );
+                assertEquals( expected.x, actual.x, 0.0 );
+                assertEquals( expected.y, actual.y, 0.0 );
+                assertEquals( expected.heading, actual.heading, 0.0 );
+                assertEquals( expected.velocity, actual.velocity, 0.0 );
+                assertEquals( expected.acceleration, actual.acceleration, 0.0 );
+                assertEquals( expected.curvature, actual.curvature, 0.0 );
+            }
+        } finally {
+            Files.deleteIfExists( file );
+        }
+    }
+
+    @Test
+    public void samplesTheEndOfTheTrajectory () {
+        final CompiledTrajectory compiled = CompiledTrajectory.Compile( "test", BuildTrajectory(), PERIOD );
+        final CompiledTrajectory.Sample sample = new CompiledTrajectory.Sample();
+        assertEquals( (int) Math.ceil( TOTAL_SECONDS / PERIOD ) + 1, compiled.GetCount() );
+
+        // The end, and anything past it, is the last state of the trajectory
+        compiled.Sample( TOTAL_SECONDS, sample );
+        assertEquals( TOTAL_SECONDS, sample.time, 0.0 );
+        assertEquals( Position( TOTAL_SECONDS ), sample.x, EPSILON );
+        assertEquals( ACCELERATION * TOTAL_SECONDS, sample.velocity, EPSILON );
+        compiled.Sample( TOTAL_SECONDS + 1.0, sample );
+        assertEquals( Position( TOTAL_SECONDS ), sample.x, EPSILON );
+
+        // Halfway through the short last interval is halfway between its two samples
+        final double lastStart = Math.floor( TOTAL_SECONDS / PERIOD ) * PERIOD;
+        compiled.Sample( ( lastStart + TOTAL_SECONDS ) / 2.0, sample );
+        assertEquals( ( Position( lastStart ) + Position( TOTAL_SECONDS ) ) / 2.0, sample.x, EPSILON );
+        assertEquals( ACCELERATION * ( lastStart + TOTAL_SECONDS ) / 2.0, sample.velocity, EPSILON );
+
+        // Just before the end is just before the last sample
+        compiled.Sample( TOTAL_SECONDS - 1.0e-6, sample );
+        assertEquals( Position( TOTAL_SECONDS ), sample.x, 1.0e-5 );
+    }
+
+    /**
+    * This method will build a straight line trajectory with a constant acceleration, whose length isn't a multiple of
+    * the sample period. Its states are 1ms apart, so sampling it at the compiled sample times is exact.
+    *
+    * @return Trajectory The trajectory
+    */
+    private static Trajectory BuildTrajectory () {
+        final List<Trajectory.State> states = new ArrayList<>();
+        final int steps = (int) Math.round( TOTAL_SECONDS * 1000.0 );
+        for ( int i = 0; i <= steps; i++ ) {
+            final double time = i / 1000.0;
+            states.add( new Trajectory.State( time, ACCELERATION * time, ACCELERATION,
+                                              new Pose2d( Position( time ), 0.0, new Rotation2d() ), 0.0 ) );
+        }
+        return new Trajectory( states );
+    }
+
+    /**
+    * This method will return the position along the test trajectory.
+    *
+    * @param time double The time since the start of the trajectory in seconds
+    * @return double The position in meters
+    */
+    private static double Position ( double time ) {
+        return 0.5 * ACCELERATION * time * time;
+    }
+
+}